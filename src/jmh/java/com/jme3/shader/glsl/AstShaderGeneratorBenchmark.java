@@ -0,0 +1,165 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.material.TechniqueDef;
+import com.jme3.shader.Shader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmarks of the AST shader generator over synthetic technique definitions with 5, 50 and 500 fragment shader
+ * nodes. Assets are loaded by the headless asset manager, so no renderer is required.
+ *
+ * @author JavaSaBr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AstShaderGeneratorBenchmark {
+
+    /**
+     * The state which clears the shared cache of parsed shader sources before every invocation.
+     */
+    @State(Scope.Thread)
+    public static class ColdState {
+
+        @Setup(Level.Invocation)
+        public void clearAstCache() {
+            AstShaderGenerator.getAstCache().clear();
+        }
+    }
+
+    private static final String DEFINES = "#define COLOR 1\n";
+
+    @Param({"5", "50", "500"})
+    private int nodes;
+
+    /**
+     * The asset manager.
+     */
+    private HeadlessAssetManager assetManager;
+
+    /**
+     * The synthetic technique definition.
+     */
+    private TechniqueDef techniqueDef;
+
+    /**
+     * The generator which keeps its templates between invocations.
+     */
+    private AstShaderGenerator warmGenerator;
+
+    /**
+     * The generation context of the warm generator.
+     */
+    private GenerationContext context;
+
+    /**
+     * The shader node code to rename identifiers.
+     */
+    private String nodeCode;
+
+    /**
+     * The renamer of identifiers of the shader node code.
+     */
+    private ShaderSourceRenamer renamer;
+
+    /**
+     * The result of the last renaming.
+     */
+    private StringBuilder renamed;
+
+    @Setup
+    public void setup() throws IOException {
+
+        final Path root = Files.createTempDirectory("jmb-shader-nodes-jmh");
+
+        assetManager = new HeadlessAssetManager(root);
+        techniqueDef = new ShaderNodeGraphGenerator(nodes)
+                .setFragmentNodes(nodes)
+                .setVertexNodes(Math.max(1, nodes / 10))
+                .generate(assetManager, root, "Synthetic" + nodes);
+
+        warmGenerator = new AstGlsl150ShaderGenerator(assetManager);
+        context = warmGenerator.newContext(techniqueDef);
+
+        final StringBuilder builder = new StringBuilder(nodes * 64);
+
+        for (int i = 0; i < nodes; i++) {
+            builder.append("    value = combine(value, in0 * ").append(i).append(".0) * scale;\n");
+        }
+
+        // the same rules as the generator adds for inputs, local variables and methods of a shader node
+        nodeCode = builder.toString();
+        renamer = new ShaderSourceRenamer();
+        renamer.add("in0", "Frag0_in0", AstShaderGenerator.PREVIOUS_VAR_CHAR_CHECKER,
+                AstShaderGenerator.NEXT_VAR_CHAR_CHECKER);
+        renamer.add("scale", "Frag0_scale", AstShaderGenerator.PREVIOUS_VAR_CHAR_CHECKER,
+                AstShaderGenerator.NEXT_VAR_CHAR_CHECKER);
+        renamer.add("value", "Frag0_value", AstShaderGenerator.PREVIOUS_VAR_CHAR_CHECKER,
+                AstShaderGenerator.NEXT_VAR_CHAR_CHECKER);
+        renamer.add("combine", "Frag0_combine", AstShaderGenerator.PREVIOUS_METHOD_CHAR_CHECKER,
+                AstShaderGenerator.NEXT_METHOD_CHAR_CHECKER);
+        renamed = new StringBuilder(nodeCode.length() * 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.release();
+        assetManager.clearCache();
+    }
+
+    /**
+     * Initializes a new generator and generates the shader without parsed shader sources, so all shader node sources
+     * are loaded and parsed and all shader node templates are built again.
+     */
+    @Benchmark
+    public Shader generateCold(final ColdState state) {
+        return generateByNewGenerator();
+    }
+
+    /**
+     * Initializes a new generator and generates the shader, so all shader node templates are built again, but parsed
+     * shader sources are taken from the shared cache.
+     */
+    @Benchmark
+    public Shader generateByNewGenerator() {
+        final AstShaderGenerator generator = new AstGlsl150ShaderGenerator(assetManager);
+        generator.initialize(techniqueDef);
+        return generator.generateShader(DEFINES);
+    }
+
+    /**
+     * Initializes the same generator and generates the shader without the cache of generated shaders, so only
+     * assembling of cached shader node templates is measured.
+     */
+    @Benchmark
+    public Shader generateWarm() {
+        warmGenerator.getShaderCache().clear();
+        warmGenerator.initialize(techniqueDef);
+        return warmGenerator.generateShader(DEFINES);
+    }
+
+    /**
+     * Generates the shader by the prepared generation context with the cache of generated shaders.
+     */
+    @Benchmark
+    public Shader generateCached() {
+        return context.generate(DEFINES);
+    }
+
+    /**
+     * Renames identifiers of the shader node code like the generator renames main sections of shader nodes.
+     */
+    @Benchmark
+    public StringBuilder rename() {
+        renamed.setLength(0);
+        return renamer.rename(nodeCode, renamed);
+    }
+}
@@ -0,0 +1,122 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.shader.glsl.parser.GlslParser;
+import com.jme3.shader.glsl.parser.ast.MethodCallAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.ExternalFieldDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.LocalVarDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.MethodDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.util.AstUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmarks of parsing real jME3 shaders and libraries and searching nodes in their AST.
+ *
+ * @author JavaSaBr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlslParserBenchmark {
+
+    @Param({
+            "Common/ShaderLib/Lighting.glsllib",
+            "Common/ShaderLib/PBR.glsllib",
+            "Common/ShaderLib/Skinning.glsllib",
+            "Common/ShaderLib/Optics.glsllib",
+            "Common/ShaderLib/Parallax.glsllib",
+            "Common/MatDefs/Misc/Unshaded.frag",
+            "Common/MatDefs/Light/PBRLighting.vert",
+            "Common/MatDefs/ShaderNodes/Common/unshaded.frag"
+    })
+    private String path;
+
+    @Param({"true", "false"})
+    private boolean preTokenized;
+
+    /**
+     * The code of the shader.
+     */
+    private String code;
+
+    /**
+     * The parsed shader.
+     */
+    private FileDeclarationAstNode file;
+
+    /**
+     * The methods of the parsed shader.
+     */
+    private List<MethodDeclarationAstNode> methods;
+
+    @Setup
+    public void setup() throws IOException {
+        code = readResource(path);
+        file = GlslParser.newInstance(true).parseFileDeclaration(path, code);
+        methods = AstUtils.findAllByType(file, MethodDeclarationAstNode.class);
+    }
+
+    @Benchmark
+    public FileDeclarationAstNode parseFileDeclaration() {
+        return GlslParser.newInstance(preTokenized).parseFileDeclaration(path, code);
+    }
+
+    @Benchmark
+    public void findAllByType(final Blackhole blackhole) {
+        blackhole.consume(AstUtils.findAllByType(file, MethodDeclarationAstNode.class));
+        blackhole.consume(AstUtils.findAllByType(file, ExternalFieldDeclarationAstNode.class));
+        blackhole.consume(AstUtils.findAllByType(file, MethodCallAstNode.class));
+    }
+
+    @Benchmark
+    public int findAllByTypeVisiting() {
+
+        int count = 0;
+
+        // searching from not file nodes visits subtrees instead of using the type index of the file
+        for (final MethodDeclarationAstNode method : methods) {
+            count += AstUtils.findAllByType(method, LocalVarDeclarationAstNode.class).size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the resource from the classpath.
+     *
+     * @param path the path to the resource.
+     * @return the content of the resource.
+     * @throws IOException if the resource can't be read.
+     */
+    static String readResource(final String path) throws IOException {
+
+        final InputStream stream = GlslParserBenchmark.class.getClassLoader().getResourceAsStream(path);
+
+        if (stream == null) {
+            throw new IOException("Not found the resource " + path);
+        }
+
+        final StringBuilder builder = new StringBuilder(4096);
+        final char[] buffer = new char[4096];
+
+        try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            for (int read; (read = reader.read(buffer)) != -1; ) {
+                builder.append(buffer, 0, read);
+            }
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The thread-safe cache of parsed shader sources. The cache is keyed by the path of a shader source and doesn't read
+ * the source again on access, a changed source should be invalidated instead. An invalidation removes the parsed
+ * source, so users of parsed sources can check that their sources are still actual by comparing them with the cached
+ * sources by identity without loading the sources. The cache is limited by the total length of cached sources and
+ * removes the least recently used sources first.
+ *
+ * @author JavaSaBr
+ */
+public class AstShaderCache {
+
+    /**
+     * The cached entry.
+     */
+    private static class Entry {
+
+        /**
+         * The parsed source.
+         */
+        private final FileDeclarationAstNode node;
+
+        private Entry(final FileDeclarationAstNode node) {
+            this.node = node;
+        }
+
+        /**
+         * Gets the weight of this entry.
+         *
+         * @return the weight.
+         */
+        private int getWeight() {
+            return node.getLength();
+        }
+    }
+
+    /**
+     * The cached entries in the access order.
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * The total count of invalidations.
+     */
+    private long invalidations;
+
+    /**
+     * The max total length of cached sources.
+     */
+    private final long maxWeight;
+
+    /**
+     * The current total length of cached sources.
+     */
+    private long weight;
+
+    public AstShaderCache(final long maxWeight) {
+        this.entries = new LinkedHashMap<>(64, 0.75F, true);
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Gets the parsed source by the path.
+     *
+     * @param path the path to the source.
+     * @return the parsed source or null.
+     */
+    public synchronized FileDeclarationAstNode get(final String path) {
+        final Entry entry = entries.get(path);
+        return entry == null ? null : entry.node;
+    }
+
+    /**
+     * Gets the total count of invalidations of all sources. If the count wasn't changed, all sources weren't changed.
+     *
+     * @return the total count of invalidations.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Puts the parsed source to this cache if no source was invalidated after it was read.
+     *
+     * @param path          the path to the source.
+     * @param node          the parsed source.
+     * @param invalidations the total count of invalidations before the source was read.
+     * @return true if the parsed source was put.
+     */
+    public synchronized boolean put(final String path, final FileDeclarationAstNode node, final long invalidations) {
+
+        // the source could be changed after it was read
+        if (invalidations != this.invalidations) {
+            return false;
+        }
+
+        final Entry entry = new Entry(node);
+        final Entry prev = entries.put(path, entry);
+
+        if (prev != null) {
+            weight -= prev.getWeight();
+        }
+
+        weight += entry.getWeight();
+
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+        while (weight > maxWeight && entries.size() > 1) {
+            weight -= iterator.next().getValue().getWeight();
+            iterator.remove();
+        }
+
+        return true;
+    }
+
+    /**
+     * Invalidates the source by the path: removes the parsed source and increments the count of invalidations.
+     *
+     * @param path the path to the source.
+     */
+    public synchronized void invalidate(final String path) {
+        remove(path);
+        invalidations++;
+    }
+
+    /**
+     * Removes the parsed source from this cache.
+     *
+     * @param path the path to the source.
+     * @return the removed parsed source or null.
+     */
+    public synchronized FileDeclarationAstNode remove(final String path) {
+
+        final Entry entry = entries.remove(path);
+
+        if (entry == null) {
+            return null;
+        }
+
+        weight -= entry.getWeight();
+
+        return entry.node;
+    }
+
+    /**
+     * Removes all parsed sources from this cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Gets the count of cached sources.
+     *
+     * @return the count of cached sources.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the total length of cached sources.
+     *
+     * @return the total length of cached sources.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+}
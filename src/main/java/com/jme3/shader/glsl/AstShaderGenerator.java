@@ -2,6 +2,7 @@ package com.jme3.shader.glsl;
 
 import static com.jme3.shader.glsl.parser.ast.util.AstUtils.findAllByType;
 import static java.lang.System.getProperty;
+import com.jme3.asset.AssetInfo;
 import com.jme3.asset.AssetKey;
 import com.jme3.asset.AssetManager;
 import com.jme3.asset.cache.AssetCache;
@@ -9,28 +10,53 @@ import com.jme3.material.ShaderGenerationInfo;
 import com.jme3.material.TechniqueDef;
 import com.jme3.shader.*;
 import com.jme3.shader.Shader.ShaderType;
-import com.jme3.shader.glsl.parser.GlslLang;
+import com.jme3.shader.glsl.parser.GlslIdentifierTable;
 import com.jme3.shader.glsl.parser.GlslParser;
 import com.jme3.shader.glsl.parser.ast.AstNode;
+import com.jme3.shader.glsl.parser.ast.BodyAstNode;
 import com.jme3.shader.glsl.parser.ast.NameAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.ExternalFieldDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.LocalVarDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.MethodDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.preprocessor.DefinePreprocessorAstNode;
 import com.jme3.shader.glsl.parser.ast.preprocessor.ExtensionPreprocessorAstNode;
 import com.jme3.shader.glsl.parser.ast.preprocessor.ImportPreprocessorAstNode;
 import com.jme3.shader.glsl.parser.ast.util.AstUtils;
 import com.jme3.shader.glsl.parser.ast.util.CharPredicate;
+import com.jme3.shader.glsl.parser.ast.util.Predicate;
 import com.jme3.shader.glsl.parser.ast.value.DefineValueAstNode;
 import com.jme3.shader.glsl.parser.ast.value.StringValueAstNode;
-import com.jme3.shader.plugins.ShaderAssetKey;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.FutureTask;
 
 /**
  * The base implementation of a shader generator with using AST GLSL to generate a result shader.
@@ -40,21 +66,57 @@ import java.util.Map;
 public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
 
     public static final String PROP_USE_CASE = "AstShaderGenerator.useCache";
+    public static final String PROP_CACHE_SIZE = "AstShaderGenerator.cacheSize";
+    public static final String PROP_SHADER_CACHE_SIZE = "AstShaderGenerator.shaderCacheSize";
+    public static final String PROP_PARALLEL_STAGES = "AstShaderGenerator.parallelStages";
+    public static final String PROP_PARALLEL_PARSING = "AstShaderGenerator.parallelParsing";
+    public static final String PROP_CONTEXT_POOL_SIZE = "AstShaderGenerator.contextPoolSize";
+    public static final String PROP_ELIMINATE_DEAD_CODE = "AstShaderGenerator.eliminateDeadCode";
+    public static final String PROP_FOLD_CONSTANTS = "AstShaderGenerator.foldConstants";
 
     private static final boolean USE_AST_CACHE;
 
+    /**
+     * The shared cache of parsed shader sources.
+     */
+    private static final AstShaderCache AST_CACHE;
+
     private static final String INPUT_VAR_DEFINITION_PREFIX = "HAS_INPUT_";
     private static final String OUTPUT_VAR_DEFINITION_PREFIX = "HAS_OUTPUT_";
 
     static {
         USE_AST_CACHE = Boolean.parseBoolean(getProperty(PROP_USE_CASE, "true"));
+        AST_CACHE = new AstShaderCache(Long.parseLong(getProperty(PROP_CACHE_SIZE, "16777216")));
+    }
+
+    /**
+     * Gets the shared cache of parsed shader sources.
+     *
+     * @return the shared cache of parsed shader sources.
+     */
+    public static AstShaderCache getAstCache() {
+        return AST_CACHE;
+    }
+
+    /**
+     * Invalidates the shader source by the path in the shared cache, so the source is read again and all imports
+     * and generated shaders which use it are resolved and generated again. Parsed shader sources are never checked
+     * against their files, so every changed shader source should be invalidated.
+     *
+     * @param shaderSourcePath the path to the shader source.
+     */
+    public static void invalidate(final String shaderSourcePath) {
+        AST_CACHE.invalidate(shaderSourcePath);
     }
 
     protected static final char[] EMPTY_CHARS = new char[0];
 
-    private class ImportedShaderKey extends AssetKey<Reader> {
+    /**
+     * The key to locate a shader source without the shader loader of the asset manager.
+     */
+    private class ShaderSourceKey extends AssetKey<Reader> {
 
-        private ImportedShaderKey(final String name) {
+        private ShaderSourceKey(final String name) {
             super(name);
         }
 
@@ -196,228 +258,1312 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
     }
 
     /**
-     * The thread local state of this generator.
+     * The state of the generation context which is generating on the current thread.
+     */
+    private static final ThreadLocal<AstShaderGeneratorState> CURRENT_STATE = new ThreadLocal<>();
+
+    /**
+     * The reusable buffer of the current thread to read imported shader sources.
      */
-    protected static final ThreadLocal<AstShaderGeneratorState> LOCAL_STATE = new ThreadLocal<AstShaderGeneratorState>() {
+    private static final ThreadLocal<char[]> LOAD_BUFFER = new ThreadLocal<char[]>() {
 
         @Override
-        protected AstShaderGeneratorState initialValue() {
-            return new AstShaderGeneratorState();
+        protected char[] initialValue() {
+            return new char[8192];
         }
     };
 
-    public AstShaderGenerator(final AssetManager assetManager) {
-        super(assetManager);
-    }
+    private static final int MAX_TEMPLATES = 1024;
 
-    @Override
-    protected void indent() {
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        state.setIndent(state.getIndent() + 1);
-    }
+    private static final int CONTEXT_POOL_SIZE = Integer.parseInt(getProperty(PROP_CONTEXT_POOL_SIZE, "8"));
 
-    @Override
-    protected void unIndent() {
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        if (state.getIndent() < 0) return;
-        state.setIndent(state.getIndent() - 1);
-    }
+    private static final int SHADER_CACHE_SIZE = Integer.parseInt(getProperty(PROP_SHADER_CACHE_SIZE, "128"));
 
-    @Override
-    protected void appendIndent(final StringBuilder source) {
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        source.append(getIndent(state.getIndent()));
-    }
+    /**
+     * The graph of imported shader sources.
+     */
+    private final ShaderImportGraph importGraph;
 
-    @Override
-    public void initialize(final TechniqueDef techniqueDef) {
-        super.initialize(techniqueDef);
+    /**
+     * The cache of compiled shader node templates by the keys of shader nodes.
+     */
+    private final Map<String, ShaderNodeTemplate> templates;
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        state.setTechniqueDef(techniqueDef);
-        state.setIndent(0);
-        state.getImportedGlobalUniforms().clear();
+    /**
+     * The cache of generated shaders.
+     */
+    private final ShaderOutputCache shaderCache;
 
-        prepareShaderNodeSources(techniqueDef.getShaderNodes());
-    }
+    /**
+     * The validator of cached generated shaders.
+     */
+    private final Predicate<ShaderOutputCache.CachedShader> shaderValidator;
 
-    @Override
-    public Shader generateShader(final String definesSourceCode) {
+    /**
+     * The loader of imported shader sources.
+     */
+    private final ShaderImportGraph.SourceLoader importLoader;
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        final TechniqueDef techniqueDef = state.getTechniqueDef();
-        final Shader result = super.generateShader(definesSourceCode);
+    /**
+     * The pool of released generation contexts.
+     */
+    private final Deque<GenerationContext> contextPool;
 
-        // we need to add uniform bindings from imported shaders, because it can be unpresented in shader nodes.
-        final List<UniformBinding> worldBindings = techniqueDef.getWorldBindings();
-        final List<ExternalFieldDeclarationAstNode> globalUniforms = state.getImportedGlobalUniforms();
+    /**
+     * The generation context of the current technique definition which was initialized by
+     * {@link #initialize(TechniqueDef)}.
+     */
+    private volatile GenerationContext initializedContext;
 
-        AstUtils.removeExists(globalUniforms, worldBindings);
+    /**
+     * The executor to parse shader node sources in parallel or null.
+     */
+    private volatile Executor sourceExecutor;
 
-        if (!globalUniforms.isEmpty()) {
-            for (final ExternalFieldDeclarationAstNode field : globalUniforms) {
+    /**
+     * The pool to generate vertex and fragment stages in parallel.
+     */
+    private volatile ForkJoinPool stagePool;
 
-                final NameAstNode nameNode = field.getName();
-                final String name = nameNode.getName();
+    /**
+     * True if vertex and fragment stages should be generated in parallel.
+     */
+    private volatile boolean parallelStages;
 
-                final UniformBinding binding = UniformBinding.valueOf(name.substring(2, name.length()));
-                result.addUniformBinding(binding);
+    /**
+     * True if unused functions, uniforms and definitions should be removed from generated shaders.
+     */
+    private volatile boolean eliminateDeadCode;
+
+    /**
+     * True if literal default values of not mapped inputs should be substituted into shader node code.
+     */
+    private volatile boolean foldConstants;
+
+    /**
+     * The listener of finished builds or null if generations aren't instrumented.
+     */
+    private volatile ShaderGenerationListener generationListener;
+
+    public AstShaderGenerator(final AssetManager assetManager) {
+        super(assetManager);
+        this.importGraph = new ShaderImportGraph();
+        this.contextPool = new ArrayDeque<>();
+        this.templates = new LinkedHashMap<String, ShaderNodeTemplate>(64, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, ShaderNodeTemplate> eldest) {
+                return size() > MAX_TEMPLATES;
+            }
+        };
+        this.shaderCache = new ShaderOutputCache(SHADER_CACHE_SIZE);
+        this.shaderValidator = new Predicate<ShaderOutputCache.CachedShader>() {
+
+            @Override
+            public boolean test(final ShaderOutputCache.CachedShader entry) {
+                return isActual(entry);
+            }
+        };
+        this.importLoader = new ShaderImportGraph.SourceLoader() {
+
+            @Override
+            public FileDeclarationAstNode load(final String path) {
+                return parseShaderSource(path);
+            }
+
+            @Override
+            public boolean isActual(final String path, final FileDeclarationAstNode source) {
+                return AST_CACHE.get(path) == source;
             }
+        };
+        this.stagePool = ForkJoinPool.commonPool();
+        this.parallelStages = Boolean.parseBoolean(getProperty(PROP_PARALLEL_STAGES, "false"));
+        this.eliminateDeadCode = Boolean.parseBoolean(getProperty(PROP_ELIMINATE_DEAD_CODE, "false"));
+        this.foldConstants = Boolean.parseBoolean(getProperty(PROP_FOLD_CONSTANTS, "false"));
+
+        if (Boolean.parseBoolean(getProperty(PROP_PARALLEL_PARSING, "false"))) {
+            this.sourceExecutor = ForkJoinPool.commonPool();
         }
+    }
 
-        return result;
+    /**
+     * Gets the executor to parse shader node sources in parallel.
+     *
+     * @return the executor to parse shader node sources or null if they are parsed on the calling thread.
+     */
+    public Executor getSourceExecutor() {
+        return sourceExecutor;
     }
 
-    @Override
-    protected String buildShader(final List<ShaderNode> shaderNodes, final ShaderGenerationInfo info,
-                                 final ShaderType type) {
+    /**
+     * Sets the executor to parse shader node sources in parallel.
+     *
+     * @param sourceExecutor the executor to parse shader node sources or null to parse them on the calling thread.
+     */
+    public void setSourceExecutor(final Executor sourceExecutor) {
+        this.sourceExecutor = sourceExecutor;
+    }
 
-        if (type != ShaderType.Vertex && type != ShaderType.Fragment) {
-            return null;
-        }
+    /**
+     * Returns true if vertex and fragment stages are generated in parallel.
+     *
+     * @return true if vertex and fragment stages are generated in parallel.
+     */
+    public boolean isParallelStages() {
+        return parallelStages;
+    }
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
-        final List<ExtensionPreprocessorAstNode> extensionNodes = state.getExtensionNodes();
-        extensionNodes.clear();
+    /**
+     * Sets true if vertex and fragment stages should be generated in parallel.
+     *
+     * @param parallelStages true if vertex and fragment stages should be generated in parallel.
+     */
+    public void setParallelStages(final boolean parallelStages) {
+        this.parallelStages = parallelStages;
+    }
 
-        final List<ImportPreprocessorAstNode> importNodes = state.getImportNodes();
-        importNodes.clear();
+    /**
+     * Returns true if unused functions, uniforms and definitions are removed from generated shaders.
+     *
+     * @return true if dead code is removed from generated shaders.
+     */
+    public boolean isEliminateDeadCode() {
+        return eliminateDeadCode;
+    }
 
-        findImportsAndExtensions(shaderNodes, type, shaderNodeSources, extensionNodes, importNodes);
+    /**
+     * Sets true if unused functions, uniforms and definitions should be removed from generated shaders.
+     *
+     * @param eliminateDeadCode true if dead code should be removed from generated shaders.
+     */
+    public void setEliminateDeadCode(final boolean eliminateDeadCode) {
+        this.eliminateDeadCode = eliminateDeadCode;
+    }
 
-        AstUtils.removeExtensionDuplicates(extensionNodes);
-        AstUtils.removeImportDuplicates(importNodes);
+    /**
+     * Returns true if literal default values of not mapped inputs are substituted into shader node code instead of
+     * declaring variables with the default values.
+     *
+     * @return true if default values are folded.
+     */
+    public boolean isFoldConstants() {
+        return foldConstants;
+    }
 
-        final StringBuilder headerSource = clear(state.getHeaderSource());
-        final StringBuilder importsSource = clear(state.getImportsSource());
-        final StringBuilder uniformsSource = clear(state.getUniformsSource());
-        final StringBuilder methodsSource = clear(state.getMethodsSource());
-        final StringBuilder mainSource = clear(state.getMainSource());
+    /**
+     * Sets true if literal default values of not mapped inputs should be substituted into shader node code instead of
+     * declaring variables with the default values.
+     *
+     * @param foldConstants true if default values should be folded.
+     */
+    public void setFoldConstants(final boolean foldConstants) {
+        this.foldConstants = foldConstants;
+    }
 
-        generateExtensions(extensionNodes, headerSource);
+    /**
+     * Gets the listener of finished builds.
+     *
+     * @return the listener of finished builds or null.
+     */
+    public ShaderGenerationListener getGenerationListener() {
+        return generationListener;
+    }
 
-        final List<ExternalFieldDeclarationAstNode> importedUniforms = state.getImportedUnforms();
-        importedUniforms.clear();
+    /**
+     * Sets the listener of finished builds. While the listener is set, every build collects times of generation
+     * phases and counters into {@link ShaderGenerationMetrics} and passes them to the listener.
+     *
+     * @param generationListener the listener of finished builds or null to disable instrumentation.
+     */
+    public void setGenerationListener(final ShaderGenerationListener generationListener) {
+        this.generationListener = generationListener;
+    }
 
-        generateImports(importNodes, importedUniforms, importsSource);
+    /**
+     * Gets the pool to generate vertex and fragment stages in parallel.
+     *
+     * @return the pool to generate stages.
+     */
+    public ForkJoinPool getStagePool() {
+        return stagePool;
+    }
 
-        AstUtils.copyGlobalUniforms(importedUniforms, state.getImportedGlobalUniforms());
+    /**
+     * Sets the pool to generate vertex and fragment stages in parallel.
+     *
+     * @param stagePool the pool to generate stages.
+     */
+    public void setStagePool(final ForkJoinPool stagePool) {
 
-        generateUniforms(uniformsSource, info, type);
+        if (stagePool == null) {
+            throw new IllegalArgumentException("The stage pool can't be null.");
+        }
 
-        if (type == ShaderType.Vertex) {
-            generateAttributes(uniformsSource, info);
+        this.stagePool = stagePool;
+    }
+
+    /**
+     * Gets the state of the generation context which is generating on the current thread.
+     *
+     * @return the state of the current generation.
+     */
+    protected AstShaderGeneratorState getState() {
+
+        final AstShaderGeneratorState state = CURRENT_STATE.get();
+
+        if (state == null) {
+            throw new IllegalStateException("No generation context is generating on the current thread.");
         }
 
-        generateVaryings(uniformsSource, info, type);
-        generateMethods(shaderNodes, type, methodsSource);
-        generateStartOfMainSection(mainSource, info, type);
-        generateDeclarationAndMainBody(shaderNodes, null, mainSource, info, type);
-        generateEndOfMainSection(mainSource, info, type);
-        generateVariableDefinitions(headerSource, state.getResultUsedVariableDefinitions());
-        generateCompatibilityDefines(headerSource, type);
-        generateShaderNodeHeaders(shaderNodes, info, type, headerSource);
+        return state;
+    }
 
-        final StringBuilder result = new StringBuilder();
+    /**
+     * Binds the state to the current thread.
+     *
+     * @param state the state to bind.
+     * @return the previous bound state or null.
+     */
+    private static AstShaderGeneratorState bindState(final AstShaderGeneratorState state) {
+        final AstShaderGeneratorState prevState = CURRENT_STATE.get();
+        CURRENT_STATE.set(state);
+        return prevState;
+    }
 
-        if (headerSource.length() > 0) {
-            result.append(headerSource).append('\n');
+    /**
+     * Restores the previous bound state of the current thread.
+     *
+     * @param prevState the previous bound state or null.
+     */
+    private static void restoreState(final AstShaderGeneratorState prevState) {
+        if (prevState == null) {
+            CURRENT_STATE.remove();
+        } else {
+            CURRENT_STATE.set(prevState);
         }
+    }
 
-        if (importsSource.length() > 0) {
-            result.append(importsSource);
+    /**
+     * Creates a new generation context of the technique definition or takes a released context from the pool.
+     * All shader node sources of the technique definition are parsed by this method.
+     *
+     * @param techniqueDef the technique definition.
+     * @return the generation context.
+     */
+    public GenerationContext newContext(final TechniqueDef techniqueDef) {
+
+        if (techniqueDef == null) {
+            throw new IllegalArgumentException("The technique definition can't be null.");
         }
 
-        if (uniformsSource.length() > 0) {
-            result.append(uniformsSource).append('\n');
+        GenerationContext context;
+
+        synchronized (contextPool) {
+            context = contextPool.pollFirst();
         }
 
-        if (methodsSource.length() > 0) {
-            result.append(methodsSource).append('\n');
+        if (context == null) {
+            context = new GenerationContext(this);
+        }
+
+        final AstShaderGeneratorState state = context.getState();
+        final AstShaderGeneratorState prevState = bindState(state);
+        try {
+            state.setTechniqueDef(techniqueDef);
+            state.setIndent(0);
+            state.getImportedGlobalUniforms().clear();
+            startBuild(state, techniqueDef);
+
+            final long start = startPhase(state);
+            prepareShaderNodeSources(techniqueDef.getShaderNodes());
+            endPhase(state, ShaderGenerationPhase.PREPARE_SHADER_NODE_SOURCES, start);
+
+        } catch (final RuntimeException | Error e) {
+            state.reset();
+            throw e;
+        } finally {
+            restoreState(prevState);
         }
 
-        return result.append(mainSource).toString();
+        context.setTechniqueDef(techniqueDef);
+
+        return context;
     }
 
     /**
-     * Generates shader nodes headers.
+     * Returns the generation context to the pool.
      *
-     * @param shaderNodes  the list of shader nodes.
-     * @param info         the generating information.
-     * @param type         the shader type.
-     * @param headerSource the header source.
+     * @param context the generation context.
      */
-    private void generateShaderNodeHeaders(final List<ShaderNode> shaderNodes, final ShaderGenerationInfo info,
-                                           final ShaderType type, final StringBuilder headerSource) {
+    void releaseContext(final GenerationContext context) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
-        final List<DefineValueAstNode> defineValueNodes = state.getDefineValueNodes();
-        final List<String> unusedNodes = info.getUnusedNodes();
-
-        for (final ShaderNode shaderNode : shaderNodes) {
+        if (context.getTechniqueDef() == null) {
+            return;
+        }
 
-            if (unusedNodes.contains(shaderNode.getName())) {
-                continue;
-            }
+        context.setTechniqueDef(null);
+        context.getState().reset();
 
-            final ShaderNodeDefinition definition = shaderNode.getDefinition();
-            if (definition.getType() != type) {
-                continue;
+        synchronized (contextPool) {
+            if (contextPool.size() < CONTEXT_POOL_SIZE) {
+                contextPool.addFirst(context);
             }
+        }
+    }
 
-            final FileDeclarationAstNode shaderFile = shaderNodeSources.get(shaderNode);
-            final List<AstNode> children = shaderFile.getChildren();
-
-            for (final AstNode child : children) {
-
-                if (child instanceof MethodDeclarationAstNode) {
-                    continue;
-                } else if (child instanceof ImportPreprocessorAstNode) {
-                    continue;
-                }
+    /**
+     * Generates the shader of the technique definition of the generation context.
+     *
+     * @param context           the generation context.
+     * @param definesSourceCode the defines source code.
+     * @return the generated shader.
+     */
+    Shader generate(final GenerationContext context, final String definesSourceCode) {
 
-                defineValueNodes.clear();
-                findAllByType(child, defineValueNodes, DefineValueAstNode.class);
+        final TechniqueDef techniqueDef = context.getTechniqueDef();
 
-                final String code = updateDefinitionNames(shaderNode, child.getText(), defineValueNodes);
+        if (techniqueDef == null) {
+            throw new IllegalStateException("The generation context was already released.");
+        }
 
-                headerSource.append(code).append('\n').append('\n');
-            }
+        final AstShaderGeneratorState state = context.getState();
+        final AstShaderGeneratorState prevState = bindState(state);
+        try {
+            startBuild(state, techniqueDef);
+            final Shader shader = generateShader(state, techniqueDef, definesSourceCode);
+            finishBuild(state);
+            return shader;
+        } finally {
+            state.setMetrics(null);
+            restoreState(prevState);
         }
     }
 
     /**
-     * Generates compatibility defines.
+     * Starts the metrics of a new build of the state if the listener of builds is set and the metrics of the
+     * current build weren't started yet.
      *
-     * @param headerSource the header source.
-     * @param type         the shader type.
+     * @param state        the state of the generation.
+     * @param techniqueDef the technique definition.
      */
-    protected void generateCompatibilityDefines(final StringBuilder headerSource, final ShaderType type) {
+    private void startBuild(final AstShaderGeneratorState state, final TechniqueDef techniqueDef) {
+        if (generationListener == null) {
+            state.setMetrics(null);
+        } else if (state.getMetrics() == null) {
+            state.setMetrics(new ShaderGenerationMetrics(techniqueDef.getName()));
+        }
     }
 
     /**
-     * Generates variable definitions.
+     * Finishes the metrics of the current build of the state and passes them to the listener of builds.
      *
-     * @param headerSource  the header source.
-     * @param result the result definition list.
+     * @param state the state of the generation.
      */
-    private void generateVariableDefinitions(final StringBuilder headerSource, final List<String> result) {
+    private void finishBuild(final AstShaderGeneratorState state) {
 
-        if (result.isEmpty()) {
-            return;
-        }
+        final ShaderGenerationMetrics metrics = state.getMetrics();
+        final ShaderGenerationListener listener = generationListener;
 
-        for (final String define : result) {
-            headerSource.append("#define ").append(define).append(" 1").append('\n');
-        }
+        state.setMetrics(null);
 
-        headerSource.append('\n');
+        if (metrics != null && listener != null) {
+            metrics.finish();
+            listener.onBuildFinished(metrics);
+        }
     }
 
     /**
-     * Finds imports and extensionNodes from the shader nodes.
+     * Gets the start time of a phase if the current build of the state is instrumented.
+     *
+     * @param state the state of the generation.
+     * @return the start time in nanoseconds or 0.
+     */
+    private static long startPhase(final AstShaderGeneratorState state) {
+        return state.getMetrics() == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time of the phase to the metrics of the current build of the state.
+     *
+     * @param state the state of the generation.
+     * @param phase the phase.
+     * @param start the start time of the phase.
+     */
+    private static void endPhase(final AstShaderGeneratorState state, final ShaderGenerationPhase phase,
+                                 final long start) {
+
+        final ShaderGenerationMetrics metrics = state.getMetrics();
+
+        if (metrics != null) {
+            metrics.addPhaseTime(phase, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void indent() {
+        final AstShaderGeneratorState state = getState();
+        state.setIndent(state.getIndent() + 1);
+    }
+
+    @Override
+    protected void unIndent() {
+        final AstShaderGeneratorState state = getState();
+        if (state.getIndent() < 0) return;
+        state.setIndent(state.getIndent() - 1);
+    }
+
+    @Override
+    protected void appendIndent(final StringBuilder source) {
+        final AstShaderGeneratorState state = getState();
+        source.append(getIndent(state.getIndent()));
+    }
+
+    @Override
+    public void initialize(final TechniqueDef techniqueDef) {
+        super.initialize(techniqueDef);
+
+        final GenerationContext prevContext = initializedContext;
+
+        if (prevContext != null) {
+            initializedContext = null;
+            prevContext.release();
+        }
+
+        initializedContext = newContext(techniqueDef);
+    }
+
+    /**
+     * Gets the cache of generated shaders of this generator.
+     *
+     * @return the cache of generated shaders.
+     */
+    public ShaderOutputCache getShaderCache() {
+        return shaderCache;
+    }
+
+    @Override
+    public Shader generateShader(final String definesSourceCode) {
+
+        final GenerationContext context = initializedContext;
+
+        if (techniqueDef == null || context == null) {
+            return super.generateShader(definesSourceCode);
+        }
+
+        initializedContext = null;
+        techniqueDef = null;
+
+        try {
+            return context.generate(definesSourceCode);
+        } finally {
+            context.release();
+        }
+    }
+
+    /**
+     * Writes the shader source of the type of the technique definition of the generation context to the output.
+     *
+     * @param context the generation context.
+     * @param type    the shader type.
+     * @param output  the output.
+     * @return false if the shader type isn't supported.
+     * @throws IOException if the output throws it.
+     */
+    boolean write(final GenerationContext context, final ShaderType type, final Appendable output)
+            throws IOException {
+
+        final TechniqueDef techniqueDef = context.getTechniqueDef();
+
+        if (techniqueDef == null) {
+            throw new IllegalStateException("The generation context was already released.");
+        }
+
+        final AstShaderGeneratorState state = context.getState();
+        final AstShaderGeneratorState prevState = bindState(state);
+        try {
+            startBuild(state, techniqueDef);
+            state.getImportedSources().clear();
+            state.getImportedGlobalUniforms().clear();
+
+            final boolean result = buildShader(techniqueDef.getShaderNodes(),
+                    techniqueDef.getShaderGenerationInfo(), type, output);
+
+            finishBuild(state);
+            return result;
+
+        } finally {
+            state.setMetrics(null);
+            restoreState(prevState);
+        }
+    }
+
+    /**
+     * Generates the shader of the technique definition with the state which is bound to the current thread.
+     *
+     * @param state             the state of the generation.
+     * @param techniqueDef      the technique definition.
+     * @param definesSourceCode the defines source code.
+     * @return the generated shader.
+     */
+    protected Shader generateShader(final AstShaderGeneratorState state, final TechniqueDef techniqueDef,
+                                    final String definesSourceCode) {
+
+        final String key = getShaderKey(techniqueDef, definesSourceCode);
+        final ShaderOutputCache.CachedShader cached = shaderCache.get(key, shaderValidator);
+
+        if (cached != null) {
+
+            final ShaderGenerationMetrics metrics = state.getMetrics();
+
+            if (metrics != null) {
+                metrics.setShaderCacheHit(true);
+            }
+
+            return cached.toShader();
+        }
+
+        state.getImportedSources().clear();
+        state.getImportedGlobalUniforms().clear();
+
+        final Shader result;
+
+        if (parallelStages) {
+            result = generateStagesInParallel(state, techniqueDef, definesSourceCode);
+        } else {
+            result = generateStages(techniqueDef, definesSourceCode);
+        }
+
+        final List<UniformBinding> bindings = new ArrayList<>();
+
+        // we need to add uniform bindings from imported shaders, because it can be unpresented in shader nodes.
+        final List<UniformBinding> worldBindings = techniqueDef.getWorldBindings();
+        final List<ExternalFieldDeclarationAstNode> globalUniforms = state.getImportedGlobalUniforms();
+
+        AstUtils.removeExists(globalUniforms, worldBindings);
+
+        if (!globalUniforms.isEmpty()) {
+            for (final ExternalFieldDeclarationAstNode field : globalUniforms) {
+
+                final NameAstNode nameNode = field.getName();
+                final String name = nameNode.getName();
+
+                final UniformBinding binding = UniformBinding.valueOf(name.substring(2, name.length()));
+                result.addUniformBinding(binding);
+                bindings.add(binding);
+            }
+        }
+
+        final List<FileDeclarationAstNode> nodeSources = new ArrayList<>();
+
+        for (final ShaderNode shaderNode : techniqueDef.getShaderNodes()) {
+            nodeSources.add(state.getShaderNodeSources().get(shaderNode));
+        }
+
+        shaderCache.put(key, new ShaderOutputCache.CachedShader(result, bindings, nodeSources,
+                state.getImportedSources()));
+
+        return result;
+    }
+
+    /**
+     * Generates vertex and fragment stages of the shader in parallel. Each stage is generated with its own scratch
+     * state, the results of both stages are merged to the state of the generation in the same order as the
+     * sequential generation does.
+     *
+     * @param state             the state of the generation.
+     * @param techniqueDef      the technique definition.
+     * @param definesSourceCode the defines source code.
+     * @return the generated shader.
+     */
+    private Shader generateStagesInParallel(final AstShaderGeneratorState state, final TechniqueDef techniqueDef,
+                                            final String definesSourceCode) {
+
+        final AstShaderGeneratorState vertexState = state.getStageState(ShaderType.Vertex);
+        final AstShaderGeneratorState fragmentState = state.getStageState(ShaderType.Fragment);
+        vertexState.prepareStage(state);
+        fragmentState.prepareStage(state);
+
+        final List<ShaderNode> shaderNodes = techniqueDef.getShaderNodes();
+        final ShaderGenerationInfo info = techniqueDef.getShaderGenerationInfo();
+
+        final ForkJoinTask<String> vertexTask = stagePool.submit(new Callable<String>() {
+
+            @Override
+            public String call() {
+                return buildStage(vertexState, shaderNodes, info, ShaderType.Vertex);
+            }
+        });
+
+        final String fragmentSource = buildStage(fragmentState, shaderNodes, info, ShaderType.Fragment);
+        final String vertexSource = vertexTask.join();
+
+        final List<ExternalFieldDeclarationAstNode> globalUniforms = state.getImportedGlobalUniforms();
+        final List<FileDeclarationAstNode> importedSources = state.getImportedSources();
+
+        for (final AstShaderGeneratorState stageState : new AstShaderGeneratorState[]{vertexState, fragmentState}) {
+
+            for (final ExternalFieldDeclarationAstNode field : stageState.getImportedGlobalUniforms()) {
+                if (!globalUniforms.contains(field)) {
+                    globalUniforms.add(field);
+                }
+            }
+
+            for (final FileDeclarationAstNode importedSource : stageState.getImportedSources()) {
+                if (!importedSources.contains(importedSource)) {
+                    importedSources.add(importedSource);
+                }
+            }
+        }
+
+        final String techniqueName = techniqueDef.getName();
+        final Shader shader = new Shader();
+
+        for (final ShaderType type : ShaderType.values()) {
+
+            final String source;
+
+            if (type == ShaderType.Vertex) {
+                source = vertexSource;
+            } else if (type == ShaderType.Fragment) {
+                source = fragmentSource;
+            } else {
+                continue;
+            }
+
+            shader.addSource(type, techniqueName + "." + type.getExtension(), source, definesSourceCode,
+                    getLanguageAndVersion(type));
+        }
+
+        return shader;
+    }
+
+    /**
+     * Generates all stages of the shader one by one on the current thread.
+     *
+     * @param techniqueDef      the technique definition.
+     * @param definesSourceCode the defines source code.
+     * @return the generated shader.
+     */
+    private Shader generateStages(final TechniqueDef techniqueDef, final String definesSourceCode) {
+
+        final List<ShaderNode> shaderNodes = techniqueDef.getShaderNodes();
+        final ShaderGenerationInfo info = techniqueDef.getShaderGenerationInfo();
+        final String techniqueName = techniqueDef.getName();
+        final Shader shader = new Shader();
+
+        for (final ShaderType type : ShaderType.values()) {
+
+            final String source = buildShader(shaderNodes, info, type);
+
+            if (source != null) {
+                shader.addSource(type, techniqueName + "." + type.getExtension(), source, definesSourceCode,
+                        getLanguageAndVersion(type));
+            }
+        }
+
+        return shader;
+    }
+
+    /**
+     * Builds the stage of the shader with the scratch state of the stage on the current thread.
+     *
+     * @param stageState  the scratch state of the stage.
+     * @param shaderNodes the list of shader nodes.
+     * @param info        the generating information.
+     * @param type        the shader type of the stage.
+     * @return the source code of the stage.
+     */
+    private String buildStage(final AstShaderGeneratorState stageState, final List<ShaderNode> shaderNodes,
+                              final ShaderGenerationInfo info, final ShaderType type) {
+
+        final AstShaderGeneratorState prevState = bindState(stageState);
+        try {
+            return buildShader(shaderNodes, info, type);
+        } finally {
+            restoreState(prevState);
+        }
+    }
+
+    /**
+     * Checks that all shader sources which were used to generate the cached shader weren't changed. Shader node
+     * sources are compared with the sources of the current state and imported sources are compared with the cached
+     * sources without loading, so an invalidated or evicted imported source makes the cached shader not actual.
+     *
+     * @param entry the cached shader.
+     * @return true if the cached shader is actual.
+     */
+    private boolean isActual(final ShaderOutputCache.CachedShader entry) {
+
+        final AstShaderGeneratorState state = getState();
+        final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
+        final List<ShaderNode> shaderNodes = state.getTechniqueDef().getShaderNodes();
+        final List<FileDeclarationAstNode> nodeSources = entry.getNodeSources();
+
+        if (nodeSources.size() != shaderNodes.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < nodeSources.size(); i++) {
+            if (shaderNodeSources.get(shaderNodes.get(i)) != nodeSources.get(i)) {
+                return false;
+            }
+        }
+
+        final List<FileDeclarationAstNode> importedSources = entry.getImportedSources();
+
+        for (int i = 0; i < importedSources.size(); i++) {
+            final FileDeclarationAstNode importedSource = importedSources.get(i);
+            if (AST_CACHE.get(importedSource.getPath()) != importedSource) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Builds the key of the generated shader from the generator, the GLSL versions, the defines and the structure of
+     * the technique definition including inputs and outputs of shader node definitions.
+     *
+     * @param techniqueDef      the technique definition.
+     * @param definesSourceCode the defines source code.
+     * @return the key of the generated shader.
+     */
+    private String getShaderKey(final TechniqueDef techniqueDef, final String definesSourceCode) {
+
+        final StringBuilder key = new StringBuilder(1024)
+                .append(getClass().getName()).append('|')
+                .append(getLanguageAndVersion(ShaderType.Vertex)).append('|')
+                .append(getLanguageAndVersion(ShaderType.Fragment)).append('|')
+                .append(techniqueDef.getName()).append('|')
+                .append(eliminateDeadCode).append('|')
+                .append(foldConstants).append('|')
+                .append(definesSourceCode).append('|');
+
+        for (final ShaderNode shaderNode : techniqueDef.getShaderNodes()) {
+
+            final ShaderNodeDefinition definition = shaderNode.getDefinition();
+
+            key.append("node:").append(shaderNode.getName()).append(',')
+                    .append(shaderNode.getCondition()).append(',')
+                    .append(definition.getPath()).append(',')
+                    .append(definition.getName()).append(',')
+                    .append(definition.getType()).append(',')
+                    .append(definition.getShadersPath()).append(',')
+                    .append(definition.getShadersLanguage()).append('|');
+
+            // types and default values of inputs and outputs can be changed without changing of the shader source
+            appendVariables(key.append("inputs:"), definition.getInputs());
+            appendVariables(key.append("outputs:"), definition.getOutputs());
+
+            for (final VariableMapping mapping : shaderNode.getInputMapping()) {
+                appendMapping(key.append("in:"), mapping);
+            }
+
+            for (final VariableMapping mapping : shaderNode.getOutputMapping()) {
+                appendMapping(key.append("out:"), mapping);
+            }
+        }
+
+        final ShaderGenerationInfo info = techniqueDef.getShaderGenerationInfo();
+
+        appendVariables(key.append("attributes:"), info.getAttributes());
+        appendVariables(key.append("vertexUniforms:"), info.getVertexUniforms());
+        appendVariables(key.append("fragmentUniforms:"), info.getFragmentUniforms());
+        appendVariable(key.append("vertexGlobal:"), info.getVertexGlobal());
+        appendVariables(key.append("fragmentGlobals:"), info.getFragmentGlobals());
+        appendVariables(key.append("varyings:"), info.getVaryings());
+
+        key.append("unused:").append(info.getUnusedNodes()).append('|');
+        key.append("bindings:").append(techniqueDef.getWorldBindings());
+
+        return key.toString();
+    }
+
+    /**
+     * Appends the variable mapping to the key.
+     *
+     * @param key     the key.
+     * @param mapping the variable mapping.
+     */
+    private void appendMapping(final StringBuilder key, final VariableMapping mapping) {
+        appendVariable(key, mapping.getLeftVariable());
+        appendVariable(key.append('='), mapping.getRightVariable());
+        key.append(mapping.getLeftSwizzling()).append(',')
+                .append(mapping.getRightSwizzling()).append(',')
+                .append(mapping.getCondition()).append('|');
+    }
+
+    /**
+     * Appends the list of variables to the key.
+     *
+     * @param key       the key.
+     * @param variables the list of variables.
+     */
+    private void appendVariables(final StringBuilder key, final List<ShaderNodeVariable> variables) {
+
+        for (final ShaderNodeVariable variable : variables) {
+            appendVariable(key, variable);
+        }
+
+        key.append('|');
+    }
+
+    /**
+     * Appends the variable to the key.
+     *
+     * @param key      the key.
+     * @param variable the variable.
+     */
+    private void appendVariable(final StringBuilder key, final ShaderNodeVariable variable) {
+
+        if (variable == null) {
+            key.append("null;");
+            return;
+        }
+
+        key.append(variable.getType()).append(',')
+                .append(variable.getNameSpace()).append(',')
+                .append(variable.getName()).append(',')
+                .append(variable.getPrefix()).append(',')
+                .append(variable.getMultiplicity()).append(',')
+                .append(variable.getCondition()).append(',')
+                .append(variable.getDefaultValue()).append(',')
+                .append(variable.isShaderOutput()).append(';');
+    }
+
+    @Override
+    protected String buildShader(final List<ShaderNode> shaderNodes, final ShaderGenerationInfo info,
+                                 final ShaderType type) {
+
+        final AstShaderGeneratorState state = getState();
+        final long start = startPhase(state);
+
+        if (!generateSections(shaderNodes, info, type)) {
+            return null;
+        }
+
+        final StringBuilder result = new StringBuilder(getLayoutLength(state));
+
+        try {
+            writeSections(state, result);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        endPhase(state, ShaderGenerationPhase.BUILD_SHADER, start);
+
+        return result.toString();
+    }
+
+    /**
+     * Builds the shader source of the type and writes it to the output in the final order without intermediate
+     * copies. If the output is a {@link CharBuffer}, the whole length of the shader source is reserved before
+     * writing, so the buffer isn't changed if it doesn't have enough space.
+     *
+     * @param shaderNodes the list of shader nodes.
+     * @param info        the generating information.
+     * @param type        the shader type.
+     * @param output      the output.
+     * @return false if the shader type isn't supported.
+     * @throws IOException             if the output throws it.
+     * @throws BufferOverflowException if the output is a char buffer without enough space.
+     */
+    protected boolean buildShader(final List<ShaderNode> shaderNodes, final ShaderGenerationInfo info,
+                                  final ShaderType type, final Appendable output) throws IOException {
+
+        final AstShaderGeneratorState state = getState();
+        final long start = startPhase(state);
+
+        if (!generateSections(shaderNodes, info, type)) {
+            return false;
+        }
+
+        if (output instanceof CharBuffer && ((CharBuffer) output).remaining() < getLayoutLength(state)) {
+            throw new BufferOverflowException();
+        }
+
+        writeSections(state, output);
+        endPhase(state, ShaderGenerationPhase.BUILD_SHADER, start);
+        return true;
+    }
+
+    /**
+     * Gets the length of the shader source which is laid out from the generated sections.
+     *
+     * @param state the state of the generation.
+     * @return the length of the shader source.
+     */
+    private static int getLayoutLength(final AstShaderGeneratorState state) {
+
+        final int headerLength = state.getHeaderSource().length();
+        final int uniformsLength = state.getUniformsSource().length();
+        final int methodsLength = state.getMethodsSource().length();
+
+        return (headerLength > 0 ? headerLength + 1 : 0) +
+                state.getImportsSource().length() +
+                (uniformsLength > 0 ? uniformsLength + 1 : 0) +
+                (methodsLength > 0 ? methodsLength + 1 : 0) +
+                state.getMainSource().length();
+    }
+
+    /**
+     * Writes the generated sections to the output in the final order.
+     *
+     * @param state  the state of the generation.
+     * @param output the output.
+     * @throws IOException if the output throws it.
+     */
+    private static void writeSections(final AstShaderGeneratorState state, final Appendable output)
+            throws IOException {
+
+        final StringBuilder headerSource = state.getHeaderSource();
+        final StringBuilder importsSource = state.getImportsSource();
+        final StringBuilder uniformsSource = state.getUniformsSource();
+        final StringBuilder methodsSource = state.getMethodsSource();
+        final char[] buffer = state.getWriteBuffer();
+
+        if (headerSource.length() > 0) {
+            write(headerSource, output, buffer);
+            output.append('\n');
+        }
+
+        if (importsSource.length() > 0) {
+            write(importsSource, output, buffer);
+        }
+
+        if (uniformsSource.length() > 0) {
+            write(uniformsSource, output, buffer);
+            output.append('\n');
+        }
+
+        if (methodsSource.length() > 0) {
+            write(methodsSource, output, buffer);
+            output.append('\n');
+        }
+
+        write(state.getMainSource(), output, buffer);
+    }
+
+    /**
+     * Writes the section to the output. Writers and char buffers get the content by chunks through the buffer,
+     * because their append methods copy the whole section to a new string.
+     *
+     * @param section the section.
+     * @param output  the output.
+     * @param buffer  the buffer.
+     * @throws IOException if the output throws it.
+     */
+    private static void write(final StringBuilder section, final Appendable output, final char[] buffer)
+            throws IOException {
+
+        if (!(output instanceof Writer) && !(output instanceof CharBuffer)) {
+            output.append(section);
+            return;
+        }
+
+        for (int offset = 0, length = section.length(); offset < length; ) {
+
+            final int count = Math.min(buffer.length, length - offset);
+            section.getChars(offset, offset + count, buffer, 0);
+
+            if (output instanceof Writer) {
+                ((Writer) output).write(buffer, 0, count);
+            } else {
+                ((CharBuffer) output).put(buffer, 0, count);
+            }
+
+            offset += count;
+        }
+    }
+
+    /**
+     * Generates all sections of the shader source of the type to the builders of the current state.
+     *
+     * @param shaderNodes the list of shader nodes.
+     * @param info        the generating information.
+     * @param type        the shader type.
+     * @return false if the shader type isn't supported.
+     */
+    private boolean generateSections(final List<ShaderNode> shaderNodes, final ShaderGenerationInfo info,
+                                     final ShaderType type) {
+
+        if (type != ShaderType.Vertex && type != ShaderType.Fragment) {
+            return false;
+        }
+
+        final AstShaderGeneratorState state = getState();
+        final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
+        final List<ExtensionPreprocessorAstNode> extensionNodes = state.getExtensionNodes();
+        extensionNodes.clear();
+
+        final long renamedCount = state.getRenamer().getRenamedCount();
+
+        final ShaderSymbolIndex symbolIndex = state.getSymbolIndex();
+        symbolIndex.build(shaderNodes, info);
+
+        final List<ImportPreprocessorAstNode> importNodes = state.getImportNodes();
+        importNodes.clear();
+
+        findImportsAndExtensions(shaderNodes, type, shaderNodeSources, extensionNodes, importNodes);
+
+        AstUtils.removeExtensionDuplicates(extensionNodes);
+
+        final StringBuilder headerSource = clear(state.getHeaderSource());
+        final StringBuilder importsSource = clear(state.getImportsSource());
+        final StringBuilder uniformsSource = clear(state.getUniformsSource());
+        final StringBuilder methodsSource = clear(state.getMethodsSource());
+        final StringBuilder mainSource = clear(state.getMainSource());
+
+        generateExtensions(extensionNodes, headerSource);
+
+        final List<ExternalFieldDeclarationAstNode> importedUniforms = state.getImportedUnforms();
+        importedUniforms.clear();
+
+        state.getStageImports().clear();
+        state.getMethodRanges().clear();
+
+        long start = startPhase(state);
+        generateImports(importNodes, importedUniforms, importsSource);
+        endPhase(state, ShaderGenerationPhase.GENERATE_IMPORTS, start);
+
+        symbolIndex.setImportedFields(importedUniforms);
+
+        generateUniforms(uniformsSource, info, type);
+
+        if (type == ShaderType.Vertex) {
+            generateAttributes(uniformsSource, info);
+        }
+
+        generateVaryings(uniformsSource, info, type);
+
+        start = startPhase(state);
+        generateMethods(shaderNodes, type, methodsSource);
+        endPhase(state, ShaderGenerationPhase.GENERATE_METHODS, start);
+
+        generateStartOfMainSection(mainSource, info, type);
+
+        start = startPhase(state);
+        generateDeclarationAndMainBody(shaderNodes, null, mainSource, info, type);
+        endPhase(state, ShaderGenerationPhase.GENERATE_DECLARATION_AND_MAIN_BODY, start);
+
+        generateEndOfMainSection(mainSource, info, type);
+        generateVariableDefinitions(headerSource, state.getResultUsedVariableDefinitions());
+        generateCompatibilityDefines(headerSource, type);
+        generateShaderNodeHeaders(shaderNodes, info, type, headerSource);
+
+        if (eliminateDeadCode) {
+            eliminateDeadCode(state, importedUniforms);
+        }
+
+        AstUtils.copyGlobalUniforms(importedUniforms, state.getImportedGlobalUniforms());
+
+        final ShaderGenerationMetrics metrics = state.getMetrics();
+
+        if (metrics != null) {
+            metrics.addRenamedIdentifiers(state.getRenamer().getRenamedCount() - renamedCount);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes unused functions of imported sources and shader nodes, unused uniforms and definitions of imported
+     * sources from the generated sections of the current stage. The header, uniforms and main sections are roots of
+     * the graph of references, so only declarations which are reachable from them are kept.
+     *
+     * @param state            the state of the current stage.
+     * @param importedUniforms the list of imported fields, removed fields are excluded from the list.
+     */
+    protected void eliminateDeadCode(final AstShaderGeneratorState state,
+                                     final List<ExternalFieldDeclarationAstNode> importedUniforms) {
+
+        final ShaderDeadCodeEliminator eliminator = state.getDeadCodeEliminator();
+        eliminator.clear();
+        eliminator.addRoot(state.getHeaderSource());
+        eliminator.addRoot(state.getUniformsSource());
+        eliminator.addRoot(state.getMainSource());
+
+        final List<FileDeclarationAstNode> stageImports = state.getStageImports();
+        final List<AstNode> declarations = new ArrayList<>();
+
+        for (final FileDeclarationAstNode shaderFile : stageImports) {
+
+            final String text = shaderFile.getText();
+
+            declarations.clear();
+            declarations.addAll(shaderFile.getNodesByType(MethodDeclarationAstNode.class));
+            declarations.addAll(shaderFile.getNodesByType(ExternalFieldDeclarationAstNode.class));
+            declarations.addAll(shaderFile.getNodesByType(DefinePreprocessorAstNode.class));
+            sortByOffset(declarations);
+
+            eliminator.addSource(text);
+
+            for (final AstNode declaration : declarations) {
+
+                final int start = declaration.getOffset();
+                final int end = start + declaration.getLength();
+
+                if (start < 0 || end > text.length()) {
+                    continue;
+                }
+
+                if (declaration instanceof MethodDeclarationAstNode) {
+                    eliminator.addFunction(text, start, end);
+                } else if (declaration instanceof ExternalFieldDeclarationAstNode) {
+                    final NameAstNode name = ((ExternalFieldDeclarationAstNode) declaration).getName();
+                    eliminator.addField(text, name.getName(), start, end);
+                } else {
+                    final NameAstNode name = ((DefinePreprocessorAstNode) declaration).getName();
+                    eliminator.addDefine(text, name.getName(), start, end);
+                }
+            }
+        }
+
+        final StringBuilder methodsSource = state.getMethodsSource();
+        eliminator.addSource(methodsSource);
+
+        for (final int[] range : state.getMethodRanges()) {
+            eliminator.addFunction(methodsSource, range[0], range[1]);
+        }
+
+        eliminator.eliminate();
+
+        final StringBuilder importsSource = clear(state.getImportsSource());
+
+        if (!stageImports.isEmpty()) {
+
+            for (final FileDeclarationAstNode shaderFile : stageImports) {
+                appendWithoutImports(shaderFile, eliminator, importsSource);
+                importsSource.append('\n');
+            }
+
+            importsSource.append('\n');
+        }
+
+        final StringBuilder updatedSource = clear(state.getUpdatedSource());
+        eliminator.appendLive(methodsSource, 0, methodsSource.length(), updatedSource);
+
+        clear(methodsSource).append(updatedSource);
+
+        for (int i = importedUniforms.size() - 1; i >= 0; i--) {
+            final NameAstNode name = importedUniforms.get(i).getName();
+            if (!eliminator.isLive(name.getName())) {
+                importedUniforms.remove(i);
+            }
+        }
+
+        eliminator.clear();
+    }
+
+    /**
+     * Sorts the AST nodes by their offsets.
+     *
+     * @param nodes the AST nodes.
+     */
+    private static void sortByOffset(final List<AstNode> nodes) {
+        Collections.sort(nodes, new Comparator<AstNode>() {
+
+            @Override
+            public int compare(final AstNode first, final AstNode second) {
+                return Integer.compare(first.getOffset(), second.getOffset());
+            }
+        });
+    }
+
+    /**
+     * Generates shader nodes headers.
+     *
+     * @param shaderNodes  the list of shader nodes.
+     * @param info         the generating information.
+     * @param type         the shader type.
+     * @param headerSource the header source.
+     */
+    private void generateShaderNodeHeaders(final List<ShaderNode> shaderNodes, final ShaderGenerationInfo info,
+                                           final ShaderType type, final StringBuilder headerSource) {
+
+        final AstShaderGeneratorState state = getState();
+        final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
+        final Map<ShaderNode, ShaderNodeTemplate> shaderNodeTemplates = state.getShaderNodeTemplates();
+        final List<DefineValueAstNode> defineValueNodes = state.getDefineValueNodes();
+        final ShaderSourceRenamer renamer = state.getRenamer();
+        final ShaderSymbolIndex symbolIndex = state.getSymbolIndex();
+
+        for (final ShaderNode shaderNode : shaderNodes) {
+
+            if (symbolIndex.isUnused(shaderNode)) {
+                continue;
+            }
+
+            final ShaderNodeDefinition definition = shaderNode.getDefinition();
+            if (definition.getType() != type) {
+                continue;
+            }
+
+            final ShaderNodeTemplate template = shaderNodeTemplates.get(shaderNode);
+
+            if (template.getHeader() != null) {
+                headerSource.append(template.getHeader());
+                continue;
+            }
+
+            final FileDeclarationAstNode shaderFile = shaderNodeSources.get(shaderNode);
+            final List<AstNode> children = shaderFile.getChildren();
+            final StringBuilder header = clear(state.getUpdatedSource());
+
+            for (final AstNode child : children) {
+
+                if (child instanceof MethodDeclarationAstNode) {
+                    continue;
+                } else if (child instanceof ImportPreprocessorAstNode) {
+                    continue;
+                }
+
+                defineValueNodes.clear();
+                findAllByType(child, defineValueNodes, DefineValueAstNode.class);
+
+                renamer.clear();
+                addDefinitionNames(shaderNode, defineValueNodes, renamer);
+
+                rename(shaderFile, child, renamer, header);
+                header.append('\n').append('\n');
+            }
+
+            template.setHeader(header.toString());
+            headerSource.append(header);
+        }
+    }
+
+    /**
+     * Generates compatibility defines.
+     *
+     * @param headerSource the header source.
+     * @param type         the shader type.
+     */
+    protected void generateCompatibilityDefines(final StringBuilder headerSource, final ShaderType type) {
+    }
+
+    /**
+     * Generates variable definitions.
+     *
+     * @param headerSource  the header source.
+     * @param result the result definition list.
+     */
+    private void generateVariableDefinitions(final StringBuilder headerSource, final List<String> result) {
+
+        if (result.isEmpty()) {
+            return;
+        }
+
+        for (final String define : result) {
+            headerSource.append("#define ").append(define).append(" 1").append('\n');
+        }
+
+        headerSource.append('\n');
+    }
+
+    /**
+     * Finds imports and extensionNodes from the shader nodes.
      *
      * @param shaderNodes       the shader nodes.
      * @param type              the current type.
@@ -448,11 +1594,13 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                                                   final StringBuilder sourceDeclaration, final StringBuilder source,
                                                   final ShaderGenerationInfo info, final ShaderType type) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
+        final AstShaderGeneratorState state = getState();
         final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
+        final Map<ShaderNode, ShaderNodeTemplate> shaderNodeTemplates = state.getShaderNodeTemplates();
         final List<LocalVarDeclarationAstNode> localVariables = state.getLocalVars();
         final List<MethodDeclarationAstNode> methods = state.getMethods();
-        final List<String> unusedNodes = info.getUnusedNodes();
+        final ShaderSourceRenamer renamer = state.getRenamer();
+        final ShaderSymbolIndex symbolIndex = state.getSymbolIndex();
 
         final List<DefineValueAstNode> defineValueNodes = state.getDefineValueNodes();
         final List<String> usedVariableDefinitions = state.getUsedVariableDefinitions();
@@ -461,7 +1609,7 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
 
         for (final ShaderNode shaderNode : shaderNodes) {
 
-            if (unusedNodes.contains(shaderNode.getName())) {
+            if (symbolIndex.isUnused(shaderNode)) {
                 continue;
             }
 
@@ -471,8 +1619,26 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
             }
 
             methods.clear();
+            localVariables.clear();
             usedVariableDefinitions.clear();
             defineValueNodes.clear();
+            renamer.clear();
+
+            final ShaderNodeTemplate template = shaderNodeTemplates.get(shaderNode);
+
+            if (template.isPrepared()) {
+
+                usedVariableDefinitions.addAll(template.getVariableDefinitions());
+                findAvailableDefinesToDefine(shaderNode, usedVariableDefinitions, resultUsedVariableDefinitions);
+
+                if (template.hasMainMethod()) {
+                    generateNodeMainSection(source, shaderNode, null, 0, 0, null, template, info);
+                } else {
+                    generateNodeMainSection(source, shaderNode, null, info);
+                }
+
+                continue;
+            }
 
             final FileDeclarationAstNode shaderFile = shaderNodeSources.get(shaderNode);
             findAllByType(shaderFile, methods, MethodDeclarationAstNode.class);
@@ -481,27 +1647,39 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
             AstUtils.removeDefineValueDuplicates(defineValueNodes);
 
             copyVariableDefinitions(defineValueNodes, usedVariableDefinitions);
-            findAvailableDefinesToDefine(shaderNode, shaderNodes, usedVariableDefinitions, resultUsedVariableDefinitions);
+            findAvailableDefinesToDefine(shaderNode, usedVariableDefinitions, resultUsedVariableDefinitions);
 
             final MethodDeclarationAstNode mainMethod = findMainMethod(methods);
 
             if (mainMethod == null) {
                 generateNodeMainSection(source, shaderNode, null, info);
+                template.prepare(new ArrayList<>(usedVariableDefinitions), false);
                 continue;
             }
 
             findAllByType(mainMethod, localVariables, LocalVarDeclarationAstNode.class);
 
-            String methodBodySource = updateMethodCalls(shaderNode, mainMethod, methods);
-            methodBodySource = updateLocalVarNames(shaderNode, methodBodySource, localVariables);
-            methodBodySource = updateDefinitionNames(shaderNode, methodBodySource, defineValueNodes);
+            addMethodNames(shaderNode, methods, renamer);
+            addLocalVarNames(shaderNode, localVariables, renamer);
+            addDefinitionNames(shaderNode, defineValueNodes, renamer);
 
-            generateNodeMainSection(source, shaderNode, methodBodySource, info);
+            final BodyAstNode body = mainMethod.getBody();
+
+            if (body.getSource() == null) {
+                final String text = body.getText();
+                generateNodeMainSection(source, shaderNode, text, 0, text.length(), null, template, info);
+            } else {
+                final int offset = body.getOffset();
+                generateNodeMainSection(source, shaderNode, shaderFile.getText(), offset, offset + body.getLength(),
+                        shaderFile.getIdentifiers(), template, info);
+            }
+
+            template.prepare(new ArrayList<>(usedVariableDefinitions), true);
         }
     }
 
     @Override
-    protected void generateNodeMainSection(final StringBuilder source, final ShaderNode shaderNode, String nodeSource,
+    protected void generateNodeMainSection(final StringBuilder source, final ShaderNode shaderNode, final String nodeSource,
                                            final ShaderGenerationInfo info) {
 
         if (nodeSource == null) {
@@ -510,11 +1688,49 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
             return;
         }
 
+        generateNodeMainSection(source, shaderNode, nodeSource, 0, nodeSource.length(), null, null, info);
+    }
+
+    /**
+     * Generates the main section of the shader node, the main section is renamed by the renamer of the current
+     * state which can already contain rename rules of methods, local variables and definitions of the shader node.
+     * If the template already has the renamed main section, the template's main section is used instead.
+     *
+     * @param source      the target builder.
+     * @param shaderNode  the shader node.
+     * @param content     the content with the main section.
+     * @param start       the start of the main section in the content.
+     * @param end         the end of the main section in the content.
+     * @param identifiers the table of identifiers of the content or null.
+     * @param template    the template of the shader node or null.
+     * @param info        the generating information.
+     */
+    private void generateNodeMainSection(final StringBuilder source, final ShaderNode shaderNode,
+                                         final CharSequence content, final int start, final int end,
+                                         final GlslIdentifierTable identifiers, final ShaderNodeTemplate template,
+                                         final ShaderGenerationInfo info) {
+
         comment(source, shaderNode, "Begin");
         startCondition(shaderNode.getCondition(), source);
 
+        final AstShaderGeneratorState state = getState();
+        final ShaderSourceRenamer renamer = state.getRenamer();
         final ShaderNodeDefinition definition = shaderNode.getDefinition();
-        final List<String> declaredVariables = new ArrayList<>();
+        final Set<String> declaredVariables = state.getDeclaredVariables();
+        declaredVariables.clear();
+
+        final Map<String, String> foldedInputs;
+
+        if (!foldConstants) {
+            foldedInputs = null;
+        } else if (template != null && template.getMainBody() != null) {
+            foldedInputs = template.getFoldedInputs();
+        } else {
+            foldedInputs = findFoldedInputs(shaderNode, content, start, end, info);
+            if (template != null) {
+                template.setFoldedInputs(foldedInputs);
+            }
+        }
 
         for (final VariableMapping mapping : shaderNode.getInputMapping()) {
 
@@ -524,7 +1740,7 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
             // Variables fed with a sampler matparam or world param are replaced by the matparam itself
             // It avoids issue with samplers that have to be uniforms.
             if (isWorldOrMaterialParam(rightVariable) && rightVariable.getType().startsWith("sampler")) {
-                nodeSource = replace(nodeSource, leftVariable, rightVariable.getPrefix() + rightVariable.getName());
+                addVarName(leftVariable.getName(), rightVariable.getPrefix() + rightVariable.getName(), renamer);
             } else {
 
                 if (leftVariable.getType().startsWith("sampler")) {
@@ -536,9 +1752,8 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
 
             String newName = shaderNode.getName() + "_" + leftVariable.getName();
 
-            if (!declaredVariables.contains(newName)) {
-                nodeSource = replace(nodeSource, leftVariable, newName);
-                declaredVariables.add(newName);
+            if (declaredVariables.add(newName)) {
+                addVarName(leftVariable.getName(), newName, renamer);
             }
         }
 
@@ -554,13 +1769,21 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                 continue;
             }
 
+            final String literal = foldedInputs == null ? null : foldedInputs.get(var.getName());
+
+            if (literal != null) {
+                addVarName(var.getName(), literal, renamer);
+                declaredVariables.add(fullName);
+                continue;
+            }
+
             final ShaderNodeVariable variable = new ShaderNodeVariable(var.getType(), shaderNode.getName(),
                     var.getName(), var.getMultiplicity());
 
             if (!isVarying(info, variable)) {
                 declareVariable(source, variable, var.getDefaultValue(), true, null);
             }
-            nodeSource = replaceVariableName(nodeSource, variable);
+            addVarName(var.getName(), getAppendableNameSpace(variable) + var.getName(), renamer);
             declaredVariables.add(fullName);
         }
 
@@ -577,12 +1800,24 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                 declareVariable(source, variable);
             }
 
-            nodeSource = replaceVariableName(nodeSource, variable);
+            addVarName(var.getName(), getAppendableNameSpace(variable) + var.getName(), renamer);
         }
 
         appendIndent(source);
 
-        source.append(nodeSource);
+        if (template == null) {
+            renamer.rename(content, start, end, identifiers, source);
+        } else if (template.getMainBody() != null) {
+            source.append(template.getMainBody());
+        } else {
+            final StringBuilder mainBody = renamer.rename(content, start, end, identifiers,
+                    clear(state.getUpdatedSource()));
+            template.setMainBody(mainBody.toString());
+            source.append(mainBody);
+        }
+
+        renamer.clear();
+
         source.append('\n');
 
         for (final VariableMapping mapping : shaderNode.getOutputMapping()) {
@@ -593,37 +1828,84 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
         comment(source, shaderNode, "End");
     }
 
-    @Override
-    protected String replace(final String source, final ShaderNodeVariable var, final String newName) {
+    /**
+     * Finds not mapped inputs of the shader node which can be replaced by literals of their default values. An input
+     * is folded only if the main section of the shader node never writes to it and never accesses its components.
+     *
+     * @param shaderNode the shader node.
+     * @param content    the content with the main section.
+     * @param start      the start of the main section in the content.
+     * @param end        the end of the main section in the content.
+     * @param info       the generating information.
+     * @return the literals by the names of folded inputs.
+     */
+    private Map<String, String> findFoldedInputs(final ShaderNode shaderNode, final CharSequence content,
+                                                 final int start, final int end, final ShaderGenerationInfo info) {
+
+        final ShaderSymbolIndex symbolIndex = getState().getSymbolIndex();
+        final Map<String, String> result = new HashMap<>();
+
+        boolean outParameters = false;
+        boolean outParametersChecked = false;
+
+        for (final ShaderNodeVariable var : shaderNode.getDefinition().getInputs()) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        final StringBuilder original = clear(state.getOriginalSource());
-        original.append(source);
+            if (var.getDefaultValue() == null || var.getMultiplicity() != null) {
+                continue;
+            } else if (symbolIndex.hasInputMapping(shaderNode, var.getName())) {
+                continue;
+            }
+
+            final ShaderNodeVariable variable = new ShaderNodeVariable(var.getType(), shaderNode.getName(),
+                    var.getName(), var.getMultiplicity());
+
+            if (isVarying(info, variable)) {
+                continue;
+            }
+
+            final String literal = ShaderConstantFolder.toLiteral(var.getType(), var.getDefaultValue());
+
+            if (literal == null) {
+                continue;
+            }
+
+            if (!outParametersChecked) {
+                outParameters = ShaderConstantFolder.hasOutParameters(content);
+                outParametersChecked = true;
+            }
+
+            if (ShaderConstantFolder.isAccessed(content, start, end, var.getName())) {
+                continue;
+            } else if (!ShaderConstantFolder.isWritten(content, start, end, var.getName(), outParameters)) {
+                result.put(var.getName(), literal);
+            }
+        }
+
+        return result;
+    }
 
-        final StringBuilder result = clear(state.getUpdatedSource());
-        return replaceVar(original, var.getName(), newName, result).toString();
+    /**
+     * Renames the variable in the source code by the shader source renamer.
+     *
+     * @deprecated shader node sources are renamed by {@link ShaderSourceRenamer} in one pass, use it directly.
+     */
+    @Deprecated
+    @Override
+    protected String replace(final String source, final ShaderNodeVariable var, final String newName) {
+        final ShaderSourceRenamer renamer = new ShaderSourceRenamer();
+        addVarName(var.getName(), newName, renamer);
+        return renamer.rename(source);
     }
 
     /**
-     * Updates the method calls from the main method.
+     * Adds rename rules of calls of not main methods of the shader node.
      *
      * @param shaderNode the shader node.
-     * @param mainMethod the main method.
      * @param methods    the list of all methods.
-     * @return the updated source.
+     * @param renamer    the renamer.
      */
-    private String updateMethodCalls(final ShaderNode shaderNode, final MethodDeclarationAstNode mainMethod,
-                                     final List<MethodDeclarationAstNode> methods) {
-
-        String methodBodySource = mainMethod.getBody().getText();
-
-        if (methods.size() < 2) {
-            return methodBodySource;
-        }
-
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        StringBuilder original = clear(state.getOriginalSource());
-        StringBuilder result = clear(state.getUpdatedSource());
+    private void addMethodNames(final ShaderNode shaderNode, final List<MethodDeclarationAstNode> methods,
+                                final ShaderSourceRenamer renamer) {
 
         for (final MethodDeclarationAstNode methodDeclaration : methods) {
 
@@ -634,164 +1916,120 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                 continue;
             }
 
-            if (result.length() > 0) {
-                final StringBuilder swap = original;
-                original = result;
-                result = clear(swap);
-            } else {
-                original.append(methodBodySource);
-            }
-
-            // replace calls of the declared methods.
-            replaceMethod(original, name, shaderNode.getName() + "_" + name, result);
+            renamer.add(name, shaderNode.getName() + "_" + name, PREVIOUS_METHOD_CHAR_CHECKER,
+                    NEXT_METHOD_CHAR_CHECKER, GlslIdentifierTable.KIND_METHOD);
         }
-
-        return result.toString();
     }
 
     /**
-     * Updates the names of local variables in the main method.
+     * Adds rename rules of local variables of the main method.
      *
      * @param shaderNode the shader node.
-     * @param source     the current source.
      * @param localVars  the list of local variables.
-     * @return the updated source.
+     * @param renamer    the renamer.
      */
-    private String updateLocalVarNames(final ShaderNode shaderNode, final String source,
-                                       final List<LocalVarDeclarationAstNode> localVars) {
-
-        if (localVars.isEmpty()) {
-            return source;
-        }
-
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        StringBuilder original = clear(state.getOriginalSource());
-        StringBuilder result = clear(state.getUpdatedSource());
+    private void addLocalVarNames(final ShaderNode shaderNode, final List<LocalVarDeclarationAstNode> localVars,
+                                  final ShaderSourceRenamer renamer) {
 
         for (final LocalVarDeclarationAstNode localVar : localVars) {
+            final String name = localVar.getName().getName();
+            renamer.add(name, shaderNode.getName() + "_" + name, PREVIOUS_VAR_CHAR_CHECKER, NEXT_VAR_CHAR_CHECKER,
+                    GlslIdentifierTable.KIND_LOCAL_VAR);
+        }
+    }
 
-            final NameAstNode methodName = localVar.getName();
-            final String name = methodName.getName();
+    /**
+     * Adds the rename rule of a variable.
+     *
+     * @param oldName the old name.
+     * @param newName the new name.
+     * @param renamer the renamer.
+     */
+    private void addVarName(final String oldName, final String newName, final ShaderSourceRenamer renamer) {
+        renamer.add(oldName, newName, PREVIOUS_VAR_CHAR_CHECKER, NEXT_VAR_CHAR_CHECKER);
+    }
 
-            if (result.length() > 0) {
-                final StringBuilder swap = original;
-                original = result;
-                result = clear(swap);
-            } else {
-                original.append(source);
-            }
+    /**
+     * Renames identifiers of the node of the shader source and appends the result to the builder. The recorded
+     * identifiers of the shader source are used if the text of the node is taken from the shader source.
+     *
+     * @param shaderFile the shader source.
+     * @param node       the node.
+     * @param renamer    the renamer.
+     * @param result     the result builder.
+     */
+    private void rename(final FileDeclarationAstNode shaderFile, final AstNode node,
+                        final ShaderSourceRenamer renamer, final StringBuilder result) {
 
-            replaceVar(original, name, shaderNode.getName() + "_" + name, result);
+        if (node.getSource() == null) {
+            renamer.rename(node.getText(), result);
+            return;
         }
 
-        return result.toString();
+        final int offset = node.getOffset();
+        renamer.rename(shaderFile.getText(), offset, offset + node.getLength(), shaderFile.getIdentifiers(), result);
     }
 
     /**
      * Calculate used definition names in the shader source which need to define in the top of the result shader.
      *
      * @param shaderNode                    the shader node.
-     * @param shaderNodes                   the list of shader nodes.
      * @param usedVariableDefinitions       the used variable definitions.
      * @param resultUsedVariableDefinitions the result used variable definitions.
      */
-    private void findAvailableDefinesToDefine(final ShaderNode shaderNode, final List<ShaderNode> shaderNodes,
-                                              final List<String> usedVariableDefinitions,
+    private void findAvailableDefinesToDefine(final ShaderNode shaderNode, final List<String> usedVariableDefinitions,
                                               final List<String> resultUsedVariableDefinitions) {
 
         if (usedVariableDefinitions.isEmpty()) {
             return;
         }
 
-        final List<VariableMapping> inputMapping = shaderNode.getInputMapping();
-        final List<VariableMapping> outputMapping = shaderNode.getOutputMapping();
+        final ShaderSymbolIndex symbolIndex = getState().getSymbolIndex();
 
         for (final String definitionName : usedVariableDefinitions) {
 
-            if (!isShaderNodeInputVarDefinition(definitionName)) {
+            if (!isShaderNodeInputVarDefinition(definitionName) ||
+                    definitionName.length() < INPUT_VAR_DEFINITION_PREFIX.length()) {
                 continue;
             }
 
-            for (final VariableMapping mapping : inputMapping) {
-
-                final ShaderNodeVariable variable = mapping.getLeftVariable();
-                final String variableName = variable.getName();
+            final String variableName = definitionName.substring(INPUT_VAR_DEFINITION_PREFIX.length());
 
-                final int resultLength = INPUT_VAR_DEFINITION_PREFIX.length() + variableName.length();
-
-                if (definitionName.length() == resultLength && definitionName.endsWith(variableName)) {
-                    resultUsedVariableDefinitions.add(toResultShaderNodeInputVarDefinition(shaderNode, definitionName));
-                    break;
-                }
+            if (symbolIndex.hasInputMapping(shaderNode, variableName)) {
+                resultUsedVariableDefinitions.add(toResultShaderNodeInputVarDefinition(shaderNode, definitionName));
             }
         }
 
         for (final String definitionName : usedVariableDefinitions) {
 
-            if (!isShaderNodeOutputVarDefinition(definitionName)) {
+            if (!isShaderNodeOutputVarDefinition(definitionName) ||
+                    definitionName.length() < OUTPUT_VAR_DEFINITION_PREFIX.length()) {
                 continue;
             }
 
-            boolean exists = false;
-
-            for (final VariableMapping mapping : outputMapping) {
-
-                final ShaderNodeVariable variable = mapping.getRightVariable();
-                final String variableName = variable.getName();
+            final String variableName = definitionName.substring(OUTPUT_VAR_DEFINITION_PREFIX.length());
 
-                final int resultLength = OUTPUT_VAR_DEFINITION_PREFIX.length() + variableName.length();
-
-                if (definitionName.length() == resultLength && definitionName.endsWith(variableName)) {
-                    resultUsedVariableDefinitions.add(toResultShaderNodeOutputVarDefinition(shaderNode, definitionName));
-                    exists = true;
-                    break;
-                }
+            if (symbolIndex.hasOutputMapping(shaderNode, variableName)) {
+                resultUsedVariableDefinitions.add(toResultShaderNodeOutputVarDefinition(shaderNode, definitionName));
+                continue;
             }
 
-            if (exists) continue;
-
-            for (final ShaderNode otherNode : shaderNodes) {
-                if(otherNode == shaderNode) continue;
-
-                final List<VariableMapping> otherInputMapping = otherNode.getInputMapping();
-
-                for (final VariableMapping mapping : otherInputMapping) {
-
-                    final ShaderNodeVariable variable = mapping.getRightVariable();
-                    if (!shaderNode.getName().equals(variable.getNameSpace())) {
-                        continue;
-                    }
-
-                    final String variableName = variable.getName();
-                    final int resultLength = OUTPUT_VAR_DEFINITION_PREFIX.length() + variableName.length();
-
-                    if (definitionName.length() == resultLength && definitionName.endsWith(variableName)) {
-                        resultUsedVariableDefinitions.add(toResultShaderNodeInputVarDefinition(shaderNode, definitionName));
-                        break;
-                    }
-                }
+            // every other shader node which uses the output variable requires the definition
+            for (int i = 0, count = symbolIndex.getConsumerCount(shaderNode, variableName); i < count; i++) {
+                resultUsedVariableDefinitions.add(toResultShaderNodeInputVarDefinition(shaderNode, definitionName));
             }
         }
     }
 
     /**
-     * Updates the definition names in the source code.
+     * Adds rename rules of shader node definitions.
      *
      * @param shaderNode       the shader node.
-     * @param source           the current source.
      * @param defineValueNodes the define value nodes.
-     * @return the updated source.
+     * @param renamer          the renamer.
      */
-    private String updateDefinitionNames(final ShaderNode shaderNode, String source,
-                                         final List<DefineValueAstNode> defineValueNodes) {
-
-        if (defineValueNodes.isEmpty()) {
-            return source;
-        }
-
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        StringBuilder original = clear(state.getOriginalSource());
-        StringBuilder result = clear(state.getUpdatedSource());
+    private void addDefinitionNames(final ShaderNode shaderNode, final List<DefineValueAstNode> defineValueNodes,
+                                    final ShaderSourceRenamer renamer) {
 
         for (final DefineValueAstNode defineValueNode : defineValueNodes) {
 
@@ -800,22 +2038,9 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                 continue;
             }
 
-            if (result.length() > 0) {
-                final StringBuilder swap = original;
-                original = result;
-                result = clear(swap);
-            } else {
-                original.append(source);
-            }
-
-            replaceDefine(original, define, shaderNode.getName() + "_" + define, result);
-        }
-
-        if (result.length() > 0) {
-            return result.toString();
+            renamer.add(define, shaderNode.getName() + "_" + define, PREVIOUS_DEFINE_CHAR_CHECKER,
+                    NEXT_DEFINE_CHAR_CHECKER);
         }
-
-        return source;
     }
 
     /**
@@ -853,11 +2078,13 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
     protected void generateMethods(final List<ShaderNode> shaderNodes, final ShaderType type,
                                    final StringBuilder builder) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
+        final AstShaderGeneratorState state = getState();
         final List<MethodDeclarationAstNode> methods = state.getMethods();
         methods.clear();
 
         final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
+        final Map<ShaderNode, ShaderNodeTemplate> shaderNodeTemplates = state.getShaderNodeTemplates();
+        final ShaderSourceRenamer renamer = state.getRenamer();
 
         for (final ShaderNode shaderNode : shaderNodes) {
 
@@ -865,15 +2092,33 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                 continue;
             }
 
+            final ShaderNodeTemplate template = shaderNodeTemplates.get(shaderNode);
+
+            if (template.getMethods() != null) {
+                addMethodRanges(template.getMethodBounds(), builder.length());
+                builder.append(template.getMethods());
+                continue;
+            }
+
             methods.clear();
+            renamer.clear();
 
             final FileDeclarationAstNode shaderFile = shaderNodeSources.get(shaderNode);
             findAllByType(shaderFile, methods, MethodDeclarationAstNode.class);
 
             if (methods.size() < 2) {
+                template.setMethodBounds(new int[0]);
+                template.setMethods("");
                 continue;
             }
 
+            addMethodNames(shaderNode, methods, renamer);
+
+            final StringBuilder methodsSource = clear(state.getUpdatedSource());
+            final int[] methodBounds = new int[(methods.size() - 1) * 2];
+
+            int count = 0;
+
             for (final MethodDeclarationAstNode method : methods) {
 
                 final NameAstNode name = method.getName();
@@ -883,11 +2128,41 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                     continue;
                 }
 
-                final String methodContent = method.getText();
-                final String resultContent = methodContent.replace(methodName, shaderNode.getName() + "_" + methodName);
+                if (count < methodBounds.length) {
+                    methodBounds[count++] = methodsSource.length();
+                }
+
+                rename(shaderFile, method, renamer, methodsSource);
+
+                if (count < methodBounds.length) {
+                    methodBounds[count++] = methodsSource.length();
+                }
 
-                builder.append(resultContent).append('\n');
+                methodsSource.append('\n');
             }
+
+            template.setMethodBounds(count == methodBounds.length ? methodBounds : new int[0]);
+            template.setMethods(methodsSource.toString());
+
+            addMethodRanges(template.getMethodBounds(), builder.length());
+            builder.append(methodsSource);
+        }
+
+        renamer.clear();
+    }
+
+    /**
+     * Adds the ranges of not main methods of a shader node to the ranges of the current stage.
+     *
+     * @param methodBounds the ranges of methods in the code of methods of the shader node.
+     * @param offset       the offset of the code of methods of the shader node in the methods code of the stage.
+     */
+    private void addMethodRanges(final int[] methodBounds, final int offset) {
+
+        final List<int[]> methodRanges = getState().getMethodRanges();
+
+        for (int i = 0; i < methodBounds.length; i += 2) {
+            methodRanges.add(new int[]{offset + methodBounds[i], offset + methodBounds[i + 1]});
         }
     }
 
@@ -906,14 +2181,82 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
             return;
         }
 
+        final Set<String> rootPaths = new LinkedHashSet<>();
+
         for (final ImportPreprocessorAstNode importNode : importNodes) {
             final StringValueAstNode importValue = importNode.getValue();
-            final FileDeclarationAstNode shaderFile = parseShaderSource(importValue.getValue());
+            rootPaths.add(importValue.getValue());
+        }
+
+        final List<FileDeclarationAstNode> shaderFiles =
+                importGraph.resolve(new ArrayList<>(rootPaths), importLoader);
+
+        final AstShaderGeneratorState state = getState();
+        final List<FileDeclarationAstNode> importedSources = state.getImportedSources();
+        final List<FileDeclarationAstNode> stageImports = state.getStageImports();
+
+        for (final FileDeclarationAstNode shaderFile : shaderFiles) {
+
+            if (!importedSources.contains(shaderFile)) {
+                importedSources.add(shaderFile);
+            }
+
+            stageImports.add(shaderFile);
+
             findAllByType(shaderFile, importedUniforms, ExternalFieldDeclarationAstNode.class);
-            builder.append(shaderFile.getText()).append('\n');
+            appendWithoutImports(shaderFile, null, builder);
+            builder.append('\n');
+        }
+
+        builder.append('\n');
+    }
+
+    /**
+     * Appends the code of the imported shader source without its own imports, because they are already resolved.
+     *
+     * @param shaderFile the imported shader source.
+     * @param eliminator the eliminator to skip dead code or null.
+     * @param builder    the target builder.
+     */
+    private void appendWithoutImports(final FileDeclarationAstNode shaderFile,
+                                      final ShaderDeadCodeEliminator eliminator, final StringBuilder builder) {
+
+        final String text = shaderFile.getText();
+        final List<ImportPreprocessorAstNode> importNodes =
+                shaderFile.getNodesByType(ImportPreprocessorAstNode.class);
+
+        int last = 0;
+
+        for (final ImportPreprocessorAstNode importNode : importNodes) {
+
+            // added imports of a shader asset don't have a place in the code
+            if (importNode.getLength() == 0) {
+                continue;
+            }
+
+            appendCode(text, last, importNode.getOffset(), eliminator, builder);
+            last = importNode.getOffset() + importNode.getLength();
         }
 
-        builder.append('\n');
+        appendCode(text, last, text.length(), eliminator, builder);
+    }
+
+    /**
+     * Appends the part of the code.
+     *
+     * @param text       the code.
+     * @param start      the start of the part.
+     * @param end        the end of the part.
+     * @param eliminator the eliminator to skip dead code or null.
+     * @param builder    the target builder.
+     */
+    private static void appendCode(final String text, final int start, final int end,
+                                   final ShaderDeadCodeEliminator eliminator, final StringBuilder builder) {
+        if (eliminator == null) {
+            builder.append(text, start, end);
+        } else {
+            eliminator.appendLive(text, start, end, builder);
+        }
     }
 
     /**
@@ -952,7 +2295,7 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
     @Override
     protected void generateUniforms(final StringBuilder source, final List<ShaderNodeVariable> uniforms) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
+        final AstShaderGeneratorState state = getState();
         final List<ExternalFieldDeclarationAstNode> importedFields = state.getImportedUnforms();
 
         for (final ShaderNodeVariable var : uniforms) {
@@ -964,7 +2307,7 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
     @Override
     protected void generateAttributes(final StringBuilder source, final ShaderGenerationInfo info) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
+        final AstShaderGeneratorState state = getState();
         final List<ExternalFieldDeclarationAstNode> importedFields = state.getImportedUnforms();
 
         boolean inPosition = false;
@@ -975,16 +2318,30 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
                 var.setCondition(null);
                 fixInPositionType(var);
                 //keep track on the InPosition variable to avoid iterating through attributes again
-                inPosTmp = var;
+                state.setInPosition(var);
             }
             if (isExist(var, importedFields)) continue;
             declareAttribute(source, var);
         }
 
         if (!inPosition) {
-            inPosTmp = new ShaderNodeVariable("vec3", "inPosition");
-            if (isExist(inPosTmp, importedFields)) return;
-            declareAttribute(source, inPosTmp);
+            final ShaderNodeVariable inPositionVar = new ShaderNodeVariable("vec3", "inPosition");
+            state.setInPosition(inPositionVar);
+            if (isExist(inPositionVar, importedFields)) return;
+            declareAttribute(source, inPositionVar);
+        }
+    }
+
+    @Override
+    protected void declareGlobalPosition(final ShaderGenerationInfo info, final StringBuilder source) {
+
+        final ShaderNodeVariable inPosition = getState().getInPosition();
+        final ShaderNodeVariable vertexGlobal = info.getVertexGlobal();
+
+        if (inPosition.getType().equals(vertexGlobal.getType())) {
+            declareVariable(source, vertexGlobal, "inPosition");
+        } else {
+            declareVariable(source, vertexGlobal, "vec4(inPosition,1.0)");
         }
     }
 
@@ -1002,44 +2359,223 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
             return false;
         }
 
-        final String name = variable.getName();
-        final String prefix = variable.getPrefix();
-
-        final int length = prefix.length() + name.length();
-
-        for (final ExternalFieldDeclarationAstNode field : importedFields) {
-            final NameAstNode nameASTNode = field.getName();
-            final String fieldName = nameASTNode.getName();
-            if (fieldName.length() != length || !fieldName.startsWith(prefix)) {
-                continue;
-            } else if (fieldName.endsWith(name)) {
-                return true;
-            }
-        }
-
-        return false;
+        final ShaderSymbolIndex symbolIndex = getState().getSymbolIndex();
+        return symbolIndex.getImportedField(variable.getPrefix() + variable.getName()) != null;
     }
 
     /**
-     * Prepares the map with shader source path - parsed AST files.
+     * Prepares the map with shader source path - parsed AST files. Every distinct shader source is loaded and parsed
+     * only once, if the source executor is set, distinct shader sources are parsed in parallel.
      *
      * @param shaderNodes the list of shader nodes.
      */
     protected void prepareShaderNodeSources(final List<ShaderNode> shaderNodes) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
+        final AstShaderGeneratorState state = getState();
         final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources = state.getShaderNodeSources();
+        final Map<ShaderNode, ShaderNodeTemplate> shaderNodeTemplates = state.getShaderNodeTemplates();
         shaderNodeSources.clear();
+        shaderNodeTemplates.clear();
+
+        final Map<String, FileDeclarationAstNode> parsedSources = new LinkedHashMap<>();
+
+        for (final ShaderNode shaderNode : shaderNodes) {
+            parsedSources.put(getShaderSourcePath(shaderNode), null);
+        }
+
+        parseShaderSources(parsedSources);
 
         for (final ShaderNode shaderNode : shaderNodes) {
 
-            final ShaderNodeDefinition definition = shaderNode.getDefinition();
+            final FileDeclarationAstNode shaderFile = parsedSources.get(getShaderSourcePath(shaderNode));
+
+            shaderNodeSources.put(shaderNode, shaderFile);
+            shaderNodeTemplates.put(shaderNode, getTemplate(shaderNode, shaderFile));
+        }
+    }
+
+    /**
+     * Gets the path to the shader source of the shader node for the current GLSL version.
+     *
+     * @param shaderNode the shader node.
+     * @return the path to the shader source.
+     */
+    private String getShaderSourcePath(final ShaderNode shaderNode) {
+        final ShaderNodeDefinition definition = shaderNode.getDefinition();
+        final int index = findShaderIndexFromVersion(shaderNode, definition.getType());
+        return definition.getShadersPath().get(index);
+    }
+
+    /**
+     * Parses all shader sources of the map by their paths. The first shader source is always parsed on the current
+     * thread, other shader sources are parsed by the source executor if it's set.
+     *
+     * @param parsedSources the map of paths to parsed shader sources.
+     */
+    private void parseShaderSources(final Map<String, FileDeclarationAstNode> parsedSources) {
+
+        final Executor executor = sourceExecutor;
+
+        if (executor == null || parsedSources.size() < 2) {
+
+            for (final Map.Entry<String, FileDeclarationAstNode> entry : parsedSources.entrySet()) {
+                entry.setValue(parseShaderSource(entry.getKey()));
+            }
+
+            return;
+        }
+
+        final List<FutureTask<FileDeclarationAstNode>> tasks = new ArrayList<>(parsedSources.size());
+
+        // parsing reads only the metrics of the state, so the state can be bound to parsing threads
+        final AstShaderGeneratorState state = getState();
+
+        for (final String shaderSourcePath : parsedSources.keySet()) {
+
+            final FutureTask<FileDeclarationAstNode> task = new FutureTask<>(new Callable<FileDeclarationAstNode>() {
+
+                @Override
+                public FileDeclarationAstNode call() {
+                    final AstShaderGeneratorState prevState = bindState(state);
+                    try {
+                        return parseShaderSource(shaderSourcePath);
+                    } finally {
+                        restoreState(prevState);
+                    }
+                }
+            });
+
+            if (!tasks.isEmpty()) {
+                executor.execute(task);
+            }
+
+            tasks.add(task);
+        }
+
+        tasks.get(0).run();
+
+        int index = 0;
+
+        for (final Map.Entry<String, FileDeclarationAstNode> entry : parsedSources.entrySet()) {
+            entry.setValue(getParsedSource(tasks.get(index++)));
+        }
+    }
+
+    /**
+     * Waits for the parsed shader source.
+     *
+     * @param task the task to parse a shader source.
+     * @return the parsed shader source.
+     */
+    private FileDeclarationAstNode getParsedSource(final FutureTask<FileDeclarationAstNode> task) {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Gets the compiled template of the shader node. The template is reused while the shader node source, the name
+     * of the shader node and its mappings are the same.
+     *
+     * @param shaderNode the shader node.
+     * @param shaderFile the parsed shader node source.
+     * @return the compiled template.
+     */
+    protected ShaderNodeTemplate getTemplate(final ShaderNode shaderNode, final FileDeclarationAstNode shaderFile) {
+
+        final String key = getTemplateKey(shaderNode);
+
+        synchronized (templates) {
+
+            ShaderNodeTemplate template = templates.get(key);
+
+            if (template == null || template.getSource() != shaderFile) {
+                template = new ShaderNodeTemplate(shaderFile);
+                templates.put(key, template);
+            }
+
+            return template;
+        }
+    }
+
+    /**
+     * Builds the key of the template of the shader node from the definition path, the name of the shader node and
+     * the fingerprint of everything which changes renaming of the shader node source. If constants are folded, the
+     * key also has inputs which are varyings of the current technique definition, because they are never folded.
+     *
+     * @param shaderNode the shader node.
+     * @return the key of the template.
+     */
+    private String getTemplateKey(final ShaderNode shaderNode) {
+
+        final TechniqueDef techniqueDef = getState().getTechniqueDef();
+        final ShaderGenerationInfo info = techniqueDef == null ? null : techniqueDef.getShaderGenerationInfo();
+        final ShaderNodeDefinition definition = shaderNode.getDefinition();
+        final StringBuilder key = new StringBuilder(128)
+                .append(definition.getPath()).append('|')
+                .append(definition.getName()).append('|')
+                .append(shaderNode.getName()).append('|');
+
+        for (final VariableMapping mapping : shaderNode.getInputMapping()) {
+
+            final ShaderNodeVariable rightVariable = mapping.getRightVariable();
+            final ShaderNodeVariable leftVariable = mapping.getLeftVariable();
+
+            key.append(leftVariable.getName());
+
+            if (isWorldOrMaterialParam(rightVariable) && rightVariable.getType().startsWith("sampler")) {
+                key.append('=').append(rightVariable.getPrefix()).append(rightVariable.getName());
+            }
+
+            key.append(',');
+        }
+
+        key.append('|');
+
+        for (final ShaderNodeVariable var : definition.getInputs()) {
+            if (var.getDefaultValue() == null) {
+                continue;
+            }
+
+            key.append(var.getName());
+
+            // folded default values are a part of the renamed main section
+            if (foldConstants) {
 
-            final int index = findShaderIndexFromVersion(shaderNode, definition.getType());
-            final String shaderSourcePath = definition.getShadersPath().get(index);
+                key.append('=').append(var.getDefaultValue());
 
-            shaderNodeSources.put(shaderNode, parseShaderSource(shaderSourcePath));
+                final ShaderNodeVariable variable = new ShaderNodeVariable(var.getType(), shaderNode.getName(),
+                        var.getName(), var.getMultiplicity());
+
+                if (info != null && isVarying(info, variable)) {
+                    key.append(":varying");
+                }
+            }
+
+            key.append(',');
+        }
+
+        key.append('|');
+
+        for (final ShaderNodeVariable var : definition.getOutputs()) {
+            key.append(var.getName()).append(',');
         }
+
+        return key.toString();
     }
 
     /**
@@ -1050,74 +2586,192 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
      */
     protected FileDeclarationAstNode parseShaderSource(final String shaderSourcePath) {
 
-        final AstShaderGeneratorState state = LOCAL_STATE.get();
-        final Map<String, FileDeclarationAstNode> cache = state.getAstCache();
-        final FileDeclarationAstNode cached = USE_AST_CACHE ? cache.get(shaderSourcePath) : null;
+        final AstShaderGeneratorState state = CURRENT_STATE.get();
+        final ShaderGenerationMetrics metrics = state == null ? null : state.getMetrics();
+
+        if (metrics == null) {
+            return parseShaderSource(shaderSourcePath, null);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            return parseShaderSource(shaderSourcePath, metrics);
+        } finally {
+            metrics.addPhaseTime(ShaderGenerationPhase.PARSE_SHADER_SOURCE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Parses the shader source by the shader source path and counts hits and misses of the AST cache.
+     *
+     * @param shaderSourcePath the path to the shader source file.
+     * @param metrics          the metrics of the current build or null.
+     * @return the parsed shader source as AST file.
+     */
+    private FileDeclarationAstNode parseShaderSource(final String shaderSourcePath,
+                                                     final ShaderGenerationMetrics metrics) {
+
+        final long invalidations = AST_CACHE.getInvalidations();
+        final FileDeclarationAstNode cached = USE_AST_CACHE ? AST_CACHE.get(shaderSourcePath) : null;
 
         if (cached != null) {
+
+            if (metrics != null) {
+                metrics.addAstCacheHit();
+            }
+
             return cached;
         }
 
-        final Map<String, String> sourceMap;
+        final char[] content;
 
-        if (shaderSourcePath.endsWith("glsllib")) {
+        try {
+            content = loadShaderSource(shaderSourcePath);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
 
-            final StringBuilder builder = new StringBuilder();
+        if (metrics != null) {
+            metrics.addAstCacheMiss();
+            metrics.addParsedChars(content.length);
+        }
 
-            try (final Reader reader = assetManager.loadAsset(new ImportedShaderKey(shaderSourcePath))) {
-                int ch;
-                while ((ch = reader.read()) != -1) {
-                    builder.append((char) ch);
-                }
-            } catch (final IOException e) {
-                throw new RuntimeException(e);
-            }
+        // imports are kept as import nodes and are resolved by the import graph
+        final GlslParser parser = GlslParser.newInstance(true);
+        final FileDeclarationAstNode result = parser.parseFileDeclaration(shaderSourcePath, new String(content),
+                content);
 
-            sourceMap = new HashMap<>();
-            sourceMap.put("[main]", builder.toString());
+        if (USE_AST_CACHE) {
+            AST_CACHE.put(shaderSourcePath, result, invalidations);
+        }
 
-        } else {
+        return result;
+    }
 
-            final Object loadedResource = assetManager.loadAsset(new ShaderAssetKey(shaderSourcePath, false));
+    /**
+     * Loads the raw content of the shader source or the imported shader source as UTF-8 text without processing of
+     * its imports. All line endings are converted to '\n' like the shader loader of the asset manager does.
+     *
+     * @param shaderSourcePath the path to the shader source.
+     * @return the content of the shader source.
+     * @throws IOException if the source can't be read.
+     */
+    protected char[] loadShaderSource(final String shaderSourcePath) throws IOException {
+        return normalizeLineEndings(readShaderSource(shaderSourcePath));
+    }
 
-            if (loadedResource instanceof Map) {
-                sourceMap = (Map<String, String>) loadedResource;
-            } else {
-                throw new RuntimeException("Unexpected the loaded resource for the path " + shaderSourcePath +
-                        ", expected Map<String, String>, received " + loadedResource.getClass());
+    /**
+     * Reads the content of the shader source. Sources from files are read by one read of the file channel and one
+     * UTF-8 decoding, other sources are read by blocks through the reusable buffer of the current thread.
+     *
+     * @param shaderSourcePath the path to the shader source.
+     * @return the content of the shader source.
+     * @throws IOException if the source can't be read.
+     */
+    private char[] readShaderSource(final String shaderSourcePath) throws IOException {
+
+        final ShaderSourceKey key = new ShaderSourceKey(shaderSourcePath);
+        final AssetInfo info = assetManager.locateAsset(key);
+
+        if (info == null) {
+            // let the asset manager to report about the missed asset
+            try (final Reader reader = assetManager.loadAsset(key)) {
+                return readAll(reader);
             }
         }
 
-        final GlslParser parser = GlslParser.newInstance();
-        final FileDeclarationAstNode result = parser.parseFileDeclaration(shaderSourcePath, sourceMap.get("[main]"));
+        try (final InputStream stream = info.openStream()) {
 
-        for (final Map.Entry<String, String> entry : sourceMap.entrySet()) {
+            if (stream instanceof FileInputStream) {
 
-            final String key = entry.getKey();
-            if ("[main]".equals(key)) {
-                continue;
+                final FileChannel channel = ((FileInputStream) stream).getChannel();
+                final long size = channel.size();
+
+                if (size <= Integer.MAX_VALUE) {
+
+                    final ByteBuffer bytes = ByteBuffer.allocate((int) size);
+
+                    while (bytes.hasRemaining()) {
+                        if (channel.read(bytes) == -1) {
+                            break;
+                        }
+                    }
+
+                    bytes.flip();
+
+                    final CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+                    final char[] array = chars.array();
+
+                    if (chars.arrayOffset() == 0 && chars.position() == 0 && array.length == chars.remaining()) {
+                        return array;
+                    }
+
+                    return Arrays.copyOfRange(array, chars.arrayOffset() + chars.position(),
+                            chars.arrayOffset() + chars.limit());
+                }
             }
 
-            final StringValueAstNode importValue = new StringValueAstNode();
-            importValue.setValue(key);
-            importValue.setText(key);
+            return readAll(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Converts "\r\n" and "\r" line endings of the content to "\n".
+     *
+     * @param content the content.
+     * @return the same content if it doesn't have "\r" or the converted content.
+     */
+    private static char[] normalizeLineEndings(final char[] content) {
+
+        int index = 0;
+
+        while (index < content.length && content[index] != '\r') {
+            index++;
+        }
+
+        if (index == content.length) {
+            return content;
+        }
+
+        int length = index;
 
-            final ImportPreprocessorAstNode importNode = new ImportPreprocessorAstNode();
-            importNode.setValue(importValue);
-            importNode.setText("#" + GlslLang.PR_TYPE_IMPORT + "\"" + key + "\"");
+        for (int i = index; i < content.length; i++) {
 
-            result.getChildren().add(0, importNode);
+            final char ch = content[i];
 
-            if (USE_AST_CACHE) {
-                cache.put(key, parseShaderSource(entry.getValue()));
+            if (ch != '\r') {
+                content[length++] = ch;
+            } else if (i + 1 >= content.length || content[i + 1] != '\n') {
+                content[length++] = '\n';
             }
         }
 
-        if (USE_AST_CACHE) {
-            cache.put(shaderSourcePath, result);
+        return Arrays.copyOf(content, length);
+    }
+
+    /**
+     * Reads all chars of the reader by blocks through the reusable buffer of the current thread.
+     *
+     * @param reader the reader.
+     * @return the read chars.
+     * @throws IOException if the reader throws it.
+     */
+    private static char[] readAll(final Reader reader) throws IOException {
+
+        char[] buffer = LOAD_BUFFER.get();
+        int length = 0;
+
+        for (int read; (read = reader.read(buffer, length, buffer.length - length)) != -1; ) {
+
+            length += read;
+
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                LOAD_BUFFER.set(buffer);
+            }
         }
 
-        return result;
+        return Arrays.copyOf(buffer, length);
     }
 
     /* ======== UTILITY METHODS ============== */
@@ -1196,145 +2850,6 @@ public abstract class AstShaderGenerator extends Glsl100ShaderGenerator {
         }
     }
 
-    /**
-     * Replaces a name of a variable in the source code.
-     *
-     * @param source  the source code.
-     * @param oldName the old name.
-     * @param newName the new name.
-     * @param result  the result code.
-     * @return the builder with result code.
-     */
-    protected StringBuilder replaceVar(final StringBuilder source, final String oldName, final String newName,
-                                       final StringBuilder result) {
-        return replace(source, oldName, newName, PREVIOUS_VAR_CHAR_CHECKER, NEXT_VAR_CHAR_CHECKER, result);
-    }
-
-    /**
-     * Replaces a name of a define in the source code.
-     *
-     * @param source  the source code.
-     * @param oldName the old name.
-     * @param newName the new name.
-     * @param result  the result code.
-     * @return the builder with result code.
-     */
-    protected StringBuilder replaceDefine(final StringBuilder source, final String oldName, final String newName,
-                                          final StringBuilder result) {
-        return replace(source, oldName, newName, PREVIOUS_DEFINE_CHAR_CHECKER, NEXT_DEFINE_CHAR_CHECKER, result);
-    }
-
-    /**
-     * Replaces a name of a method in the source code.
-     *
-     * @param source  the source code.
-     * @param oldName the old name.
-     * @param newName the new name.
-     * @param result  the result code.
-     * @return the builder with result code.
-     */
-    protected StringBuilder replaceMethod(final StringBuilder source, final String oldName, final String newName,
-                                          final StringBuilder result) {
-        return replace(source, oldName, newName, PREVIOUS_METHOD_CHAR_CHECKER, NEXT_METHOD_CHAR_CHECKER, result);
-    }
-
-    /**
-     * Replaces a name in the source code.
-     *
-     * @param source          the source code.
-     * @param oldName         the old name.
-     * @param newName         the new name.
-     * @param prevCharChecker the checker of a previous char.
-     * @param nextCharChecker the checker of a next char.
-     * @param result          the result code.
-     * @return the builder with result code.
-     */
-    protected StringBuilder replace(final StringBuilder source, final String oldName, final String newName,
-                                    final CharPredicate prevCharChecker, final CharPredicate nextCharChecker,
-                                    final StringBuilder result) {
-
-        if (source.indexOf(oldName) == -1) {
-            result.append(source);
-            return result;
-        }
-
-        //String debug = "";
-
-        boolean copyOriginal = false;
-
-        for (int i = 0, first = -1, current = 0, last = -1, length = source.length(); i < length; i++) {
-
-            final char ch = source.charAt(i);
-
-            if (first == -1) {
-
-                if (oldName.charAt(0) != ch) {
-                    result.append(ch);
-                    continue;
-                }
-
-                first = i;
-                current = 1;
-                //debug = String.valueOf(ch);
-                continue;
-            }
-
-            //debug += ch;
-
-            if (current < oldName.length() && ch == oldName.charAt(current)) {
-                current++;
-
-                if (current >= oldName.length()) {
-                    last = i;
-                }
-
-            } else if (current == oldName.length()) {
-                i--;
-                last = i;
-            } else {
-                last = i;
-                copyOriginal = true;
-            }
-
-            if (last == -1) {
-                continue;
-            }
-
-            if (copyOriginal) {
-                result.append(source, first, last + 1);
-                copyOriginal = false;
-                first = -1;
-                last = -1;
-                continue;
-            }
-
-            char prevChar = ' ';
-            char afterChar = ' ';
-
-            if (first > 0) {
-                prevChar = source.charAt(first - 1);
-            }
-
-            if (last < source.length() - 1) {
-                afterChar = source.charAt(last + 1);
-            }
-
-            boolean canBeReplaced = prevCharChecker.test(prevChar);
-            canBeReplaced = canBeReplaced && nextCharChecker.test(afterChar);
-
-            if (canBeReplaced) {
-                result.append(newName);
-            } else {
-                result.append(oldName);
-            }
-
-            first = -1;
-            last = -1;
-        }
-
-        return result;
-    }
-
     /**
      * Clears the string builder.
      *
@@ -1,7 +1,9 @@
 package com.jme3.shader.glsl;
 
 import com.jme3.material.TechniqueDef;
+import com.jme3.shader.Shader.ShaderType;
 import com.jme3.shader.ShaderNode;
+import com.jme3.shader.ShaderNodeVariable;
 import com.jme3.shader.glsl.parser.ast.declaration.ExternalFieldDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.LocalVarDeclarationAstNode;
@@ -12,8 +14,10 @@ import com.jme3.shader.glsl.parser.ast.value.DefineValueAstNode;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The class with state of shader generator.
@@ -23,14 +27,14 @@ import java.util.Map;
 public class AstShaderGeneratorState {
 
     /**
-     * The cache of AST of shader sources.
+     * The mapping a shader node source path to a AST presentation.
      */
-    private final Map<String, FileDeclarationAstNode> astCache;
+    private final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources;
 
     /**
-     * The mapping a shader node source path to a AST presentation.
+     * The mapping a shader node to its compiled template.
      */
-    private final Map<ShaderNode, FileDeclarationAstNode> shaderNodeSources;
+    private final Map<ShaderNode, ShaderNodeTemplate> shaderNodeTemplates;
 
     /**
      * The list of extension nodes.
@@ -77,6 +81,11 @@ public class AstShaderGeneratorState {
      */
     private final List<LocalVarDeclarationAstNode> localVars;
 
+    /**
+     * The list of all imported shader sources of the current generation.
+     */
+    private final List<FileDeclarationAstNode> importedSources;
+
     /**
      * The builder of header shader code.
      */
@@ -103,28 +112,78 @@ public class AstShaderGeneratorState {
     private final StringBuilder mainSource;
 
     /**
-     * The builder with original source.
+     * The builder with updated source.
      */
-    private final StringBuilder originalSource;
+    private final StringBuilder updatedSource;
 
     /**
-     * The builder with updated source.
+     * The renamer of identifiers in shader node sources.
      */
-    private final StringBuilder updatedSource;
+    private final ShaderSourceRenamer renamer;
+
+    /**
+     * The index of symbols of the current build.
+     */
+    private final ShaderSymbolIndex symbolIndex;
+
+    /**
+     * The set of declared variables of the current shader node.
+     */
+    private final Set<String> declaredVariables;
+
+    /**
+     * The list of imported shader sources of the current stage.
+     */
+    private final List<FileDeclarationAstNode> stageImports;
+
+    /**
+     * The list of ranges of not main methods in the methods code of the current stage.
+     */
+    private final List<int[]> methodRanges;
+
+    /**
+     * The eliminator of dead code of the current stage.
+     */
+    private final ShaderDeadCodeEliminator deadCodeEliminator;
+
+    /**
+     * The scratch state to generate a vertex stage in parallel.
+     */
+    private AstShaderGeneratorState vertexState;
+
+    /**
+     * The scratch state to generate a fragment stage in parallel.
+     */
+    private AstShaderGeneratorState fragmentState;
 
     /**
      * The technique definition.
      */
     private TechniqueDef techniqueDef;
 
+    /**
+     * The input position attribute of the current vertex stage.
+     */
+    private ShaderNodeVariable inPosition;
+
+    /**
+     * The metrics of the current build or null if the generator isn't instrumented.
+     */
+    private ShaderGenerationMetrics metrics;
+
+    /**
+     * The buffer to write generated sections to an output.
+     */
+    private char[] writeBuffer;
+
     /**
      * The indent.
      */
     private int indent;
 
     public AstShaderGeneratorState() {
-        this.astCache = new HashMap<>();
         this.shaderNodeSources = new HashMap<>();
+        this.shaderNodeTemplates = new HashMap<>();
         this.extensionNodes = new ArrayList<>();
         this.importNodes = new ArrayList<>();
         this.usedVariableDefinitions = new ArrayList<>();
@@ -134,31 +193,37 @@ public class AstShaderGeneratorState {
         this.importedGlobalUniforms = new ArrayList<>();
         this.methods = new ArrayList<>();
         this.localVars = new ArrayList<>();
+        this.importedSources = new ArrayList<>();
         this.headerSource = new StringBuilder();
         this.importsSource = new StringBuilder();
         this.uniformsSource = new StringBuilder();
         this.methodsSource = new StringBuilder();
         this.mainSource = new StringBuilder();
-        this.originalSource = new StringBuilder();
         this.updatedSource = new StringBuilder();
+        this.renamer = new ShaderSourceRenamer();
+        this.symbolIndex = new ShaderSymbolIndex();
+        this.declaredVariables = new HashSet<>();
+        this.stageImports = new ArrayList<>();
+        this.methodRanges = new ArrayList<>();
+        this.deadCodeEliminator = new ShaderDeadCodeEliminator();
     }
 
     /**
-     * Gets the cache of AST of shader sources.
+     * Gets the mapping a shader node source path to a AST presentation.
      *
-     * @return the cache of AST of shader sources.
+     * @return the mapping a shader node source path to a AST presentation.
      */
-    public Map<String, FileDeclarationAstNode> getAstCache() {
-        return astCache;
+    public Map<ShaderNode, FileDeclarationAstNode> getShaderNodeSources() {
+        return shaderNodeSources;
     }
 
     /**
-     * Gets the mapping a shader node source path to a AST presentation.
+     * Gets the mapping a shader node to its compiled template.
      *
-     * @return the mapping a shader node source path to a AST presentation.
+     * @return the mapping a shader node to its compiled template.
      */
-    public Map<ShaderNode, FileDeclarationAstNode> getShaderNodeSources() {
-        return shaderNodeSources;
+    public Map<ShaderNode, ShaderNodeTemplate> getShaderNodeTemplates() {
+        return shaderNodeTemplates;
     }
 
     /**
@@ -215,6 +280,15 @@ public class AstShaderGeneratorState {
         return localVars;
     }
 
+    /**
+     * Gets the list of all imported shader sources of the current generation.
+     *
+     * @return the list of all imported shader sources of the current generation.
+     */
+    public List<FileDeclarationAstNode> getImportedSources() {
+        return importedSources;
+    }
+
     /**
      * Gets the list of methods.
      *
@@ -324,20 +398,196 @@ public class AstShaderGeneratorState {
     }
 
     /**
-     * Gets the builder with original source.
+     * Gets the builder with updated source.
      *
-     * @return the builder with original source.
+     * @return the builder with updated source.
      */
-    public StringBuilder getOriginalSource() {
-        return originalSource;
+    public StringBuilder getUpdatedSource() {
+        return updatedSource;
     }
 
     /**
-     * Gets the builder with updated source.
+     * Gets the renamer of identifiers in shader node sources.
      *
-     * @return the builder with updated source.
+     * @return the renamer of identifiers in shader node sources.
      */
-    public StringBuilder getUpdatedSource() {
-        return updatedSource;
+    public ShaderSourceRenamer getRenamer() {
+        return renamer;
+    }
+
+    /**
+     * Gets the index of symbols of the current build.
+     *
+     * @return the index of symbols.
+     */
+    public ShaderSymbolIndex getSymbolIndex() {
+        return symbolIndex;
+    }
+
+    /**
+     * Gets the set of declared variables of the current shader node.
+     *
+     * @return the set of declared variables.
+     */
+    public Set<String> getDeclaredVariables() {
+        return declaredVariables;
+    }
+
+    /**
+     * Gets the list of imported shader sources of the current stage in the order of their code.
+     *
+     * @return the list of imported shader sources of the current stage.
+     */
+    public List<FileDeclarationAstNode> getStageImports() {
+        return stageImports;
+    }
+
+    /**
+     * Gets the list of ranges of not main methods in the methods code of the current stage.
+     *
+     * @return the list of ranges as pairs of the start and the end.
+     */
+    public List<int[]> getMethodRanges() {
+        return methodRanges;
+    }
+
+    /**
+     * Gets the eliminator of dead code of the current stage.
+     *
+     * @return the eliminator of dead code.
+     */
+    public ShaderDeadCodeEliminator getDeadCodeEliminator() {
+        return deadCodeEliminator;
+    }
+
+    /**
+     * Gets the input position attribute of the current vertex stage.
+     *
+     * @return the input position attribute.
+     */
+    public ShaderNodeVariable getInPosition() {
+        return inPosition;
+    }
+
+    /**
+     * Sets the input position attribute of the current vertex stage.
+     *
+     * @param inPosition the input position attribute.
+     */
+    public void setInPosition(final ShaderNodeVariable inPosition) {
+        this.inPosition = inPosition;
+    }
+
+    /**
+     * Gets the metrics of the current build.
+     *
+     * @return the metrics of the current build or null if the generator isn't instrumented.
+     */
+    public ShaderGenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics of the current build.
+     *
+     * @param metrics the metrics of the current build or null.
+     */
+    public void setMetrics(final ShaderGenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the buffer to write generated sections to an output. The buffer is created on the first call.
+     *
+     * @return the buffer to write generated sections.
+     */
+    public char[] getWriteBuffer() {
+
+        if (writeBuffer == null) {
+            writeBuffer = new char[4096];
+        }
+
+        return writeBuffer;
+    }
+
+    /**
+     * Gets the scratch state to generate the stage of the current generation in parallel. The state is created on
+     * the first call and is reused by next generations.
+     *
+     * @param type the shader type of the stage.
+     * @return the scratch state of the stage.
+     */
+    public AstShaderGeneratorState getStageState(final ShaderType type) {
+
+        if (type == ShaderType.Vertex) {
+
+            if (vertexState == null) {
+                vertexState = new AstShaderGeneratorState();
+            }
+
+            return vertexState;
+
+        } else if (type == ShaderType.Fragment) {
+
+            if (fragmentState == null) {
+                fragmentState = new AstShaderGeneratorState();
+            }
+
+            return fragmentState;
+        }
+
+        throw new IllegalArgumentException("Unsupported shader type " + type);
+    }
+
+    /**
+     * Prepares this state to generate a stage of the generation of the parent state. The read only inputs of the
+     * parent state are copied to this state and all results of a previous stage are cleared.
+     *
+     * @param parent the state of the generation.
+     */
+    public void prepareStage(final AstShaderGeneratorState parent) {
+        techniqueDef = parent.getTechniqueDef();
+        metrics = parent.getMetrics();
+        indent = 0;
+        shaderNodeSources.clear();
+        shaderNodeSources.putAll(parent.getShaderNodeSources());
+        shaderNodeTemplates.clear();
+        shaderNodeTemplates.putAll(parent.getShaderNodeTemplates());
+        importedGlobalUniforms.clear();
+        importedSources.clear();
+    }
+
+    /**
+     * Releases all references to the technique definition and parsed shader sources, the buffers are kept to be
+     * reused.
+     */
+    public void reset() {
+        techniqueDef = null;
+        inPosition = null;
+        metrics = null;
+        indent = 0;
+        shaderNodeSources.clear();
+        shaderNodeTemplates.clear();
+        importedGlobalUniforms.clear();
+        importedSources.clear();
+        importedUnforms.clear();
+        extensionNodes.clear();
+        importNodes.clear();
+        defineValueNodes.clear();
+        methods.clear();
+        localVars.clear();
+        symbolIndex.clear();
+        declaredVariables.clear();
+        stageImports.clear();
+        methodRanges.clear();
+        deadCodeEliminator.clear();
+
+        if (vertexState != null) {
+            vertexState.reset();
+        }
+
+        if (fragmentState != null) {
+            fragmentState.reset();
+        }
     }
 }
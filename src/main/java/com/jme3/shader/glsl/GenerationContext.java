@@ -0,0 +1,98 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.material.TechniqueDef;
+import com.jme3.shader.Shader;
+import com.jme3.shader.Shader.ShaderType;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+
+/**
+ * The context to generate shaders of a technique definition. The context owns all scratch state of generations, so
+ * different contexts of the same generator can generate shaders concurrently on any threads, but one context can be
+ * used only by one thread at the same time. Contexts are created by {@link AstShaderGenerator#newContext(TechniqueDef)}
+ * and should be released after using to reuse their buffers.
+ *
+ * @author JavaSaBr
+ */
+public class GenerationContext {
+
+    /**
+     * The owner generator.
+     */
+    private final AstShaderGenerator generator;
+
+    /**
+     * The state of generations.
+     */
+    private final AstShaderGeneratorState state;
+
+    /**
+     * The technique definition or null if this context is released.
+     */
+    private volatile TechniqueDef techniqueDef;
+
+    GenerationContext(final AstShaderGenerator generator) {
+        this.generator = generator;
+        this.state = new AstShaderGeneratorState();
+    }
+
+    /**
+     * Generates the shader of the technique definition with the defines.
+     *
+     * @param definesSourceCode the defines source code.
+     * @return the generated shader.
+     */
+    public Shader generate(final String definesSourceCode) {
+        return generator.generate(this, definesSourceCode);
+    }
+
+    /**
+     * Generates the shader source of the type of the technique definition and writes it directly to the output in
+     * the final order. Writers and char buffers get the source by chunks without intermediate strings, a char buffer
+     * must have enough space for the whole source.
+     *
+     * @param type   the shader type.
+     * @param output the output.
+     * @return false if the shader type isn't supported.
+     * @throws IOException             if the output throws it.
+     * @throws BufferOverflowException if the output is a char buffer without enough space.
+     */
+    public boolean write(final ShaderType type, final Appendable output) throws IOException {
+        return generator.write(this, type, output);
+    }
+
+    /**
+     * Gets the technique definition of this context.
+     *
+     * @return the technique definition or null if this context is released.
+     */
+    public TechniqueDef getTechniqueDef() {
+        return techniqueDef;
+    }
+
+    /**
+     * Sets the technique definition of this context.
+     *
+     * @param techniqueDef the technique definition.
+     */
+    void setTechniqueDef(final TechniqueDef techniqueDef) {
+        this.techniqueDef = techniqueDef;
+    }
+
+    /**
+     * Gets the state of generations.
+     *
+     * @return the state of generations.
+     */
+    AstShaderGeneratorState getState() {
+        return state;
+    }
+
+    /**
+     * Returns this context to the pool of the generator, the context can't be used after releasing.
+     */
+    public void release() {
+        generator.releaseContext(this);
+    }
+}
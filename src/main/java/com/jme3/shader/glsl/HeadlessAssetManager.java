@@ -0,0 +1,36 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.ClasspathLocator;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.material.plugins.J3MLoader;
+import com.jme3.material.plugins.ShaderNodeDefinitionLoader;
+import com.jme3.shader.plugins.GLSLLoader;
+
+import java.nio.file.Path;
+
+/**
+ * The asset manager to load material definitions, shader node definitions and shader sources without a renderer, so
+ * shader generators can be run headless. Only loaders of the shader pipeline are registered.
+ *
+ * @author JavaSaBr
+ */
+public class HeadlessAssetManager extends DesktopAssetManager {
+
+    public HeadlessAssetManager() {
+        registerLocator("/", ClasspathLocator.class);
+        registerLoader(J3MLoader.class, "j3m", "j3md");
+        registerLoader(ShaderNodeDefinitionLoader.class, "j3sn");
+        registerLoader(GLSLLoader.class, "vert", "frag", "geom", "tsctrl", "tseval", "glsl", "glsllib");
+    }
+
+    /**
+     * Creates the asset manager which also loads assets from the folder.
+     *
+     * @param root the root folder of assets.
+     */
+    public HeadlessAssetManager(final Path root) {
+        this();
+        registerLocator(root.toAbsolutePath().toString(), FileLocator.class);
+    }
+}
@@ -0,0 +1,737 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.material.MaterialDef;
+import com.jme3.material.TechniqueDef;
+import com.jme3.shader.DefineList;
+import com.jme3.shader.Shader;
+import com.jme3.shader.Shader.ShaderSource;
+import com.jme3.shader.VarType;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The headless generator of all shaders of material definitions of a folder. Every material definition file under
+ * the root folder is loaded by the asset manager and every technique definition with shader nodes is generated with
+ * every permutation of its defines in parallel. The generated shaders are written to the output folder as
+ * "[material definition]/[technique]/[permutation].[vert|frag]" files which can be compiled as is, and the report
+ * with times and errors of all generations is written to "report.txt" of the output folder. A material definition
+ * which can't be loaded or generated, even with a stack overflow or a linkage error, is reported as a failed result
+ * and doesn't stop the batch.
+ * <p>
+ * If a technique definition has not more defines than the max count of fully permuted defines, all combinations of
+ * set and not set defines are generated, otherwise only shaders without defines, with every single define and with
+ * all defines are generated. Int and float defines are set to 1.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderBatchGenerator {
+
+    /**
+     * The result of one generation or of loading of a material definition.
+     */
+    public static class Result {
+
+        /**
+         * The path to the material definition.
+         */
+        private final String materialDefPath;
+
+        /**
+         * The name of the technique definition or null if the material definition wasn't loaded.
+         */
+        private final String techniqueName;
+
+        /**
+         * The index of the permutation of defines.
+         */
+        private final int permutation;
+
+        /**
+         * The defines source code.
+         */
+        private final String defines;
+
+        /**
+         * The time of the generation in nanoseconds.
+         */
+        private final long time;
+
+        /**
+         * The metrics of the generation or null.
+         */
+        private final ShaderGenerationMetrics metrics;
+
+        /**
+         * The error or null if the generation was successful.
+         */
+        private final String error;
+
+        private Result(final String materialDefPath, final String techniqueName, final int permutation,
+                       final String defines, final long time, final ShaderGenerationMetrics metrics,
+                       final String error) {
+            this.materialDefPath = materialDefPath;
+            this.techniqueName = techniqueName;
+            this.permutation = permutation;
+            this.defines = defines;
+            this.time = time;
+            this.metrics = metrics;
+            this.error = error;
+        }
+
+        /**
+         * Gets the path to the material definition.
+         *
+         * @return the path to the material definition.
+         */
+        public String getMaterialDefPath() {
+            return materialDefPath;
+        }
+
+        /**
+         * Gets the name of the technique definition.
+         *
+         * @return the name of the technique definition or null if the material definition wasn't loaded.
+         */
+        public String getTechniqueName() {
+            return techniqueName;
+        }
+
+        /**
+         * Gets the index of the permutation of defines.
+         *
+         * @return the index of the permutation.
+         */
+        public int getPermutation() {
+            return permutation;
+        }
+
+        /**
+         * Gets the defines source code of the permutation.
+         *
+         * @return the defines source code.
+         */
+        public String getDefines() {
+            return defines;
+        }
+
+        /**
+         * Gets the time of the generation.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Gets the metrics of the generation.
+         *
+         * @return the metrics of the generation or null.
+         */
+        public ShaderGenerationMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * Gets the error of the generation.
+         *
+         * @return the error or null if the generation was successful.
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+
+            final StringBuilder result = new StringBuilder(128)
+                    .append(error == null ? "OK   " : "FAIL ").append(materialDefPath);
+
+            if (techniqueName != null) {
+                result.append(' ').append(techniqueName).append(" #").append(permutation)
+                        .append(" time=").append(TimeUnit.NANOSECONDS.toMicros(time)).append("us");
+            }
+
+            if (error != null) {
+                result.append(": ").append(error);
+            } else if (metrics != null) {
+                result.append(" [").append(metrics).append(']');
+            }
+
+            return result.toString();
+        }
+    }
+
+    /**
+     * The generation of one permutation of a technique definition or the failed loading of a material definition.
+     */
+    private static class Job {
+
+        /**
+         * The path to the material definition.
+         */
+        private final String materialDefPath;
+
+        /**
+         * The technique definition.
+         */
+        private final TechniqueDef techniqueDef;
+
+        /**
+         * The folder of generated shaders of the technique definition.
+         */
+        private final Path folder;
+
+        /**
+         * The index of the permutation of defines.
+         */
+        private final int permutation;
+
+        /**
+         * The result of the failed loading of the material definition or null.
+         */
+        private final Result failure;
+
+        private Job(final String materialDefPath, final TechniqueDef techniqueDef, final Path folder,
+                    final int permutation) {
+            this.materialDefPath = materialDefPath;
+            this.techniqueDef = techniqueDef;
+            this.folder = folder;
+            this.permutation = permutation;
+            this.failure = null;
+        }
+
+        private Job(final Result failure) {
+            this.materialDefPath = failure.getMaterialDefPath();
+            this.techniqueDef = null;
+            this.folder = null;
+            this.permutation = 0;
+            this.failure = failure;
+        }
+    }
+
+    public static final String REPORT_FILE = "report.txt";
+
+    /**
+     * The asset manager to load material definitions.
+     */
+    private final AssetManager assetManager;
+
+    /**
+     * The shader generator.
+     */
+    private final AstShaderGenerator generator;
+
+    /**
+     * The metrics of the last finished build of the current thread.
+     */
+    private final ThreadLocal<ShaderGenerationMetrics> lastMetrics;
+
+    /**
+     * The count of generating threads.
+     */
+    private int threads;
+
+    /**
+     * The max count of defines which are fully permuted.
+     */
+    private int maxPermutedDefines;
+
+    /**
+     * Creates the batch generator. The generation listener of the shader generator is replaced by the listener which
+     * collects metrics of generations and notifies the previous listener.
+     *
+     * @param assetManager the asset manager to load material definitions.
+     * @param generator    the shader generator.
+     */
+    public ShaderBatchGenerator(final AssetManager assetManager, final AstShaderGenerator generator) {
+        this.assetManager = assetManager;
+        this.generator = generator;
+        this.lastMetrics = new ThreadLocal<>();
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.maxPermutedDefines = 8;
+
+        final ShaderGenerationListener prevListener = generator.getGenerationListener();
+
+        this.generator.setGenerationListener(new ShaderGenerationListener() {
+
+            @Override
+            public void onBuildFinished(final ShaderGenerationMetrics metrics) {
+
+                lastMetrics.set(metrics);
+
+                if (prevListener != null) {
+                    prevListener.onBuildFinished(metrics);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the count of generating threads.
+     *
+     * @param threads the count of generating threads.
+     * @return this generator.
+     */
+    public ShaderBatchGenerator setThreads(final int threads) {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("The count of threads should be positive.");
+        }
+
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the max count of defines of a technique definition which are fully permuted.
+     *
+     * @param maxPermutedDefines the max count of fully permuted defines.
+     * @return this generator.
+     */
+    public ShaderBatchGenerator setMaxPermutedDefines(final int maxPermutedDefines) {
+
+        if (maxPermutedDefines < 0 || maxPermutedDefines > 16) {
+            throw new IllegalArgumentException("The max count of fully permuted defines should be in [0, 16].");
+        }
+
+        this.maxPermutedDefines = maxPermutedDefines;
+        return this;
+    }
+
+    /**
+     * Generates all shaders of all material definitions with the extensions under the root folder and writes them
+     * with the report to the output folder.
+     *
+     * @param root       the root folder of assets which is registered in the asset manager.
+     * @param output     the output folder.
+     * @param extensions the extensions of material definition files, e.g. "j3md".
+     * @return the results of all generations and failed loadings in the order of paths and permutations.
+     * @throws IOException if the root folder can't be read or the output can't be written.
+     */
+    public List<Result> generate(final Path root, final Path output, final Collection<String> extensions)
+            throws IOException {
+
+        final List<Path> files = findFiles(root, extensions);
+        final List<Result> results = new ArrayList<>();
+        final List<Job> jobs = new ArrayList<>();
+
+        final long startTime = System.nanoTime();
+
+        for (final Path file : files) {
+
+            final String path = toAssetPath(root.relativize(file));
+            final MaterialDef materialDef;
+
+            try {
+                materialDef = (MaterialDef) assetManager.loadAsset(new AssetKey<>(path));
+            } catch (final RuntimeException | StackOverflowError | LinkageError e) {
+                jobs.add(new Job(new Result(path, null, 0, "", 0, null, toMessage(e))));
+                continue;
+            }
+
+            addJobs(path, materialDef, output.resolve(path), jobs);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Result>> futures = new ArrayList<>(jobs.size());
+
+        try {
+
+            for (final Job job : jobs) {
+
+                // failed loadings are kept in the list to have all results in the order of paths
+                if (job.failure != null) {
+                    futures.add(null);
+                    continue;
+                }
+
+                futures.add(executor.submit(new Callable<Result>() {
+
+                    @Override
+                    public Result call() throws IOException {
+                        return generate(job);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < jobs.size(); i++) {
+                final Future<Result> future = futures.get(i);
+                results.add(future == null ? jobs.get(i).failure : getResult(future));
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        writeReport(output.resolve(REPORT_FILE), results, System.nanoTime() - startTime);
+
+        return results;
+    }
+
+    /**
+     * Adds jobs to generate all permutations of all technique definitions with shader nodes of the material
+     * definition.
+     *
+     * @param path        the path to the material definition.
+     * @param materialDef the material definition.
+     * @param folder      the folder of generated shaders of the material definition.
+     * @param jobs        the list of jobs.
+     */
+    private void addJobs(final String path, final MaterialDef materialDef, final Path folder, final List<Job> jobs) {
+
+        final List<String> techniqueNames = new ArrayList<>(materialDef.getTechniqueDefsNames());
+        Collections.sort(techniqueNames);
+
+        for (final String techniqueName : techniqueNames) {
+
+            final List<TechniqueDef> techniqueDefs = materialDef.getTechniqueDefs(techniqueName);
+
+            for (final TechniqueDef techniqueDef : techniqueDefs) {
+
+                if (!techniqueDef.isUsingShaderNodes()) {
+                    continue;
+                }
+
+                String folderName = techniqueName;
+
+                if (techniqueDefs.size() > 1) {
+                    folderName += "-" + techniqueDef.getLightMode();
+                }
+
+                final Path techniqueFolder = folder.resolve(folderName);
+                final int count = getPermutationCount(techniqueDef.getDefineNames().length);
+
+                for (int permutation = 0; permutation < count; permutation++) {
+                    jobs.add(new Job(path, techniqueDef, techniqueFolder, permutation));
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the shader of the job and writes its sources.
+     *
+     * @param job the job.
+     * @return the result of the generation.
+     * @throws IOException if the sources can't be written.
+     */
+    private Result generate(final Job job) throws IOException {
+
+        final TechniqueDef techniqueDef = job.techniqueDef;
+        final String defines = getDefines(techniqueDef, job.permutation);
+        final long start = System.nanoTime();
+
+        lastMetrics.remove();
+
+        final Shader shader;
+
+        try {
+
+            final GenerationContext context = generator.newContext(techniqueDef);
+            try {
+                shader = context.generate(defines);
+            } finally {
+                context.release();
+            }
+
+        } catch (final RuntimeException | StackOverflowError | LinkageError e) {
+            // a broken material shouldn't break the whole batch
+            return new Result(job.materialDefPath, techniqueDef.getName(), job.permutation, defines,
+                    System.nanoTime() - start, null, toMessage(e));
+        }
+
+        final long time = System.nanoTime() - start;
+
+        Files.createDirectories(job.folder);
+
+        for (final ShaderSource source : shader.getSources()) {
+
+            final Path file = job.folder.resolve(job.permutation + "." + source.getType().getExtension());
+
+            try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(getVersion(source.getLanguage()));
+                writer.write(source.getDefines());
+                writer.write(source.getSource());
+            }
+        }
+
+        return new Result(job.materialDefPath, techniqueDef.getName(), job.permutation, defines, time,
+                lastMetrics.get(), null);
+    }
+
+    /**
+     * Gets the count of permutations of defines.
+     *
+     * @param defines the count of defines.
+     * @return the count of permutations.
+     */
+    private int getPermutationCount(final int defines) {
+
+        if (defines <= maxPermutedDefines) {
+            return 1 << defines;
+        }
+
+        // without defines, every single define and all defines
+        return defines + 2;
+    }
+
+    /**
+     * Builds the defines source code of the permutation of the technique definition.
+     *
+     * @param techniqueDef the technique definition.
+     * @param permutation  the index of the permutation.
+     * @return the defines source code.
+     */
+    private String getDefines(final TechniqueDef techniqueDef, final int permutation) {
+
+        final String[] names = techniqueDef.getDefineNames();
+        final VarType[] types = techniqueDef.getDefineTypes();
+        final DefineList defineList = techniqueDef.createDefineList();
+
+        for (int id = 0; id < names.length; id++) {
+
+            final boolean set;
+
+            if (names.length <= maxPermutedDefines) {
+                set = (permutation & (1 << id)) != 0;
+            } else {
+                set = permutation == names.length + 1 || permutation == id + 1;
+            }
+
+            if (!set) {
+                continue;
+            }
+
+            switch (types[id]) {
+                case Int:
+                    defineList.set(id, 1);
+                    break;
+                case Float:
+                    defineList.set(id, 1F);
+                    break;
+                default:
+                    defineList.set(id, true);
+            }
+        }
+
+        return defineList.generateSource(Arrays.asList(names), Arrays.asList(types));
+    }
+
+    /**
+     * Gets the version line of the shader language like the desktop renderer adds it before compiling.
+     *
+     * @param language the shader language, e.g. GLSL150.
+     * @return the version line or an empty string.
+     */
+    private static String getVersion(final String language) {
+
+        if (language == null || !language.startsWith("GLSL")) {
+            return "";
+        }
+
+        final int version = Integer.parseInt(language.substring(4));
+
+        if (version <= 100) {
+            return "";
+        }
+
+        return "#version " + version + (version >= 150 ? " core" : "") + "\n";
+    }
+
+    /**
+     * Finds all files with the extensions under the root folder.
+     *
+     * @param root       the root folder.
+     * @param extensions the extensions.
+     * @return the sorted list of found files.
+     * @throws IOException if the root folder can't be read.
+     */
+    private static List<Path> findFiles(final Path root, final Collection<String> extensions) throws IOException {
+
+        final List<Path> files = new ArrayList<>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+
+                final String fileName = file.getFileName().toString();
+                final int index = fileName.lastIndexOf('.');
+
+                if (index > 0 && extensions.contains(fileName.substring(index + 1).toLowerCase(Locale.ENGLISH))) {
+                    files.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(files, new Comparator<Path>() {
+
+            @Override
+            public int compare(final Path first, final Path second) {
+                return first.toString().compareTo(second.toString());
+            }
+        });
+
+        return files;
+    }
+
+    /**
+     * Converts the relative file path to the asset path.
+     *
+     * @param relativePath the relative file path.
+     * @return the asset path.
+     */
+    private static String toAssetPath(final Path relativePath) {
+
+        final StringBuilder result = new StringBuilder();
+
+        for (final Path part : relativePath) {
+
+            if (result.length() > 0) {
+                result.append('/');
+            }
+
+            result.append(part);
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Waits for the result of the job.
+     *
+     * @param future the future of the job.
+     * @return the result of the job.
+     * @throws IOException if the job couldn't write sources.
+     */
+    private static Result getResult(final Future<Result> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Writes the report of the results.
+     *
+     * @param file      the report file.
+     * @param results   the results.
+     * @param totalTime the total time of the batch in nanoseconds.
+     * @throws IOException if the report can't be written.
+     */
+    private static void writeReport(final Path file, final List<Result> results, final long totalTime)
+            throws IOException {
+
+        final ShaderGenerationPhase[] phases = ShaderGenerationPhase.values();
+        final long[] phaseTimes = new long[phases.length];
+
+        int failed = 0;
+        long generationTime = 0;
+
+        for (final Result result : results) {
+
+            if (result.getError() != null) {
+                failed++;
+            }
+
+            generationTime += result.getTime();
+
+            final ShaderGenerationMetrics metrics = result.getMetrics();
+
+            if (metrics != null) {
+                for (final ShaderGenerationPhase phase : phases) {
+                    phaseTimes[phase.ordinal()] += metrics.getPhaseTime(phase);
+                }
+            }
+        }
+
+        Files.createDirectories(file.getParent());
+
+        try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+            for (final Result result : results) {
+                writer.write(result.toString());
+                writer.write('\n');
+            }
+
+            writer.write("\ngenerations=" + results.size() + " failed=" + failed +
+                    " total=" + TimeUnit.NANOSECONDS.toMillis(totalTime) + "ms" +
+                    " generation=" + TimeUnit.NANOSECONDS.toMillis(generationTime) + "ms\n");
+
+            for (final ShaderGenerationPhase phase : phases) {
+                writer.write(phase.getShortName() + "=" + TimeUnit.NANOSECONDS.toMillis(phaseTimes[phase.ordinal()]) +
+                        "ms\n");
+            }
+        }
+    }
+
+    /**
+     * Gets the message of the exception with messages of its causes.
+     *
+     * @param exception the exception.
+     * @return the message.
+     */
+    private static String toMessage(final Throwable exception) {
+
+        final StringBuilder result = new StringBuilder();
+
+        for (Throwable current = exception; current != null; current = current.getCause()) {
+
+            if (result.length() > 0) {
+                result.append(" <- ");
+            }
+
+            result.append(current.getClass().getSimpleName());
+
+            if (current.getMessage() != null) {
+                result.append(": ").append(current.getMessage().replace('\n', ' '));
+            }
+
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+
+        return result.toString();
+    }
+}
@@ -0,0 +1,378 @@
+package com.jme3.shader.glsl;
+
+/**
+ * The utility class to fold default values of shader node inputs into renamed shader node code. An input can be
+ * folded only if its default value is a literal of the input's type and the main section of the shader node never
+ * writes to the input, so the literal can replace the input everywhere without a temporary variable.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderConstantFolder {
+
+    /**
+     * Gets the literal which can replace the input with the default value.
+     *
+     * @param type         the type of the input.
+     * @param defaultValue the default value of the input.
+     * @return the literal or null if the default value isn't a literal of the type.
+     */
+    public static String toLiteral(final String type, final String defaultValue) {
+
+        final String value = defaultValue.trim();
+
+        if (value.isEmpty()) {
+            return null;
+        }
+
+        switch (type) {
+            case "bool":
+                return "true".equals(value) || "false".equals(value) ? value : null;
+            case "int":
+                return wrapNegative(isNumber(value, 0, value.length(), false) ? value : null);
+            case "float":
+                return wrapNegative(isNumber(value, 0, value.length(), true) ? value : null);
+        }
+
+        final boolean floats;
+
+        if (type.startsWith("vec") || type.startsWith("mat")) {
+            floats = true;
+        } else if (type.startsWith("ivec")) {
+            floats = false;
+        } else {
+            return null;
+        }
+
+        // only constructors of the same type with numeric arguments, e.g. vec4(1.0, 0.0, 0.0, 1.0)
+        if (!value.startsWith(type) || value.charAt(value.length() - 1) != ')') {
+            return null;
+        }
+
+        int i = type.length();
+
+        while (i < value.length() && value.charAt(i) == ' ') {
+            i++;
+        }
+
+        if (i >= value.length() || value.charAt(i) != '(') {
+            return null;
+        }
+
+        final int end = value.length() - 1;
+        int argStart = i + 1;
+
+        for (int j = argStart; j <= end; j++) {
+
+            if (j < end && value.charAt(j) != ',') {
+                continue;
+            }
+
+            int from = argStart;
+            int to = j;
+
+            while (from < to && value.charAt(from) == ' ') from++;
+            while (to > from && value.charAt(to - 1) == ' ') to--;
+
+            if (!isNumber(value, from, to, false) && (!floats || !isNumber(value, from, to, true))) {
+                return null;
+            }
+
+            argStart = j + 1;
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns true if the part of the code can write to the variable. Assignments, increments and decrements are
+     * writes, passing the variable as an argument is a write if the code can have out parameters.
+     *
+     * @param code          the code.
+     * @param start         the start of the part.
+     * @param end           the end of the part.
+     * @param name          the name of the variable.
+     * @param outParameters true if passing the variable as an argument can write to it.
+     * @return true if the variable can be written.
+     */
+    public static boolean isWritten(final CharSequence code, final int start, final int end, final String name,
+                                    final boolean outParameters) {
+
+        for (int i = findNext(code, start, start, end, name); i != -1; i = findNext(code, i, start, end, name)) {
+            if (isWriteBefore(code, start, i - name.length()) || isWriteAfter(code, i, end, outParameters)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the part of the code accesses a component, a member or an element of the variable, e.g.
+     * value.x or value[0]. A literal can't replace such variable textually, because 3.0.x isn't a valid code.
+     *
+     * @param code  the code.
+     * @param start the start of the part.
+     * @param end   the end of the part.
+     * @param name  the name of the variable.
+     * @return true if the variable is accessed by a swizzle, a member access or an index.
+     */
+    public static boolean isAccessed(final CharSequence code, final int start, final int end, final String name) {
+
+        for (int i = findNext(code, start, start, end, name); i != -1; i = findNext(code, i, start, end, name)) {
+
+            final int next = skipWhitespaces(code, i, end);
+
+            if (next < end && (code.charAt(next) == '.' || code.charAt(next) == '[')) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the code has out or inout parameters or calls of built-in functions with out parameters.
+     *
+     * @param code the code.
+     * @return true if the code can have out parameters.
+     */
+    public static boolean hasOutParameters(final CharSequence code) {
+
+        final int length = code.length();
+
+        for (int i = 0; i < length; ) {
+
+            if (!isIdentifierPart(code.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            final int wordStart = i;
+
+            while (i < length && isIdentifierPart(code.charAt(i))) {
+                i++;
+            }
+
+            if (equals(code, wordStart, i, "out") || equals(code, wordStart, i, "inout") ||
+                    equals(code, wordStart, i, "modf") || equals(code, wordStart, i, "frexp")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the next usage of the variable in the part of the code, skipping comments and member accesses of other
+     * variables.
+     *
+     * @return the end of the found usage or -1.
+     */
+    private static int findNext(final CharSequence code, final int from, final int start, final int end,
+                                final String name) {
+
+        for (int i = from; i < end; ) {
+
+            final char ch = code.charAt(i);
+            final char next = i + 1 < end ? code.charAt(i + 1) : 0;
+
+            if (ch == '/' && next == '/') {
+                while (i < end && code.charAt(i) != '\n') i++;
+                continue;
+            } else if (ch == '/' && next == '*') {
+                i += 2;
+                while (i < end && !(code.charAt(i - 1) == '*' && code.charAt(i) == '/')) i++;
+                i++;
+                continue;
+            } else if (!isIdentifierPart(ch)) {
+                i++;
+                continue;
+            }
+
+            final int wordStart = i;
+
+            while (i < end && isIdentifierPart(code.charAt(i))) {
+                i++;
+            }
+
+            if (equals(code, wordStart, i, name) && (wordStart == start || code.charAt(wordStart - 1) != '.')) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isWriteBefore(final CharSequence code, final int start, final int wordStart) {
+
+        int i = wordStart;
+
+        while (i > start && Character.isWhitespace(code.charAt(i - 1))) {
+            i--;
+        }
+
+        if (i - 2 < start) {
+            return false;
+        }
+
+        final char first = code.charAt(i - 2);
+        final char second = code.charAt(i - 1);
+
+        return (first == '+' && second == '+') || (first == '-' && second == '-');
+    }
+
+    private static boolean isWriteAfter(final CharSequence code, final int wordEnd, final int end,
+                                        final boolean outParameters) {
+
+        int i = skipWhitespaces(code, wordEnd, end);
+
+        // skip swizzles and indexes, e.g. value.xy or value[0]
+        while (i < end) {
+
+            final char ch = code.charAt(i);
+
+            if (ch == '.') {
+                i = skipWhitespaces(code, i + 1, end);
+                while (i < end && isIdentifierPart(code.charAt(i))) i++;
+            } else if (ch == '[') {
+                int depth = 0;
+                for (; i < end; i++) {
+                    if (code.charAt(i) == '[') {
+                        depth++;
+                    } else if (code.charAt(i) == ']' && --depth == 0) {
+                        i++;
+                        break;
+                    }
+                }
+            } else {
+                break;
+            }
+
+            i = skipWhitespaces(code, i, end);
+        }
+
+        if (i >= end) {
+            return false;
+        }
+
+        final char ch = code.charAt(i);
+        final char next = i + 1 < end ? code.charAt(i + 1) : 0;
+
+        switch (ch) {
+            case '=':
+                return next != '=';
+            case '+':
+            case '-':
+                return next == ch || next == '=';
+            case '*':
+            case '/':
+            case '%':
+            case '&':
+            case '|':
+            case '^':
+                return next == '=';
+            case '<':
+            case '>':
+                return next == ch && i + 2 < end && code.charAt(i + 2) == '=';
+            case ',':
+            case ')':
+                return outParameters;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isNumber(final CharSequence value, final int start, final int end, final boolean floats) {
+
+        int i = start;
+
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+
+        boolean digits = false;
+        boolean point = false;
+
+        for (; i < end; i++) {
+
+            final char ch = value.charAt(i);
+
+            if (ch >= '0' && ch <= '9') {
+                digits = true;
+            } else if (ch == '.' && floats && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!digits) {
+            return false;
+        }
+
+        if (i < end && floats && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+
+            i++;
+
+            if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                i++;
+            }
+
+            final int exponentStart = i;
+
+            while (i < end && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+                i++;
+            }
+
+            if (i == exponentStart) {
+                return false;
+            }
+
+            point = true;
+        }
+
+        // a float literal needs a point or an exponent to not be an int literal
+        return i == end && point == floats;
+    }
+
+    private static String wrapNegative(final String literal) {
+
+        if (literal == null) {
+            return null;
+        } else if (literal.charAt(0) == '-' || literal.charAt(0) == '+') {
+            return "(" + literal + ")";
+        }
+
+        return literal;
+    }
+
+    private static boolean equals(final CharSequence code, final int start, final int end, final String name) {
+
+        if (end - start != name.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            if (code.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int skipWhitespaces(final CharSequence code, final int start, final int end) {
+
+        int i = start;
+
+        while (i < end && Character.isWhitespace(code.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static boolean isIdentifierPart(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+    }
+}
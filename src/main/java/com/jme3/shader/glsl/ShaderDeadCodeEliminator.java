@@ -0,0 +1,477 @@
+package com.jme3.shader.glsl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The eliminator of dead code of a generated shader. Functions, external fields and definitions of shader sources are
+ * registered as removable declarations, all other code is a root. The eliminator builds the graph of references
+ * between declarations and keeps only declarations which are reachable from roots. References are found by names
+ * of identifiers outside of comments, so the graph is conservative: a declaration is removed only if its name isn't
+ * used anywhere in the live code. Declarations are accepted only if they take whole lines of the source, other
+ * declarations are kept as roots.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderDeadCodeEliminator {
+
+    /**
+     * The removable declaration.
+     */
+    private static class Declaration {
+
+        /**
+         * The source of the declaration.
+         */
+        private final CharSequence source;
+
+        /**
+         * The start of the declaration in the source.
+         */
+        private final int start;
+
+        /**
+         * The end of the declaration in the source.
+         */
+        private final int end;
+
+        /**
+         * True if the declaration is reachable from roots.
+         */
+        private boolean live;
+
+        private Declaration(final CharSequence source, final int start, final int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * The registered sources with their declarations in the order of offsets. Sources are compared by identity,
+     * because different imported sources can have the same text.
+     */
+    private final Map<CharSequence, List<Declaration>> sources;
+
+    /**
+     * The declarations by their names.
+     */
+    private final Map<String, List<Declaration>> declarations;
+
+    /**
+     * The roots of code.
+     */
+    private final List<CharSequence> roots;
+
+    public ShaderDeadCodeEliminator() {
+        this.sources = new IdentityHashMap<>();
+        this.declarations = new HashMap<>();
+        this.roots = new ArrayList<>();
+    }
+
+    /**
+     * Adds the source which contains removable declarations, all code of the source outside of declarations is a
+     * root. The same instance of the source should be used to add its declarations and to append its live parts.
+     *
+     * @param source the source.
+     */
+    public void addSource(final CharSequence source) {
+        if (!sources.containsKey(source)) {
+            sources.put(source, new ArrayList<Declaration>());
+        }
+    }
+
+    /**
+     * Adds the code which is always kept.
+     *
+     * @param root the code.
+     */
+    public void addRoot(final CharSequence root) {
+        roots.add(root);
+    }
+
+    /**
+     * Adds the function definition of the source as a removable declaration.
+     *
+     * @param source the source.
+     * @param start  the start of the function definition.
+     * @param end    the end of the function definition.
+     * @return true if the function definition was added.
+     */
+    public boolean addFunction(final CharSequence source, final int start, final int end) {
+
+        final int first = skipWhitespaces(source, start, end);
+        final int last = skipWhitespacesBack(source, first, end);
+
+        if (first >= last || source.charAt(last - 1) != '}') {
+            return false;
+        }
+
+        // the signature should be "[qualifier] type name(" on one line
+        int words = 0;
+        int nameStart = -1;
+        int nameEnd = -1;
+        int i = first;
+
+        while (i < last) {
+
+            final char ch = source.charAt(i);
+
+            if (ch == '(') {
+                break;
+            } else if (ch == ' ' || ch == '\t') {
+                i++;
+            } else if (isIdentifierStart(ch)) {
+                nameStart = i;
+                i = skipIdentifier(source, i, last);
+                nameEnd = i;
+                words++;
+            } else {
+                return false;
+            }
+        }
+
+        if (i >= last || words < 2 || words > 4) {
+            return false;
+        }
+
+        final String name = source.subSequence(nameStart, nameEnd).toString();
+
+        if ("main".equals(name)) {
+            return false;
+        }
+
+        return addDeclaration(source, name, first, last);
+    }
+
+    /**
+     * Adds the declaration of an external field of the source as a removable declaration.
+     *
+     * @param source the source.
+     * @param name   the name of the field.
+     * @param start  the start of the field declaration.
+     * @param end    the end of the field declaration.
+     * @return true if the field declaration was added.
+     */
+    public boolean addField(final CharSequence source, final String name, final int start, final int end) {
+
+        final int first = skipWhitespaces(source, start, end);
+        final int last = skipWhitespacesBack(source, first, end);
+
+        if (first >= last || source.charAt(last - 1) != ';' || !startsWithWord(source, first, last, "uniform") &&
+                !startsWithWord(source, first, last, "attribute")) {
+            return false;
+        }
+
+        for (int i = first; i < last - 1; i++) {
+            final char ch = source.charAt(i);
+            if (ch == ';' || ch == '\n' || ch == '{' || ch == '#' || ch == '/') {
+                return false;
+            }
+        }
+
+        return addDeclaration(source, name, first, last);
+    }
+
+    /**
+     * Adds the definition of the source as a removable declaration.
+     *
+     * @param source the source.
+     * @param name   the name of the definition.
+     * @param start  the start of the definition.
+     * @param end    the end of the definition.
+     * @return true if the definition was added.
+     */
+    public boolean addDefine(final CharSequence source, final String name, final int start, final int end) {
+
+        final int first = skipWhitespaces(source, start, end);
+        final int last = skipWhitespacesBack(source, first, end);
+
+        if (first >= last || source.charAt(first) != '#') {
+            return false;
+        }
+
+        for (int i = first; i < last; i++) {
+            final char ch = source.charAt(i);
+            if (ch == '\n' || ch == '\\' || ch == '/') {
+                return false;
+            }
+        }
+
+        return addDeclaration(source, name, first, last);
+    }
+
+    /**
+     * Finds all declarations which are reachable from roots.
+     */
+    public void eliminate() {
+
+        final Deque<Declaration> queue = new ArrayDeque<>();
+
+        for (final CharSequence root : roots) {
+            markReferences(root, 0, root.length(), queue);
+        }
+
+        for (final Map.Entry<CharSequence, List<Declaration>> entry : sources.entrySet()) {
+
+            final CharSequence source = entry.getKey();
+
+            int last = 0;
+
+            for (final Declaration declaration : entry.getValue()) {
+                markReferences(source, last, declaration.start, queue);
+                last = declaration.end;
+            }
+
+            markReferences(source, last, source.length(), queue);
+        }
+
+        while (!queue.isEmpty()) {
+            final Declaration declaration = queue.pollFirst();
+            markReferences(declaration.source, declaration.start, declaration.end, queue);
+        }
+    }
+
+    /**
+     * Returns true if the declaration with the name is reachable from roots.
+     *
+     * @param name the name of the declaration.
+     * @return true if the declaration is live or it isn't registered.
+     */
+    public boolean isLive(final String name) {
+
+        final List<Declaration> list = declarations.get(name);
+
+        if (list == null) {
+            return true;
+        }
+
+        for (final Declaration declaration : list) {
+            if (declaration.live) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Appends the part of the source without dead declarations to the builder.
+     *
+     * @param source  the source.
+     * @param start   the start of the part.
+     * @param end     the end of the part.
+     * @param builder the builder.
+     */
+    public void appendLive(final CharSequence source, final int start, final int end, final StringBuilder builder) {
+
+        final List<Declaration> list = sources.get(source);
+
+        if (list == null || list.isEmpty()) {
+            builder.append(source, start, end);
+            return;
+        }
+
+        int last = start;
+
+        for (final Declaration declaration : list) {
+
+            if (declaration.live || declaration.end <= start || declaration.start >= end) {
+                continue;
+            }
+
+            final int from = Math.max(start, declaration.start);
+
+            if (from > last) {
+                builder.append(source, last, from);
+            }
+
+            last = Math.max(last, Math.min(end, declaration.end));
+        }
+
+        if (last < end) {
+            builder.append(source, last, end);
+        }
+    }
+
+    /**
+     * Clears all registered sources, declarations and roots.
+     */
+    public void clear() {
+        sources.clear();
+        declarations.clear();
+        roots.clear();
+    }
+
+    /**
+     * Adds the declaration which takes whole lines of the source.
+     *
+     * @param source the source.
+     * @param name   the name.
+     * @param first  the first char of the declaration.
+     * @param last   the end of the declaration.
+     * @return true if the declaration was added.
+     */
+    private boolean addDeclaration(final CharSequence source, final String name, final int first, final int last) {
+
+        int start = first;
+
+        while (start > 0 && (source.charAt(start - 1) == ' ' || source.charAt(start - 1) == '\t')) {
+            start--;
+        }
+
+        if (start > 0 && source.charAt(start - 1) != '\n') {
+            return false;
+        }
+
+        int end = last;
+
+        while (end < source.length() && (source.charAt(end) == ' ' || source.charAt(end) == '\t' ||
+                source.charAt(end) == '\r')) {
+            end++;
+        }
+
+        if (end < source.length()) {
+            if (source.charAt(end) != '\n') {
+                return false;
+            }
+            end++;
+        }
+
+        List<Declaration> list = sources.get(source);
+
+        if (list == null) {
+            list = new ArrayList<>();
+            sources.put(source, list);
+        }
+
+        // declarations are added in the order of offsets, nested or overlapped declarations are a part of the first
+        if (!list.isEmpty() && list.get(list.size() - 1).end > start) {
+            return false;
+        }
+
+        final Declaration declaration = new Declaration(source, start, end);
+        list.add(declaration);
+
+        List<Declaration> byName = declarations.get(name);
+
+        if (byName == null) {
+            byName = new ArrayList<>(1);
+            declarations.put(name, byName);
+        }
+
+        byName.add(declaration);
+        return true;
+    }
+
+    /**
+     * Marks all declarations which are referenced by identifiers of the part of the code as live.
+     *
+     * @param code  the code.
+     * @param start the start of the part.
+     * @param end   the end of the part.
+     * @param queue the queue of new live declarations.
+     */
+    private void markReferences(final CharSequence code, final int start, final int end,
+                                final Deque<Declaration> queue) {
+
+        for (int i = start; i < end; ) {
+
+            final char ch = code.charAt(i);
+            final char next = i + 1 < end ? code.charAt(i + 1) : 0;
+
+            if (ch == '/' && next == '/') {
+                while (i < end && code.charAt(i) != '\n') i++;
+            } else if (ch == '/' && next == '*') {
+                i += 2;
+                while (i < end && !(code.charAt(i - 1) == '*' && code.charAt(i) == '/')) i++;
+                i++;
+            } else if (ch >= '0' && ch <= '9') {
+                i = skipIdentifier(code, i, end);
+            } else if (isIdentifierStart(ch)) {
+
+                final int wordEnd = skipIdentifier(code, i, end);
+                final List<Declaration> list = declarations.get(code.subSequence(i, wordEnd).toString());
+
+                if (list != null) {
+                    for (final Declaration declaration : list) {
+                        if (!declaration.live) {
+                            declaration.live = true;
+                            queue.add(declaration);
+                        }
+                    }
+                }
+
+                i = wordEnd;
+
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean startsWithWord(final CharSequence source, final int start, final int end,
+                                          final String word) {
+
+        final int wordEnd = start + word.length();
+
+        if (wordEnd >= end) {
+            return false;
+        }
+
+        for (int i = 0; i < word.length(); i++) {
+            if (source.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+
+        final char next = source.charAt(wordEnd);
+        return next == ' ' || next == '\t';
+    }
+
+    private static int skipWhitespaces(final CharSequence source, final int start, final int end) {
+
+        int i = start;
+
+        while (i < end && Character.isWhitespace(source.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipWhitespacesBack(final CharSequence source, final int start, final int end) {
+
+        int i = end;
+
+        while (i > start && Character.isWhitespace(source.charAt(i - 1))) {
+            i--;
+        }
+
+        return i;
+    }
+
+    private static int skipIdentifier(final CharSequence source, final int start, final int end) {
+
+        int i = start + 1;
+
+        while (i < end && isIdentifierPart(source.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static boolean isIdentifierStart(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+    }
+
+    private static boolean isIdentifierPart(final char ch) {
+        return isIdentifierStart(ch) || (ch >= '0' && ch <= '9');
+    }
+}
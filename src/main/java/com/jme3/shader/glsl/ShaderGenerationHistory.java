@@ -0,0 +1,113 @@
+package com.jme3.shader.glsl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The listener which keeps the metrics of the last shader builds to show them as a summary. The summary has one line
+ * per kept build and the average times of all phases of kept builds.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderGenerationHistory implements ShaderGenerationListener {
+
+    private static final ShaderGenerationPhase[] PHASES = ShaderGenerationPhase.values();
+
+    /**
+     * The metrics of the last builds from the oldest to the newest.
+     */
+    private final Deque<ShaderGenerationMetrics> builds;
+
+    /**
+     * The max count of kept builds.
+     */
+    private final int capacity;
+
+    public ShaderGenerationHistory(final int capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity should be positive.");
+        }
+
+        this.builds = new ArrayDeque<>(capacity);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void onBuildFinished(final ShaderGenerationMetrics metrics) {
+        synchronized (builds) {
+
+            if (builds.size() >= capacity) {
+                builds.pollFirst();
+            }
+
+            builds.addLast(metrics);
+        }
+    }
+
+    /**
+     * Gets the metrics of the last builds.
+     *
+     * @return the copy of the list of metrics from the oldest to the newest build.
+     */
+    public List<ShaderGenerationMetrics> getBuilds() {
+        synchronized (builds) {
+            return new ArrayList<>(builds);
+        }
+    }
+
+    /**
+     * Removes all kept builds.
+     */
+    public void clear() {
+        synchronized (builds) {
+            builds.clear();
+        }
+    }
+
+    /**
+     * Builds the summary of the last builds.
+     *
+     * @return the summary.
+     */
+    public String getSummary() {
+
+        final List<ShaderGenerationMetrics> builds = getBuilds();
+        final StringBuilder result = new StringBuilder(builds.size() * 192 + 128)
+                .append("Last ").append(builds.size()).append(" shader builds:\n");
+
+        if (builds.isEmpty()) {
+            return result.toString();
+        }
+
+        final long[] phaseTimes = new long[PHASES.length];
+
+        long totalTime = 0;
+
+        for (final ShaderGenerationMetrics metrics : builds) {
+
+            result.append("  ").append(metrics).append('\n');
+            totalTime += metrics.getTotalTime();
+
+            for (final ShaderGenerationPhase phase : PHASES) {
+                phaseTimes[phase.ordinal()] += metrics.getPhaseTime(phase);
+            }
+        }
+
+        result.append("  average: total=").append(toMicros(totalTime / builds.size())).append("us");
+
+        for (final ShaderGenerationPhase phase : PHASES) {
+            result.append(' ').append(phase.getShortName()).append('=')
+                    .append(toMicros(phaseTimes[phase.ordinal()] / builds.size())).append("us");
+        }
+
+        return result.append('\n').toString();
+    }
+
+    private static long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,17 @@
+package com.jme3.shader.glsl;
+
+/**
+ * The listener of finished shader builds of {@link AstShaderGenerator}. The listener is notified on the thread which
+ * has generated the shader, so an implementation should be thread-safe and fast.
+ *
+ * @author JavaSaBr
+ */
+public interface ShaderGenerationListener {
+
+    /**
+     * Notifies about the finished build of a shader.
+     *
+     * @param metrics the metrics of the build.
+     */
+    void onBuildFinished(ShaderGenerationMetrics metrics);
+}
@@ -0,0 +1,245 @@
+package com.jme3.shader.glsl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The metrics of one build of a shader: times and calls of generation phases, hits and misses of the AST cache,
+ * parsed chars and renamed identifiers. A build starts when the generation context of a technique definition is
+ * created or the previous build of the context is finished and ends when the shader is generated. Counters can be
+ * updated from parsing and stage threads at the same time.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderGenerationMetrics {
+
+    private static final int AST_CACHE_HITS = 0;
+    private static final int AST_CACHE_MISSES = 1;
+    private static final int PARSED_CHARS = 2;
+    private static final int RENAMED_IDENTIFIERS = 3;
+    private static final int COUNTER_COUNT = 4;
+
+    private static final ShaderGenerationPhase[] PHASES = ShaderGenerationPhase.values();
+
+    /**
+     * The name of the technique definition.
+     */
+    private final String techniqueName;
+
+    /**
+     * The times of phases in nanoseconds.
+     */
+    private final AtomicLongArray phaseTimes;
+
+    /**
+     * The counts of calls of phases.
+     */
+    private final AtomicLongArray phaseCalls;
+
+    /**
+     * The counters.
+     */
+    private final AtomicLongArray counters;
+
+    /**
+     * The start time of the build in nanoseconds.
+     */
+    private final long startTime;
+
+    /**
+     * The total time of the build in nanoseconds.
+     */
+    private volatile long totalTime;
+
+    /**
+     * True if the shader was taken from the cache of generated shaders.
+     */
+    private volatile boolean shaderCacheHit;
+
+    public ShaderGenerationMetrics(final String techniqueName) {
+        this.techniqueName = techniqueName;
+        this.phaseTimes = new AtomicLongArray(PHASES.length);
+        this.phaseCalls = new AtomicLongArray(PHASES.length);
+        this.counters = new AtomicLongArray(COUNTER_COUNT);
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Gets the name of the technique definition.
+     *
+     * @return the name of the technique definition.
+     */
+    public String getTechniqueName() {
+        return techniqueName;
+    }
+
+    /**
+     * Adds the time of one call of the phase.
+     *
+     * @param phase the phase.
+     * @param time  the time in nanoseconds.
+     */
+    public void addPhaseTime(final ShaderGenerationPhase phase, final long time) {
+        phaseTimes.addAndGet(phase.ordinal(), time);
+        phaseCalls.incrementAndGet(phase.ordinal());
+    }
+
+    /**
+     * Gets the time of the phase.
+     *
+     * @param phase the phase.
+     * @return the time in nanoseconds.
+     */
+    public long getPhaseTime(final ShaderGenerationPhase phase) {
+        return phaseTimes.get(phase.ordinal());
+    }
+
+    /**
+     * Gets the count of calls of the phase.
+     *
+     * @param phase the phase.
+     * @return the count of calls.
+     */
+    public long getPhaseCalls(final ShaderGenerationPhase phase) {
+        return phaseCalls.get(phase.ordinal());
+    }
+
+    /**
+     * Increments the count of hits of the AST cache.
+     */
+    public void addAstCacheHit() {
+        counters.incrementAndGet(AST_CACHE_HITS);
+    }
+
+    /**
+     * Gets the count of hits of the AST cache.
+     *
+     * @return the count of hits.
+     */
+    public long getAstCacheHits() {
+        return counters.get(AST_CACHE_HITS);
+    }
+
+    /**
+     * Increments the count of misses of the AST cache.
+     */
+    public void addAstCacheMiss() {
+        counters.incrementAndGet(AST_CACHE_MISSES);
+    }
+
+    /**
+     * Gets the count of misses of the AST cache.
+     *
+     * @return the count of misses.
+     */
+    public long getAstCacheMisses() {
+        return counters.get(AST_CACHE_MISSES);
+    }
+
+    /**
+     * Adds the count of parsed chars.
+     *
+     * @param chars the count of parsed chars.
+     */
+    public void addParsedChars(final long chars) {
+        counters.addAndGet(PARSED_CHARS, chars);
+    }
+
+    /**
+     * Gets the count of chars of parsed shader sources.
+     *
+     * @return the count of parsed chars.
+     */
+    public long getParsedChars() {
+        return counters.get(PARSED_CHARS);
+    }
+
+    /**
+     * Adds the count of renamed identifiers.
+     *
+     * @param identifiers the count of renamed identifiers.
+     */
+    public void addRenamedIdentifiers(final long identifiers) {
+        counters.addAndGet(RENAMED_IDENTIFIERS, identifiers);
+    }
+
+    /**
+     * Gets the count of renamed identifiers of shader node sources.
+     *
+     * @return the count of renamed identifiers.
+     */
+    public long getRenamedIdentifiers() {
+        return counters.get(RENAMED_IDENTIFIERS);
+    }
+
+    /**
+     * Returns true if the shader was taken from the cache of generated shaders.
+     *
+     * @return true if the shader was taken from the cache.
+     */
+    public boolean isShaderCacheHit() {
+        return shaderCacheHit;
+    }
+
+    /**
+     * Sets true if the shader was taken from the cache of generated shaders.
+     *
+     * @param shaderCacheHit true if the shader was taken from the cache.
+     */
+    public void setShaderCacheHit(final boolean shaderCacheHit) {
+        this.shaderCacheHit = shaderCacheHit;
+    }
+
+    /**
+     * Finishes the build and fixes its total time.
+     */
+    public void finish() {
+        totalTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Gets the total time of the build.
+     *
+     * @return the total time in nanoseconds or 0 if the build isn't finished.
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder result = new StringBuilder(192)
+                .append(techniqueName).append(": total=").append(toMicros(totalTime)).append("us");
+
+        if (shaderCacheHit) {
+            result.append(" (cached)");
+        }
+
+        for (final ShaderGenerationPhase phase : PHASES) {
+
+            final long calls = getPhaseCalls(phase);
+
+            if (calls == 0) {
+                continue;
+            }
+
+            result.append(' ').append(phase.getShortName()).append('=')
+                    .append(toMicros(getPhaseTime(phase))).append("us");
+
+            if (calls > 1) {
+                result.append('/').append(calls);
+            }
+        }
+
+        return result.append(" astHits=").append(getAstCacheHits())
+                .append(" astMisses=").append(getAstCacheMisses())
+                .append(" parsedChars=").append(getParsedChars())
+                .append(" renamed=").append(getRenamedIdentifiers())
+                .toString();
+    }
+
+    private static long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
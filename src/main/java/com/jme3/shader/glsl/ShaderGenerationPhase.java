@@ -0,0 +1,59 @@
+package com.jme3.shader.glsl;
+
+/**
+ * The instrumented phases of shader generation. Phases can be nested: parsing of shader sources is a part of preparing
+ * shader node sources and generating of imports, all generating phases are parts of building a shader stage, so times
+ * of phases are inclusive and can't be summed.
+ *
+ * @author JavaSaBr
+ */
+public enum ShaderGenerationPhase {
+
+    /**
+     * Loading and parsing of all shader node sources of a technique definition.
+     */
+    PREPARE_SHADER_NODE_SOURCES("prepareSources"),
+
+    /**
+     * Loading and parsing of one shader source, parsing on other threads is summed.
+     */
+    PARSE_SHADER_SOURCE("parseSource"),
+
+    /**
+     * Generating of imported code of a stage.
+     */
+    GENERATE_IMPORTS("imports"),
+
+    /**
+     * Generating of declarations and main sections of shader nodes of a stage.
+     */
+    GENERATE_DECLARATION_AND_MAIN_BODY("mainBody"),
+
+    /**
+     * Generating of methods of shader nodes of a stage.
+     */
+    GENERATE_METHODS("methods"),
+
+    /**
+     * Building of a whole shader stage.
+     */
+    BUILD_SHADER("buildShader");
+
+    /**
+     * The short name of the phase.
+     */
+    private final String shortName;
+
+    ShaderGenerationPhase(final String shortName) {
+        this.shortName = shortName;
+    }
+
+    /**
+     * Gets the short name of the phase.
+     *
+     * @return the short name of the phase.
+     */
+    public String getShortName() {
+        return shortName;
+    }
+}
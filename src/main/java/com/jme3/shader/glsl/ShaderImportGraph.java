@@ -0,0 +1,214 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.preprocessor.ImportPreprocessorAstNode;
+import com.jme3.shader.glsl.parser.ast.value.StringValueAstNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The graph of imported shader sources. The graph resolves all imports of root shader sources including imports of
+ * imported sources, orders them so every source goes after the sources it imports and keeps every source only once.
+ * Resolved imports are cached by the list of root imports and are resolved again only if some of imported sources
+ * isn't actual anymore, so a cached resolution is checked without loading of imported sources.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderImportGraph {
+
+    /**
+     * The loader of parsed shader sources.
+     */
+    public interface SourceLoader {
+
+        /**
+         * Loads the parsed shader source by the path.
+         *
+         * @param path the path to the shader source.
+         * @return the parsed shader source.
+         */
+        FileDeclarationAstNode load(String path);
+
+        /**
+         * Returns true if the loaded shader source is still actual, e.g. it's still cached by the path.
+         *
+         * @param path   the path to the shader source.
+         * @param source the loaded shader source.
+         * @return true if the shader source wasn't changed after loading.
+         */
+        boolean isActual(String path, FileDeclarationAstNode source);
+    }
+
+    /**
+     * The resolved imports of root imports.
+     */
+    private static class Resolution {
+
+        /**
+         * The paths of imported sources in the import order.
+         */
+        private final List<String> paths;
+
+        /**
+         * The imported sources in the import order.
+         */
+        private final List<FileDeclarationAstNode> sources;
+
+        private Resolution(final List<String> paths, final List<FileDeclarationAstNode> sources) {
+            this.paths = paths;
+            this.sources = sources;
+        }
+    }
+
+    private static final int MAX_RESOLUTIONS = 256;
+
+    /**
+     * The cache of resolved imports by root imports.
+     */
+    private final Map<List<String>, Resolution> resolutions;
+
+    public ShaderImportGraph() {
+        this.resolutions = new LinkedHashMap<List<String>, Resolution>(16, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<String>, Resolution> eldest) {
+                return size() > MAX_RESOLUTIONS;
+            }
+        };
+    }
+
+    /**
+     * Resolves all imported shader sources of the root imports.
+     *
+     * @param rootPaths the paths of root imports.
+     * @param loader    the loader of shader sources.
+     * @return the unmodifiable list of imported sources in the import order.
+     */
+    public List<FileDeclarationAstNode> resolve(final List<String> rootPaths, final SourceLoader loader) {
+
+        final Resolution cached;
+
+        synchronized (resolutions) {
+            cached = resolutions.get(rootPaths);
+        }
+
+        if (cached != null && isActual(cached, loader)) {
+            return cached.sources;
+        }
+
+        final List<String> paths = new ArrayList<>();
+        final List<FileDeclarationAstNode> sources = new ArrayList<>();
+        final Set<String> visiting = new LinkedHashSet<>();
+        final Set<String> visited = new HashSet<>();
+
+        for (final String path : rootPaths) {
+            visit(path, loader, visiting, visited, paths, sources);
+        }
+
+        final Resolution resolution = new Resolution(paths, Collections.unmodifiableList(sources));
+
+        synchronized (resolutions) {
+            resolutions.put(new ArrayList<>(rootPaths), resolution);
+        }
+
+        return resolution.sources;
+    }
+
+    /**
+     * Removes all cached resolutions.
+     */
+    public void clear() {
+        synchronized (resolutions) {
+            resolutions.clear();
+        }
+    }
+
+    /**
+     * Visits the imported source and all its imports in the depth.
+     *
+     * @param path     the path to the imported source.
+     * @param loader   the loader of shader sources.
+     * @param visiting the paths of currently visiting sources.
+     * @param visited  the paths of visited sources.
+     * @param paths    the result paths.
+     * @param sources  the result sources.
+     */
+    private void visit(final String path, final SourceLoader loader, final Set<String> visiting,
+                       final Set<String> visited, final List<String> paths,
+                       final List<FileDeclarationAstNode> sources) {
+
+        if (visited.contains(path)) {
+            return;
+        } else if (!visiting.add(path)) {
+            throw new RuntimeException("Found cyclic imports: " + visiting + " -> " + path);
+        }
+
+        final FileDeclarationAstNode source = loader.load(path);
+
+        for (final String importPath : getImports(source)) {
+            visit(importPath, loader, visiting, visited, paths, sources);
+        }
+
+        visiting.remove(path);
+        visited.add(path);
+
+        paths.add(path);
+        sources.add(source);
+    }
+
+    /**
+     * Checks that all sources of the resolution are still actual.
+     *
+     * @param resolution the resolution.
+     * @param loader     the loader of shader sources.
+     * @return true if all sources weren't changed.
+     */
+    private boolean isActual(final Resolution resolution, final SourceLoader loader) {
+
+        final List<String> paths = resolution.paths;
+        final List<FileDeclarationAstNode> sources = resolution.sources;
+
+        for (int i = 0; i < paths.size(); i++) {
+            if (!loader.isActual(paths.get(i), sources.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the paths of all imports of the shader source.
+     *
+     * @param source the shader source.
+     * @return the list of import paths.
+     */
+    public static List<String> getImports(final FileDeclarationAstNode source) {
+
+        final List<ImportPreprocessorAstNode> importNodes = source.getNodesByType(ImportPreprocessorAstNode.class);
+
+        if (importNodes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<String> result = new ArrayList<>(importNodes.size());
+
+        for (final ImportPreprocessorAstNode importNode : importNodes) {
+
+            final StringValueAstNode value = importNode.getValue();
+
+            if (value != null && !result.contains(value.getValue())) {
+                result.add(value.getValue());
+            }
+        }
+
+        return result;
+    }
+}
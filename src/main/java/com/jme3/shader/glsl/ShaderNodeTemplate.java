@@ -0,0 +1,198 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled code of a shader node. The template keeps renamed parts of the shader node source which depend only on
+ * the source, the name of the shader node and its mappings, so they can be reused by next generations of shaders
+ * while the shader node isn't changed. All parts are built on the first generation.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderNodeTemplate {
+
+    /**
+     * The parsed shader node source.
+     */
+    private final FileDeclarationAstNode source;
+
+    /**
+     * The renamed header code.
+     */
+    private volatile String header;
+
+    /**
+     * The renamed code of not main methods.
+     */
+    private volatile String methods;
+
+    /**
+     * The ranges of not main methods in the renamed code of not main methods.
+     */
+    private volatile int[] methodBounds;
+
+    /**
+     * The renamed body of the main method.
+     */
+    private volatile String mainBody;
+
+    /**
+     * The literals of folded inputs of the main section by their names.
+     */
+    private volatile Map<String, String> foldedInputs;
+
+    /**
+     * The list of variable definitions used in the shader node source.
+     */
+    private volatile List<String> variableDefinitions;
+
+    /**
+     * True if the shader node source has the main method.
+     */
+    private volatile boolean hasMainMethod;
+
+    public ShaderNodeTemplate(final FileDeclarationAstNode source) {
+        this.source = source;
+    }
+
+    /**
+     * Gets the parsed shader node source.
+     *
+     * @return the parsed shader node source.
+     */
+    public FileDeclarationAstNode getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the renamed header code.
+     *
+     * @return the renamed header code or null if it isn't built yet.
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Sets the renamed header code.
+     *
+     * @param header the renamed header code.
+     */
+    public void setHeader(final String header) {
+        this.header = header;
+    }
+
+    /**
+     * Gets the renamed code of not main methods.
+     *
+     * @return the renamed code of not main methods or null if it isn't built yet.
+     */
+    public String getMethods() {
+        return methods;
+    }
+
+    /**
+     * Sets the renamed code of not main methods.
+     *
+     * @param methods the renamed code of not main methods.
+     */
+    public void setMethods(final String methods) {
+        this.methods = methods;
+    }
+
+    /**
+     * Gets the ranges of not main methods in the renamed code of not main methods.
+     *
+     * @return the ranges as pairs of the start and the end or null if they aren't built yet.
+     */
+    public int[] getMethodBounds() {
+        return methodBounds;
+    }
+
+    /**
+     * Sets the ranges of not main methods in the renamed code of not main methods.
+     *
+     * @param methodBounds the ranges as pairs of the start and the end.
+     */
+    public void setMethodBounds(final int[] methodBounds) {
+        this.methodBounds = methodBounds;
+    }
+
+    /**
+     * Gets the renamed body of the main method.
+     *
+     * @return the renamed body of the main method or null if it isn't built yet.
+     */
+    public String getMainBody() {
+        return mainBody;
+    }
+
+    /**
+     * Sets the renamed body of the main method.
+     *
+     * @param mainBody the renamed body of the main method.
+     */
+    public void setMainBody(final String mainBody) {
+        this.mainBody = mainBody;
+    }
+
+    /**
+     * Gets the literals of folded inputs which were substituted into the renamed body of the main method.
+     *
+     * @return the literals of folded inputs by their names or null.
+     */
+    public Map<String, String> getFoldedInputs() {
+        return foldedInputs;
+    }
+
+    /**
+     * Sets the literals of folded inputs which were substituted into the renamed body of the main method.
+     *
+     * @param foldedInputs the literals of folded inputs by their names.
+     */
+    public void setFoldedInputs(final Map<String, String> foldedInputs) {
+        this.foldedInputs = Collections.unmodifiableMap(foldedInputs);
+    }
+
+    /**
+     * Returns true if the main section of this template is already built.
+     *
+     * @return true if the main section of this template is already built.
+     */
+    public boolean isPrepared() {
+        return variableDefinitions != null;
+    }
+
+    /**
+     * Gets the list of variable definitions used in the shader node source.
+     *
+     * @return the list of variable definitions or null if it isn't built yet.
+     */
+    public List<String> getVariableDefinitions() {
+        return variableDefinitions;
+    }
+
+    /**
+     * Returns true if the shader node source has the main method.
+     *
+     * @return true if the shader node source has the main method.
+     */
+    public boolean hasMainMethod() {
+        return hasMainMethod;
+    }
+
+    /**
+     * Finishes building the main section of this template.
+     *
+     * @param variableDefinitions the list of variable definitions used in the shader node source.
+     * @param hasMainMethod       true if the shader node source has the main method.
+     */
+    public void prepare(final List<String> variableDefinitions, final boolean hasMainMethod) {
+        this.hasMainMethod = hasMainMethod;
+        this.variableDefinitions = Collections.unmodifiableList(variableDefinitions);
+    }
+}
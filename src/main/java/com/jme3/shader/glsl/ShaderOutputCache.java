@@ -0,0 +1,245 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.shader.Shader;
+import com.jme3.shader.Shader.ShaderType;
+import com.jme3.shader.UniformBinding;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.util.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The thread-safe cache of generated shaders. The cache is keyed by the fingerprint of all inputs of a generation and
+ * keeps only sources of generated shaders, so every hit returns a new shader object. The cache is limited by the count
+ * of shaders and removes the least recently used shaders first.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderOutputCache {
+
+    /**
+     * The generated shader.
+     */
+    public static class CachedShader {
+
+        /**
+         * The types of shader sources.
+         */
+        private final ShaderType[] types;
+
+        /**
+         * The names of shader sources.
+         */
+        private final String[] names;
+
+        /**
+         * The shader sources.
+         */
+        private final String[] sources;
+
+        /**
+         * The defines of shader sources.
+         */
+        private final String[] defines;
+
+        /**
+         * The languages of shader sources.
+         */
+        private final String[] languages;
+
+        /**
+         * The additional uniform bindings.
+         */
+        private final List<UniformBinding> bindings;
+
+        /**
+         * The parsed shader node sources which were used to generate the shader.
+         */
+        private final List<FileDeclarationAstNode> nodeSources;
+
+        /**
+         * The parsed imported sources which were used to generate the shader.
+         */
+        private final List<FileDeclarationAstNode> importedSources;
+
+        public CachedShader(final Shader shader, final List<UniformBinding> bindings,
+                     final List<FileDeclarationAstNode> nodeSources,
+                     final List<FileDeclarationAstNode> importedSources) {
+
+            final List<Shader.ShaderSource> shaderSources = new ArrayList<>(shader.getSources());
+            final int count = shaderSources.size();
+
+            this.types = new ShaderType[count];
+            this.names = new String[count];
+            this.sources = new String[count];
+            this.defines = new String[count];
+            this.languages = new String[count];
+
+            for (int i = 0; i < count; i++) {
+                final Shader.ShaderSource source = shaderSources.get(i);
+                types[i] = source.getType();
+                names[i] = source.getName();
+                sources[i] = source.getSource();
+                defines[i] = source.getDefines();
+                languages[i] = source.getLanguage();
+            }
+
+            this.bindings = Collections.unmodifiableList(new ArrayList<>(bindings));
+            this.nodeSources = Collections.unmodifiableList(new ArrayList<>(nodeSources));
+            this.importedSources = Collections.unmodifiableList(new ArrayList<>(importedSources));
+        }
+
+        /**
+         * Creates a new shader with the cached sources and bindings.
+         *
+         * @return the new shader.
+         */
+        public Shader toShader() {
+
+            final Shader shader = new Shader();
+
+            for (int i = 0; i < types.length; i++) {
+                shader.addSource(types[i], names[i], sources[i], defines[i], languages[i]);
+            }
+
+            for (final UniformBinding binding : bindings) {
+                shader.addUniformBinding(binding);
+            }
+
+            return shader;
+        }
+
+        /**
+         * Gets the parsed shader node sources which were used to generate the shader.
+         *
+         * @return the parsed shader node sources.
+         */
+        public List<FileDeclarationAstNode> getNodeSources() {
+            return nodeSources;
+        }
+
+        /**
+         * Gets the parsed imported sources which were used to generate the shader.
+         *
+         * @return the parsed imported sources.
+         */
+        public List<FileDeclarationAstNode> getImportedSources() {
+            return importedSources;
+        }
+    }
+
+    /**
+     * The cached shaders in the access order.
+     */
+    private final LinkedHashMap<String, CachedShader> entries;
+
+    /**
+     * The max count of cached shaders.
+     */
+    private final int maxSize;
+
+    /**
+     * The count of found shaders.
+     */
+    private long hits;
+
+    /**
+     * The count of not found shaders.
+     */
+    private long misses;
+
+    public ShaderOutputCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, CachedShader>(16, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedShader> eldest) {
+                return size() > ShaderOutputCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the generated shader by the key if it's still actual. The validator is called outside of the lock of this
+     * cache, so it can load shader sources.
+     *
+     * @param key       the key of the generation.
+     * @param validator the validator of the found shader.
+     * @return the generated shader or null.
+     */
+    public CachedShader get(final String key, final Predicate<CachedShader> validator) {
+
+        final CachedShader entry;
+
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        final boolean actual = entry != null && validator.test(entry);
+
+        synchronized (this) {
+
+            if (actual) {
+                hits++;
+                return entry;
+            }
+
+            if (entry != null && entries.get(key) == entry) {
+                entries.remove(key);
+            }
+
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Puts the generated shader to this cache.
+     *
+     * @param key   the key of the generation.
+     * @param entry the generated shader.
+     */
+    public synchronized void put(final String key, final CachedShader entry) {
+        if (maxSize > 0) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes all generated shaders from this cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the count of cached shaders.
+     *
+     * @return the count of cached shaders.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the count of found shaders.
+     *
+     * @return the count of found shaders.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the count of not found shaders.
+     *
+     * @return the count of not found shaders.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,434 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.shader.glsl.parser.GlslIdentifierTable;
+import com.jme3.shader.glsl.parser.ast.util.CharPredicate;
+
+/**
+ * The renamer of identifiers in shader source code. The renamer keeps the set of rename rules and applies all of them
+ * to the source code in one scan. Every identifier of the source code is looked up in the hash table of rules, the
+ * first added rule with the same name which accepts the previous and the next chars of the identifier is applied.
+ * If the source code has a table of identifiers, the renamer splices only recorded identifiers and checks their kinds
+ * instead of the previous and the next chars.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderSourceRenamer {
+
+    /**
+     * The rule can be applied to identifiers of any kind.
+     */
+    public static final int ANY_KIND = -1;
+
+    /**
+     * The rename rule.
+     */
+    private static class Rule {
+
+        /**
+         * The old name.
+         */
+        private final String oldName;
+
+        /**
+         * The new name.
+         */
+        private final String newName;
+
+        /**
+         * The checker of a previous char.
+         */
+        private final CharPredicate prevCharChecker;
+
+        /**
+         * The checker of a next char.
+         */
+        private final CharPredicate nextCharChecker;
+
+        /**
+         * The kind of identifiers.
+         */
+        private final int kind;
+
+        /**
+         * The hash of the old name.
+         */
+        private final int hash;
+
+        /**
+         * The next rule in the same bucket.
+         */
+        private Rule next;
+
+        private Rule(final String oldName, final String newName, final CharPredicate prevCharChecker,
+                     final CharPredicate nextCharChecker, final int kind) {
+            this.oldName = oldName;
+            this.newName = newName;
+            this.prevCharChecker = prevCharChecker;
+            this.nextCharChecker = nextCharChecker;
+            this.kind = kind;
+            this.hash = oldName.hashCode();
+        }
+
+        /**
+         * Checks that the name of this rule is the same as the identifier.
+         *
+         * @param source the source code.
+         * @param start  the start of the identifier.
+         * @param end    the end of the identifier.
+         * @param hash   the hash of the identifier.
+         * @return true if the name is the same.
+         */
+        private boolean isSameName(final CharSequence source, final int start, final int end, final int hash) {
+
+            if (this.hash != hash || oldName.length() != end - start) {
+                return false;
+            }
+
+            for (int i = start, j = 0; i < end; i++, j++) {
+                if (source.charAt(i) != oldName.charAt(j)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Checks that this rule can be applied to the identifier.
+         *
+         * @param source   the source code.
+         * @param start    the start of the identifier.
+         * @param end      the end of the identifier.
+         * @param hash     the hash of the identifier.
+         * @param prevChar the previous char.
+         * @param nextChar the next char.
+         * @return true if this rule can be applied.
+         */
+        private boolean isApplicable(final CharSequence source, final int start, final int end, final int hash,
+                                     final char prevChar, final char nextChar) {
+            return isSameName(source, start, end, hash) && prevCharChecker.test(prevChar) &&
+                    nextCharChecker.test(nextChar);
+        }
+
+        /**
+         * Checks that this rule can be applied to the recorded identifier.
+         *
+         * @param source the source code.
+         * @param start  the start of the identifier.
+         * @param end    the end of the identifier.
+         * @param hash   the hash of the identifier.
+         * @param kind   the kind of the identifier.
+         * @return true if this rule can be applied.
+         */
+        private boolean isApplicable(final CharSequence source, final int start, final int end, final int hash,
+                                     final int kind) {
+            return (this.kind == ANY_KIND || this.kind == kind) && isSameName(source, start, end, hash);
+        }
+    }
+
+    /**
+     * The buckets of rules.
+     */
+    private Rule[] buckets;
+
+    /**
+     * The count of rules.
+     */
+    private int size;
+
+    /**
+     * The min length of old names.
+     */
+    private int minLength;
+
+    /**
+     * The max length of old names.
+     */
+    private int maxLength;
+
+    /**
+     * The count of renamed identifiers since creating of this renamer.
+     */
+    private long renamedCount;
+
+    public ShaderSourceRenamer() {
+        this.buckets = new Rule[16];
+        this.minLength = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Adds the new rename rule. If the same old name was already added, the new rule is applied only to identifiers
+     * which aren't accepted by the previous rules.
+     *
+     * @param oldName         the old name.
+     * @param newName         the new name.
+     * @param prevCharChecker the checker of a previous char.
+     * @param nextCharChecker the checker of a next char.
+     */
+    public void add(final String oldName, final String newName, final CharPredicate prevCharChecker,
+                    final CharPredicate nextCharChecker) {
+        add(oldName, newName, prevCharChecker, nextCharChecker, ANY_KIND);
+    }
+
+    /**
+     * Adds the new rename rule which is applied only to recorded identifiers of the kind. If the same old name was
+     * already added, the new rule is applied only to identifiers which aren't accepted by the previous rules.
+     *
+     * @param oldName         the old name.
+     * @param newName         the new name.
+     * @param prevCharChecker the checker of a previous char.
+     * @param nextCharChecker the checker of a next char.
+     * @param kind            the kind of identifiers from {@link GlslIdentifierTable} or {@link #ANY_KIND}.
+     */
+    public void add(final String oldName, final String newName, final CharPredicate prevCharChecker,
+                    final CharPredicate nextCharChecker, final int kind) {
+
+        if (oldName.isEmpty()) {
+            throw new IllegalArgumentException("The old name can't be empty.");
+        }
+
+        if (size >= buckets.length * 3 / 4) {
+            resize();
+        }
+
+        append(buckets, new Rule(oldName, newName, prevCharChecker, nextCharChecker, kind));
+
+        minLength = Math.min(minLength, oldName.length());
+        maxLength = Math.max(maxLength, oldName.length());
+        size++;
+    }
+
+    /**
+     * Removes all rename rules.
+     */
+    public void clear() {
+
+        if (size == 0) {
+            return;
+        }
+
+        final Rule[] buckets = this.buckets;
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = null;
+        }
+
+        size = 0;
+        minLength = Integer.MAX_VALUE;
+        maxLength = 0;
+    }
+
+    /**
+     * Returns true if this renamer doesn't have any rules.
+     *
+     * @return true if this renamer doesn't have any rules.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the count of renamed identifiers since creating of this renamer, removing of rules doesn't reset it.
+     *
+     * @return the count of renamed identifiers.
+     */
+    public long getRenamedCount() {
+        return renamedCount;
+    }
+
+    /**
+     * Renames all identifiers of the source code.
+     *
+     * @param source the source code.
+     * @return the renamed source code.
+     */
+    public String rename(final String source) {
+
+        if (size == 0) {
+            return source;
+        }
+
+        return rename(source, new StringBuilder(source.length() + 64)).toString();
+    }
+
+    /**
+     * Renames all identifiers of the source code and appends the result to the builder.
+     *
+     * @param source the source code.
+     * @param result the result builder.
+     * @return the result builder.
+     */
+    public StringBuilder rename(final CharSequence source, final StringBuilder result) {
+        return rename(source, 0, source.length(), null, result);
+    }
+
+    /**
+     * Renames all identifiers of the part of the source code and appends the result to the builder.
+     *
+     * @param source      the source code.
+     * @param start       the start of the part.
+     * @param end         the end of the part.
+     * @param identifiers the table of identifiers of the source code or null.
+     * @param result      the result builder.
+     * @return the result builder.
+     */
+    public StringBuilder rename(final CharSequence source, final int start, final int end,
+                                final GlslIdentifierTable identifiers, final StringBuilder result) {
+
+        if (size == 0) {
+            return result.append(source, start, end);
+        } else if (identifiers != null) {
+            return splice(source, start, end, identifiers, result);
+        }
+
+        int copied = start;
+
+        for (int i = start; i < end; ) {
+
+            char ch = source.charAt(i);
+
+            if (!isIdentifierChar(ch)) {
+                i++;
+                continue;
+            }
+
+            final int first = i;
+            int hash = 0;
+
+            do {
+                hash = 31 * hash + ch;
+                i++;
+            } while (i < end && isIdentifierChar(ch = source.charAt(i)));
+
+            final int nameLength = i - first;
+
+            if (nameLength < minLength || nameLength > maxLength) {
+                continue;
+            }
+
+            final char prevChar = first > start ? source.charAt(first - 1) : ' ';
+            final char nextChar = i < end ? source.charAt(i) : ' ';
+
+            for (Rule rule = buckets[hash & (buckets.length - 1)]; rule != null; rule = rule.next) {
+
+                if (!rule.isApplicable(source, first, i, hash, prevChar, nextChar)) {
+                    continue;
+                }
+
+                result.append(source, copied, first);
+                result.append(rule.newName);
+                renamedCount++;
+                copied = i;
+                break;
+            }
+        }
+
+        return result.append(source, copied, end);
+    }
+
+    /**
+     * Renames recorded identifiers of the part of the source code and appends the result to the builder.
+     *
+     * @param source      the source code.
+     * @param start       the start of the part.
+     * @param end         the end of the part.
+     * @param identifiers the table of identifiers of the source code.
+     * @param result      the result builder.
+     * @return the result builder.
+     */
+    private StringBuilder splice(final CharSequence source, final int start, final int end,
+                                 final GlslIdentifierTable identifiers, final StringBuilder result) {
+
+        int copied = start;
+
+        for (int index = identifiers.indexOf(start), count = identifiers.size(); index < count; index++) {
+
+            final int first = identifiers.getOffset(index);
+            final int nameLength = identifiers.getLength(index);
+            final int last = first + nameLength;
+
+            if (last > end) {
+                break;
+            } else if (nameLength < minLength || nameLength > maxLength) {
+                continue;
+            }
+
+            int hash = 0;
+
+            for (int i = first; i < last; i++) {
+                hash = 31 * hash + source.charAt(i);
+            }
+
+            final int kind = identifiers.getKind(index);
+
+            for (Rule rule = buckets[hash & (buckets.length - 1)]; rule != null; rule = rule.next) {
+
+                if (!rule.isApplicable(source, first, last, hash, kind)) {
+                    continue;
+                }
+
+                result.append(source, copied, first);
+                result.append(rule.newName);
+                renamedCount++;
+                copied = last;
+                break;
+            }
+        }
+
+        return result.append(source, copied, end);
+    }
+
+    /**
+     * Doubles the count of buckets.
+     */
+    private void resize() {
+
+        final Rule[] prevBuckets = this.buckets;
+        final Rule[] newBuckets = new Rule[prevBuckets.length * 2];
+
+        for (Rule rule : prevBuckets) {
+            while (rule != null) {
+                final Rule next = rule.next;
+                rule.next = null;
+                append(newBuckets, rule);
+                rule = next;
+            }
+        }
+
+        this.buckets = newBuckets;
+    }
+
+    /**
+     * Appends the rule to the end of its bucket to keep the order of adding.
+     *
+     * @param buckets the buckets.
+     * @param rule    the rule.
+     */
+    private static void append(final Rule[] buckets, final Rule rule) {
+
+        final int index = rule.hash & (buckets.length - 1);
+
+        Rule last = buckets[index];
+
+        if (last == null) {
+            buckets[index] = rule;
+            return;
+        }
+
+        while (last.next != null) {
+            last = last.next;
+        }
+
+        last.next = rule;
+    }
+
+    /**
+     * Checks that the char can be a part of an identifier.
+     *
+     * @param ch the char.
+     * @return true if the char can be a part of an identifier.
+     */
+    private static boolean isIdentifierChar(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+    }
+}
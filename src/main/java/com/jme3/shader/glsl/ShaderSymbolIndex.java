@@ -0,0 +1,210 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.material.ShaderGenerationInfo;
+import com.jme3.shader.ShaderNode;
+import com.jme3.shader.ShaderNodeVariable;
+import com.jme3.shader.VariableMapping;
+import com.jme3.shader.glsl.parser.ast.NameAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.ExternalFieldDeclarationAstNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The index of symbols of a shader build. The index is built from shader nodes once per build, so the generator can
+ * look up mappings, unused nodes and imported fields by names instead of scanning lists.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderSymbolIndex {
+
+    /**
+     * The names of unused shader nodes.
+     */
+    private final Set<String> unusedNodes;
+
+    /**
+     * The names of left variables of input mappings by shader nodes.
+     */
+    private final Map<ShaderNode, Set<String>> inputNames;
+
+    /**
+     * The names of right variables of output mappings by shader nodes.
+     */
+    private final Map<ShaderNode, Set<String>> outputNames;
+
+    /**
+     * The shader nodes which have input mappings from the variable by its namespace and name.
+     */
+    private final Map<String, List<ShaderNode>> consumers;
+
+    /**
+     * The declared fields of imported shaders by their names.
+     */
+    private final Map<String, ExternalFieldDeclarationAstNode> importedFields;
+
+    public ShaderSymbolIndex() {
+        this.unusedNodes = new HashSet<>();
+        this.inputNames = new HashMap<>();
+        this.outputNames = new HashMap<>();
+        this.consumers = new HashMap<>();
+        this.importedFields = new HashMap<>();
+    }
+
+    /**
+     * Builds this index from the shader nodes of the build.
+     *
+     * @param shaderNodes the list of shader nodes.
+     * @param info        the generating information.
+     */
+    public void build(final List<ShaderNode> shaderNodes, final ShaderGenerationInfo info) {
+        clear();
+
+        unusedNodes.addAll(info.getUnusedNodes());
+
+        for (final ShaderNode shaderNode : shaderNodes) {
+
+            final Set<String> inputs = new HashSet<>();
+
+            for (final VariableMapping mapping : shaderNode.getInputMapping()) {
+
+                inputs.add(mapping.getLeftVariable().getName());
+
+                final ShaderNodeVariable rightVariable = mapping.getRightVariable();
+
+                if (rightVariable == null || rightVariable.getNameSpace() == null) {
+                    continue;
+                }
+
+                final String key = toKey(rightVariable.getNameSpace(), rightVariable.getName());
+
+                List<ShaderNode> nodes = consumers.get(key);
+
+                if (nodes == null) {
+                    nodes = new ArrayList<>(2);
+                    consumers.put(key, nodes);
+                }
+
+                if (!nodes.contains(shaderNode)) {
+                    nodes.add(shaderNode);
+                }
+            }
+
+            final Set<String> outputs = new HashSet<>();
+
+            for (final VariableMapping mapping : shaderNode.getOutputMapping()) {
+                outputs.add(mapping.getRightVariable().getName());
+            }
+
+            inputNames.put(shaderNode, inputs);
+            outputNames.put(shaderNode, outputs);
+        }
+    }
+
+    /**
+     * Sets the declared fields of imported shaders.
+     *
+     * @param fields the declared fields of imported shaders.
+     */
+    public void setImportedFields(final List<ExternalFieldDeclarationAstNode> fields) {
+        importedFields.clear();
+
+        for (final ExternalFieldDeclarationAstNode field : fields) {
+
+            final NameAstNode nameNode = field.getName();
+            final String name = nameNode.getName();
+
+            if (!importedFields.containsKey(name)) {
+                importedFields.put(name, field);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the shader node is unused.
+     *
+     * @param shaderNode the shader node.
+     * @return true if the shader node is unused.
+     */
+    public boolean isUnused(final ShaderNode shaderNode) {
+        return unusedNodes.contains(shaderNode.getName());
+    }
+
+    /**
+     * Returns true if the shader node has an input mapping to the input variable with the name.
+     *
+     * @param shaderNode the shader node.
+     * @param name       the name of the input variable.
+     * @return true if the input mapping exists.
+     */
+    public boolean hasInputMapping(final ShaderNode shaderNode, final String name) {
+        final Set<String> names = inputNames.get(shaderNode);
+        return names != null && names.contains(name);
+    }
+
+    /**
+     * Returns true if the shader node has an output mapping from the output variable with the name.
+     *
+     * @param shaderNode the shader node.
+     * @param name       the name of the output variable.
+     * @return true if the output mapping exists.
+     */
+    public boolean hasOutputMapping(final ShaderNode shaderNode, final String name) {
+        final Set<String> names = outputNames.get(shaderNode);
+        return names != null && names.contains(name);
+    }
+
+    /**
+     * Gets the count of other shader nodes which have input mappings from the output variable of the shader node.
+     *
+     * @param shaderNode the shader node.
+     * @param name       the name of the output variable.
+     * @return the count of other shader nodes.
+     */
+    public int getConsumerCount(final ShaderNode shaderNode, final String name) {
+
+        final List<ShaderNode> nodes = consumers.get(toKey(shaderNode.getName(), name));
+
+        if (nodes == null) {
+            return 0;
+        }
+
+        return nodes.contains(shaderNode) ? nodes.size() - 1 : nodes.size();
+    }
+
+    /**
+     * Gets the declared field of imported shaders by the name.
+     *
+     * @param name the name of the field.
+     * @return the declared field or null.
+     */
+    public ExternalFieldDeclarationAstNode getImportedField(final String name) {
+        return importedFields.get(name);
+    }
+
+    /**
+     * Clears this index.
+     */
+    public void clear() {
+        unusedNodes.clear();
+        inputNames.clear();
+        outputNames.clear();
+        consumers.clear();
+        importedFields.clear();
+    }
+
+    /**
+     * Builds the key of the variable.
+     *
+     * @param nameSpace the namespace of the variable.
+     * @param name      the name of the variable.
+     * @return the key of the variable.
+     */
+    private static String toKey(final String nameSpace, final String name) {
+        return nameSpace + '.' + name;
+    }
+}
@@ -0,0 +1,462 @@
+package com.jme3.shader.glsl.parser;
+
+import com.jme3.shader.glsl.parser.ast.AstNode;
+import com.jme3.shader.glsl.parser.ast.NameAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.ExternalFieldDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.LocalVarDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.MethodDeclarationAstNode;
+import com.jme3.shader.glsl.parser.ast.preprocessor.DefinePreprocessorAstNode;
+import com.jme3.shader.glsl.parser.ast.value.DefineValueAstNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The table of all identifier occurrences of GLSL code. The table keeps occurrences as rows of an int array (offset,
+ * length, kind) in the document order. Identifiers inside comments and strings, keywords, numbers, names of
+ * preprocessor directives and names after a dot aren't added to the table.
+ *
+ * @author JavaSaBr
+ */
+public class GlslIdentifierTable {
+
+    /**
+     * The identifier isn't declared in the file.
+     */
+    public static final int KIND_OTHER = 0;
+
+    /**
+     * The identifier is a local variable of the method which contains the identifier.
+     */
+    public static final int KIND_LOCAL_VAR = 1;
+
+    /**
+     * The identifier is a method declared in the file.
+     */
+    public static final int KIND_METHOD = 2;
+
+    /**
+     * The identifier is a preprocessor definition.
+     */
+    public static final int KIND_DEFINE = 3;
+
+    /**
+     * The identifier is an external field declared in the file.
+     */
+    public static final int KIND_EXTERNAL_FIELD = 4;
+
+    private static final int OFFSET = 0;
+    private static final int LENGTH = 1;
+    private static final int KIND = 2;
+
+    /**
+     * The count of ints per identifier.
+     */
+    private static final int STRIDE = 3;
+
+    /**
+     * Finds all identifier occurrences of the file.
+     *
+     * @param file the file node.
+     * @return the table of identifiers.
+     */
+    public static GlslIdentifierTable build(final FileDeclarationAstNode file) {
+
+        final String text = file.getText();
+        final char[] content = text == null ? new char[0] : text.toCharArray();
+        final GlslIdentifierTable table = new GlslIdentifierTable(Math.max(16, content.length / 8));
+        final Declarations declarations = new Declarations(file);
+
+        for (int i = 0, length = content.length; i < length; ) {
+
+            final char ch = content[i];
+            final char next = i + 1 < length ? content[i + 1] : 0;
+
+            if (ch == '/' && next == '/') {
+                i = skipLine(content, i);
+            } else if (ch == '/' && next == '*') {
+                i = skipComment(content, i + 2);
+            } else if (ch == '"') {
+                i = skipString(content, i + 1);
+            } else if (isDigit(ch) || (ch == '.' && isDigit(next))) {
+                i = skipWord(content, i);
+            } else if (isIdentifierStart(ch)) {
+
+                final int end = skipWord(content, i);
+
+                if (!isMember(content, i) && !isDirective(content, i) &&
+                        !GlslLexer.isKeyword(content, i, end - i)) {
+                    table.add(i, end - i, declarations.getKind(content, i, end - i));
+                }
+
+                i = end;
+
+            } else {
+                i++;
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * The declared names of a file.
+     */
+    private static class Declarations {
+
+        /**
+         * The names of methods.
+         */
+        private final Set<String> methods;
+
+        /**
+         * The names of external fields.
+         */
+        private final Set<String> externalFields;
+
+        /**
+         * The names of definitions.
+         */
+        private final Set<String> defines;
+
+        /**
+         * The ranges of methods by names of their local variables.
+         */
+        private final Map<String, int[]> localVars;
+
+        private Declarations(final FileDeclarationAstNode file) {
+            this.methods = new HashSet<>();
+            this.externalFields = new HashSet<>();
+            this.defines = new HashSet<>();
+            this.localVars = new HashMap<>();
+
+            for (final MethodDeclarationAstNode method : file.getNodesByType(MethodDeclarationAstNode.class)) {
+                addName(methods, method.getName());
+            }
+
+            for (final ExternalFieldDeclarationAstNode field :
+                    file.getNodesByType(ExternalFieldDeclarationAstNode.class)) {
+                addName(externalFields, field.getName());
+            }
+
+            for (final DefinePreprocessorAstNode define : file.getNodesByType(DefinePreprocessorAstNode.class)) {
+                addName(defines, define.getName());
+            }
+
+            for (final DefineValueAstNode define : file.getNodesByType(DefineValueAstNode.class)) {
+                if (define.getValue() != null) {
+                    defines.add(define.getValue());
+                }
+            }
+
+            for (final LocalVarDeclarationAstNode localVar : file.getNodesByType(LocalVarDeclarationAstNode.class)) {
+                addLocalVar(localVar);
+            }
+        }
+
+        /**
+         * Adds the name to the set of names.
+         *
+         * @param names the set of names.
+         * @param name  the name node.
+         */
+        private static void addName(final Set<String> names, final NameAstNode name) {
+            if (name != null && name.getName() != null) {
+                names.add(name.getName());
+            }
+        }
+
+        /**
+         * Adds the range of the method of the local variable.
+         *
+         * @param localVar the local variable.
+         */
+        private void addLocalVar(final LocalVarDeclarationAstNode localVar) {
+
+            final NameAstNode name = localVar.getName();
+
+            AstNode method = localVar.getParent();
+
+            while (method != null && !(method instanceof MethodDeclarationAstNode)) {
+                method = method.getParent();
+            }
+
+            if (name == null || name.getName() == null || method == null) {
+                return;
+            }
+
+            final int start = method.getOffset();
+            final int end = start + method.getLength();
+            final int[] ranges = localVars.get(name.getName());
+
+            if (ranges == null) {
+                localVars.put(name.getName(), new int[]{start, end});
+                return;
+            }
+
+            final int[] newRanges = Arrays.copyOf(ranges, ranges.length + 2);
+            newRanges[ranges.length] = start;
+            newRanges[ranges.length + 1] = end;
+
+            localVars.put(name.getName(), newRanges);
+        }
+
+        /**
+         * Gets the kind of the identifier.
+         *
+         * @param content the content.
+         * @param offset  the offset of the identifier.
+         * @param length  the length of the identifier.
+         * @return the kind.
+         */
+        private int getKind(final char[] content, final int offset, final int length) {
+
+            final String name = String.valueOf(content, offset, length);
+            final int[] ranges = localVars.get(name);
+
+            if (ranges != null) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    if (offset >= ranges[i] && offset < ranges[i + 1]) {
+                        return KIND_LOCAL_VAR;
+                    }
+                }
+            }
+
+            if (methods.contains(name)) {
+                return KIND_METHOD;
+            } else if (externalFields.contains(name)) {
+                return KIND_EXTERNAL_FIELD;
+            } else if (defines.contains(name)) {
+                return KIND_DEFINE;
+            }
+
+            return KIND_OTHER;
+        }
+    }
+
+    /**
+     * The rows of identifiers.
+     */
+    private int[] data;
+
+    /**
+     * The count of identifiers.
+     */
+    private int size;
+
+    private GlslIdentifierTable(final int capacity) {
+        this.data = new int[capacity * STRIDE];
+    }
+
+    /**
+     * Adds the new identifier to this table.
+     *
+     * @param offset the offset.
+     * @param length the length.
+     * @param kind   the kind.
+     */
+    private void add(final int offset, final int length, final int kind) {
+
+        final int position = size * STRIDE;
+
+        if (position + STRIDE > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+
+        final int[] data = this.data;
+        data[position + OFFSET] = offset;
+        data[position + LENGTH] = length;
+        data[position + KIND] = kind;
+
+        size++;
+    }
+
+    /**
+     * Gets the count of identifiers.
+     *
+     * @return the count of identifiers.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the offset of the identifier.
+     *
+     * @param index the index of the identifier.
+     * @return the offset.
+     */
+    public int getOffset(final int index) {
+        return data[index * STRIDE + OFFSET];
+    }
+
+    /**
+     * Gets the length of the identifier.
+     *
+     * @param index the index of the identifier.
+     * @return the length.
+     */
+    public int getLength(final int index) {
+        return data[index * STRIDE + LENGTH];
+    }
+
+    /**
+     * Gets the kind of the identifier.
+     *
+     * @param index the index of the identifier.
+     * @return the kind.
+     */
+    public int getKind(final int index) {
+        return data[index * STRIDE + KIND];
+    }
+
+    /**
+     * Finds the index of the first identifier which starts at the offset or after it.
+     *
+     * @param offset the offset.
+     * @return the index of the identifier or the count of identifiers.
+     */
+    public int indexOf(final int offset) {
+
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+
+            final int middle = (low + high) >>> 1;
+
+            if (getOffset(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static boolean isDigit(final char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isIdentifierStart(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+    }
+
+    private static boolean isIdentifierPart(final char ch) {
+        return isIdentifierStart(ch) || isDigit(ch);
+    }
+
+    /**
+     * Checks that the identifier is a member of an expression, such as a field of a struct or a swizzle.
+     *
+     * @param content the content.
+     * @param offset  the offset of the identifier.
+     * @return true if the identifier goes after a dot.
+     */
+    private static boolean isMember(final char[] content, final int offset) {
+        return offset > 0 && content[offset - 1] == '.';
+    }
+
+    /**
+     * Checks that the identifier is a name of a preprocessor directive.
+     *
+     * @param content the content.
+     * @param offset  the offset of the identifier.
+     * @return true if the identifier goes after '#'.
+     */
+    private static boolean isDirective(final char[] content, final int offset) {
+
+        int i = offset - 1;
+
+        while (i >= 0 && (content[i] == ' ' || content[i] == '\t')) {
+            i--;
+        }
+
+        return i >= 0 && content[i] == '#';
+    }
+
+    /**
+     * Skips the word or the number.
+     *
+     * @param content the content.
+     * @param offset  the start offset.
+     * @return the offset after the word.
+     */
+    private static int skipWord(final char[] content, final int offset) {
+
+        int i = offset + 1;
+
+        if (isDigit(content[offset]) || content[offset] == '.') {
+            while (i < content.length && (isIdentifierPart(content[i]) || content[i] == '.')) {
+                i++;
+            }
+        } else {
+            while (i < content.length && isIdentifierPart(content[i])) {
+                i++;
+            }
+        }
+
+        return i;
+    }
+
+    /**
+     * Skips the single line comment.
+     *
+     * @param content the content.
+     * @param offset  the start offset.
+     * @return the offset of the line break.
+     */
+    private static int skipLine(final char[] content, final int offset) {
+
+        int i = offset;
+
+        while (i < content.length && content[i] != '\n') {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Skips the multi line comment.
+     *
+     * @param content the content.
+     * @param offset  the offset after the comment start.
+     * @return the offset after the comment end.
+     */
+    private static int skipComment(final char[] content, final int offset) {
+
+        for (int i = offset; i + 1 < content.length; i++) {
+            if (content[i] == '*' && content[i + 1] == '/') {
+                return i + 2;
+            }
+        }
+
+        return content.length;
+    }
+
+    /**
+     * Skips the string.
+     *
+     * @param content the content.
+     * @param offset  the offset after the opening quote.
+     * @return the offset after the closing quote.
+     */
+    private static int skipString(final char[] content, final int offset) {
+
+        for (int i = offset; i < content.length; i++) {
+            if (content[i] == '"') {
+                return i + 1;
+            } else if (content[i] == '\n') {
+                return i;
+            }
+        }
+
+        return content.length;
+    }
+}
@@ -0,0 +1,714 @@
+package com.jme3.shader.glsl.parser;
+
+/**
+ * The table-driven lexer of GLSL code. It marks boundaries of tokens as offset/length in the source content and
+ * doesn't build any strings until a caller asks for the text of a token.
+ *
+ * @author JavaSaBr
+ */
+public class GlslLexer {
+
+    /**
+     * The char splits tokens.
+     */
+    private static final int CHAR_SPLIT = 1;
+
+    /**
+     * The char splits tokens inside a single line comment.
+     */
+    private static final int CHAR_COMMENT_SPLIT = 2;
+
+    /**
+     * The char can be a part of a word.
+     */
+    private static final int CHAR_WORD = 4;
+
+    /**
+     * The char is a decimal digit.
+     */
+    private static final int CHAR_DIGIT = 8;
+
+    /**
+     * The char is a hex digit.
+     */
+    private static final int CHAR_HEX_DIGIT = 16;
+
+    /**
+     * The char is a suffix of a float number.
+     */
+    private static final int CHAR_FLOAT_SUFFIX = 32;
+
+    /**
+     * The table of classes of ASCII chars.
+     */
+    private static final byte[] CHAR_CLASSES = new byte[128];
+
+    /**
+     * The table of types of single char tokens.
+     */
+    private static final int[] CHAR_TOKENS = new int[128];
+
+    /**
+     * The open addressing table of keywords.
+     */
+    private static final char[][] KEYWORD_TABLE = new char[64][];
+
+    static {
+
+        addCharClass(" \n\t\r", CHAR_SPLIT);
+        addCharClass("\n\r", CHAR_COMMENT_SPLIT);
+        addCharClass("0123456789", CHAR_DIGIT | CHAR_HEX_DIGIT | CHAR_WORD);
+        addCharClass("abcdefABCDEF", CHAR_HEX_DIGIT);
+        addCharClass("fFdD", CHAR_FLOAT_SUFFIX);
+
+        for (char ch = 0; ch < CHAR_CLASSES.length; ch++) {
+            if (Character.isLetterOrDigit(ch) || ch == '_') {
+                CHAR_CLASSES[ch] |= CHAR_WORD;
+            }
+        }
+
+        CHAR_TOKENS[';'] = GlslParser.TOKEN_SEMICOLON;
+        CHAR_TOKENS['['] = GlslParser.TOKEN_LEFT_BRACKET;
+        CHAR_TOKENS[']'] = GlslParser.TOKEN_RIGHT_BRACKET;
+        CHAR_TOKENS['('] = GlslParser.TOKEN_LEFT_PARENTHESIS;
+        CHAR_TOKENS[')'] = GlslParser.TOKEN_RIGHT_PARENTHESIS;
+        CHAR_TOKENS['.'] = GlslParser.TOKEN_DOT;
+        CHAR_TOKENS['{'] = GlslParser.TOKEN_LEFT_BRACE;
+        CHAR_TOKENS['}'] = GlslParser.TOKEN_RIGHT_BRACE;
+        CHAR_TOKENS['!'] = GlslParser.TOKEN_EXCLAMATION_MARK;
+        CHAR_TOKENS['='] = GlslParser.TOKEN_ASSIGN;
+        CHAR_TOKENS[':'] = GlslParser.TOKEN_COLON;
+        CHAR_TOKENS['#'] = GlslParser.TOKEN_PREPROCESSOR;
+        CHAR_TOKENS['<'] = GlslParser.TOKEN_COMPARE;
+        CHAR_TOKENS['>'] = GlslParser.TOKEN_COMPARE;
+
+        for (final String keyword : GlslLang.KEYWORDS) {
+
+            int index = keyword.hashCode() & (KEYWORD_TABLE.length - 1);
+
+            while (KEYWORD_TABLE[index] != null) {
+                index = (index + 1) & (KEYWORD_TABLE.length - 1);
+            }
+
+            KEYWORD_TABLE[index] = keyword.toCharArray();
+        }
+    }
+
+    private static void addCharClass(final String chars, final int charClass) {
+        for (int i = 0; i < chars.length(); i++) {
+            CHAR_CLASSES[chars.charAt(i)] |= charClass;
+        }
+    }
+
+    /**
+     * The current content.
+     */
+    private char[] content;
+
+    /**
+     * The current offset.
+     */
+    private int offset;
+
+    /**
+     * The current line.
+     */
+    private int line;
+
+    /**
+     * The flag of reading a single line comment.
+     */
+    private boolean commentMode;
+
+    /**
+     * The type of the last read token.
+     */
+    private int tokenType;
+
+    /**
+     * The offset of the last read token.
+     */
+    private int tokenOffset;
+
+    /**
+     * The length of the last read token.
+     */
+    private int tokenLength;
+
+    /**
+     * The line of the last read token.
+     */
+    private int tokenLine;
+
+    /**
+     * The offset of the text of the last read token.
+     */
+    private int tokenTextOffset;
+
+    /**
+     * Reads a next token from the content.
+     *
+     * @param content the content.
+     * @return the type of the read token.
+     */
+    public int next(final char[] content) {
+
+        this.content = content;
+
+        final int length = content.length;
+        final int start = offset;
+
+        int pendingType = Token.INVALID;
+        int pendingOffset = 0;
+
+        while (true) {
+
+            final char ch = content[offset >= length ? length - 1 : offset];
+            offset++;
+
+            if (isSplitChar(ch) || offset > length) {
+                commentMode = false;
+
+                if (pendingType != Token.INVALID) {
+                    offset--;
+                    return setToken(pendingType, pendingOffset, offset - pendingOffset, start);
+                }
+
+                final int textLength = offset - 1 - start;
+                final int wordType = getWordType(content, start, textLength);
+
+                if (wordType != Token.INVALID) {
+                    offset--;
+                    return setToken(wordType, start, textLength, start);
+                } else if (offset >= length) {
+                    return tokenType = Token.EOF;
+                }
+
+                if (ch == '\n') {
+                    line++;
+                }
+
+                return tokenType = Token.SKIP;
+            }
+
+            final int charTokenType = pendingType == Token.INVALID && ch < CHAR_TOKENS.length ? CHAR_TOKENS[ch] : 0;
+
+            if (charTokenType != 0) {
+
+                final int textLength = offset - 1 - start;
+
+                switch (ch) {
+                    case '.': {
+
+                        if (textLength > 0 && isNumber(content, start, textLength)) {
+                            break;
+                        }
+
+                        return handleWordOrCharToken(content, start, textLength, charTokenType);
+                    }
+                    case ';':
+                    case '[':
+                    case ']':
+                    case '(': {
+                        return handleWordOrCharToken(content, start, textLength, charTokenType);
+                    }
+                    case '=': {
+
+                        final int wordType = getWordType(content, start, textLength);
+
+                        if (wordType != Token.INVALID) {
+                            offset--;
+                            return setToken(wordType, start, textLength, start);
+                        } else if (textLength == 0 && !isNextChar(content, '=')) {
+                            return setToken(charTokenType, offset - 1, 1, offset - 1);
+                        }
+
+                        break;
+                    }
+                    case '<':
+                    case '>': {
+
+                        if (isNextChar(content, '=')) {
+                            break;
+                        }
+
+                        return handleCharToken(content, start, textLength, charTokenType);
+                    }
+                    default: {
+                        return handleCharToken(content, start, textLength, charTokenType);
+                    }
+                }
+            }
+
+            if (ch == '"') {
+
+                if (pendingType != Token.INVALID) {
+                    return setToken(pendingType, pendingOffset, offset - pendingOffset, start);
+                }
+
+                pendingType = GlslParser.TOKEN_STRING;
+                pendingOffset = offset - 1;
+                continue;
+            }
+
+            if (pendingType != Token.INVALID || offset - start != 2) {
+                continue;
+            }
+
+            final int pairTokenType = getPairTokenType(content[start], ch);
+
+            if (pairTokenType == GlslParser.TOKEN_SINGLE_COMMENT) {
+                commentMode = true;
+                pendingType = pairTokenType;
+                pendingOffset = offset - 1;
+            } else if (pairTokenType != Token.INVALID) {
+                return setToken(pairTokenType, start, 2, start);
+            }
+        }
+    }
+
+    /**
+     * Handles a single char token which can finish a keyword or a word.
+     *
+     * @param content       the content.
+     * @param start         the start of the current text.
+     * @param textLength    the length of the current text.
+     * @param charTokenType the type of the char token.
+     * @return the type of the read token.
+     */
+    private int handleWordOrCharToken(final char[] content, final int start, final int textLength,
+                                      final int charTokenType) {
+
+        final int wordType = getWordType(content, start, textLength);
+
+        if (wordType != Token.INVALID) {
+            offset--;
+            return setToken(wordType, start, textLength, start);
+        }
+
+        return setToken(charTokenType, offset - 1, 1, offset - 1);
+    }
+
+    /**
+     * Handles a single char token which can finish a word.
+     *
+     * @param content       the content.
+     * @param start         the start of the current text.
+     * @param textLength    the length of the current text.
+     * @param charTokenType the type of the char token.
+     * @return the type of the read token.
+     */
+    private int handleCharToken(final char[] content, final int start, final int textLength,
+                                final int charTokenType) {
+
+        if (isWord(content, start, textLength)) {
+            offset--;
+            return setToken(GlslParser.TOKEN_WORD, start, textLength, start);
+        }
+
+        return setToken(charTokenType, offset - 1, 1, offset - 1);
+    }
+
+    /**
+     * Updates the last read token.
+     *
+     * @param type       the type.
+     * @param offset     the offset.
+     * @param length     the length.
+     * @param textOffset the offset of the text.
+     * @return the type.
+     */
+    private int setToken(final int type, final int offset, final int length, final int textOffset) {
+        this.tokenType = type;
+        this.tokenOffset = offset;
+        this.tokenLength = length;
+        this.tokenLine = line;
+        this.tokenTextOffset = textOffset;
+        return type;
+    }
+
+    /**
+     * Checks the char as a split char in the current mode.
+     *
+     * @param ch the char.
+     * @return true if the char splits tokens.
+     */
+    private boolean isSplitChar(final char ch) {
+        return ch < CHAR_CLASSES.length &&
+                (CHAR_CLASSES[ch] & (commentMode ? CHAR_COMMENT_SPLIT : CHAR_SPLIT)) != 0;
+    }
+
+    /**
+     * Checks the next char after the current offset.
+     *
+     * @param content the content.
+     * @param ch      the expected char.
+     * @return true if the next char is the expected char.
+     */
+    private boolean isNextChar(final char[] content, final char ch) {
+        return offset < content.length && content[offset] == ch;
+    }
+
+    /**
+     * Gets a type of a two chars token.
+     *
+     * @param first  the first char.
+     * @param second the second char.
+     * @return the type of the token or {@link Token#INVALID}.
+     */
+    private static int getPairTokenType(final char first, final char second) {
+
+        if (second == '=') {
+            switch (first) {
+                case '>':
+                case '<':
+                case '=':
+                    return GlslParser.TOKEN_COMPARE;
+                case '-':
+                case '+':
+                case '*':
+                case '/':
+                    return GlslParser.TOKEN_ASSIGN;
+            }
+        } else if (first == second) {
+            switch (first) {
+                case '|':
+                    return GlslParser.TOKEN_OR;
+                case '&':
+                    return GlslParser.TOKEN_AND;
+                case '/':
+                    return GlslParser.TOKEN_SINGLE_COMMENT;
+            }
+        }
+
+        return Token.INVALID;
+    }
+
+    /**
+     * Gets a type of the text as a keyword or a word.
+     *
+     * @param content the content.
+     * @param offset  the offset of the text.
+     * @param length  the length of the text.
+     * @return the type of the token or {@link Token#INVALID}.
+     */
+    private static int getWordType(final char[] content, final int offset, final int length) {
+
+        if (length < 1) {
+            return Token.INVALID;
+        } else if (isKeyword(content, offset, length)) {
+            return GlslParser.TOKEN_KEYWORD;
+        } else if (isWord(content, offset, length)) {
+            return GlslParser.TOKEN_WORD;
+        }
+
+        return Token.INVALID;
+    }
+
+    /**
+     * Checks the text as a keyword.
+     *
+     * @param content the content.
+     * @param offset  the offset of the text.
+     * @param length  the length of the text.
+     * @return true if the text is a keyword.
+     */
+    static boolean isKeyword(final char[] content, final int offset, final int length) {
+
+        int hash = 0;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + content[i];
+        }
+
+        for (int index = hash & (KEYWORD_TABLE.length - 1); ; index = (index + 1) & (KEYWORD_TABLE.length - 1)) {
+
+            final char[] keyword = KEYWORD_TABLE[index];
+
+            if (keyword == null) {
+                return false;
+            } else if (equals(keyword, content, offset, length)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks the text as a number or a word.
+     *
+     * @param content the content.
+     * @param offset  the offset of the text.
+     * @param length  the length of the text.
+     * @return true if the text is a number or a word.
+     */
+    private static boolean isWord(final char[] content, final int offset, final int length) {
+
+        if (length < 1) {
+            return false;
+        }
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+
+            final char ch = content[i];
+
+            if (ch < CHAR_CLASSES.length) {
+                if ((CHAR_CLASSES[ch] & CHAR_WORD) == 0) {
+                    return isNumber(content, offset, length);
+                }
+            } else if (!Character.isLetterOrDigit(ch)) {
+                return isNumber(content, offset, length);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks the text as a number in the same format as {@link Double#parseDouble(String)} accepts.
+     *
+     * @param content the content.
+     * @param offset  the offset of the text.
+     * @param length  the length of the text.
+     * @return true if the text is a number.
+     */
+    private static boolean isNumber(final char[] content, final int offset, final int length) {
+
+        int start = offset;
+        int end = offset + length;
+
+        while (start < end && content[start] <= ' ') start++;
+        while (end > start && content[end - 1] <= ' ') end--;
+
+        if (start >= end) {
+            return false;
+        }
+
+        int i = start;
+
+        if (content[i] == '+' || content[i] == '-') {
+            if (++i >= end) {
+                return false;
+            }
+        }
+
+        final char first = content[i];
+
+        if (first == 'N') {
+            return equals("NaN", content, i, end - i);
+        } else if (first == 'I') {
+            return equals("Infinity", content, i, end - i);
+        } else if (first == '0' && i + 1 < end && (content[i + 1] == 'x' || content[i + 1] == 'X')) {
+            return isHexNumber(content, i + 2, end);
+        }
+
+        int digits = 0;
+        boolean point = false;
+
+        for (; i < end; i++) {
+
+            final char ch = content[i];
+
+            if (hasCharClass(ch, CHAR_DIGIT)) {
+                digits++;
+            } else if (ch != '.') {
+                break;
+            } else if (point) {
+                return false;
+            } else {
+                point = true;
+            }
+        }
+
+        if (digits == 0) {
+            return false;
+        }
+
+        if (i < end && (content[i] == 'e' || content[i] == 'E')) {
+
+            if (++i >= end) {
+                return false;
+            } else if (content[i] == '+' || content[i] == '-') {
+                i++;
+            }
+
+            final int exponentStart = i;
+
+            while (i < end && hasCharClass(content[i], CHAR_DIGIT)) i++;
+
+            if (i == exponentStart) {
+                return false;
+            }
+        }
+
+        return i == end || (i == end - 1 && hasCharClass(content[i], CHAR_FLOAT_SUFFIX));
+    }
+
+    /**
+     * Checks the text after '0x' as a hexadecimal floating point number.
+     *
+     * @param content the content.
+     * @param start   the start of the text after '0x'.
+     * @param end     the end of the text.
+     * @return true if the text is a hexadecimal floating point number.
+     */
+    private static boolean isHexNumber(final char[] content, int start, final int end) {
+
+        int digits = 0;
+        boolean point = false;
+
+        for (; start < end; start++) {
+
+            final char ch = content[start];
+
+            if (hasCharClass(ch, CHAR_HEX_DIGIT)) {
+                digits++;
+            } else if (ch != '.') {
+                break;
+            } else if (point) {
+                return false;
+            } else {
+                point = true;
+            }
+        }
+
+        if (digits == 0 || start >= end || (content[start] != 'p' && content[start] != 'P')) {
+            return false;
+        } else if (++start < end && (content[start] == '+' || content[start] == '-')) {
+            start++;
+        }
+
+        final int exponentStart = start;
+
+        while (start < end && hasCharClass(content[start], CHAR_DIGIT)) start++;
+
+        if (start == exponentStart) {
+            return false;
+        }
+
+        return start == end || (start == end - 1 && hasCharClass(content[start], CHAR_FLOAT_SUFFIX));
+    }
+
+    private static boolean hasCharClass(final char ch, final int charClass) {
+        return ch < CHAR_CLASSES.length && (CHAR_CLASSES[ch] & charClass) != 0;
+    }
+
+    private static boolean equals(final char[] expected, final char[] content, final int offset, final int length) {
+
+        if (expected.length != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (expected[i] != content[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean equals(final String expected, final char[] content, final int offset, final int length) {
+
+        if (expected.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (expected.charAt(i) != content[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the text of the last read token.
+     *
+     * @return the text of the last read token.
+     */
+    public String getTokenText() {
+        return String.valueOf(content, tokenTextOffset, tokenOffset + tokenLength - tokenTextOffset);
+    }
+
+    /**
+     * Gets the type of the last read token.
+     *
+     * @return the type of the last read token.
+     */
+    public int getTokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Gets the offset of the last read token.
+     *
+     * @return the offset of the last read token.
+     */
+    public int getTokenOffset() {
+        return tokenOffset;
+    }
+
+    /**
+     * Gets the length of the last read token.
+     *
+     * @return the length of the last read token.
+     */
+    public int getTokenLength() {
+        return tokenLength;
+    }
+
+    /**
+     * Gets the line of the last read token.
+     *
+     * @return the line of the last read token.
+     */
+    public int getTokenLine() {
+        return tokenLine;
+    }
+
+    /**
+     * Gets the offset of the text of the last read token.
+     *
+     * @return the offset of the text of the last read token.
+     */
+    public int getTokenTextOffset() {
+        return tokenTextOffset;
+    }
+
+    /**
+     * Gets the current offset.
+     *
+     * @return the current offset.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sets the current offset.
+     *
+     * @param offset the current offset.
+     */
+    public void setOffset(final int offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Gets the current line.
+     *
+     * @return the current line.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Sets the current line.
+     *
+     * @param line the current line.
+     */
+    public void setLine(final int line) {
+        this.line = line;
+    }
+}
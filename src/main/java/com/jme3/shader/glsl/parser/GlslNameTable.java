@@ -0,0 +1,127 @@
+package com.jme3.shader.glsl.parser;
+
+/**
+ * The table to intern names of identifiers and keywords. The table finds a name by a part of the source content
+ * without building a new string and all found names are shared with all other tables through
+ * {@link String#intern()}, so the same name from all parsed files is presented by the same string instance.
+ *
+ * @author JavaSaBr
+ */
+public class GlslNameTable {
+
+    /**
+     * The hashes of the names.
+     */
+    private int[] hashes;
+
+    /**
+     * The names.
+     */
+    private String[] names;
+
+    /**
+     * The count of names.
+     */
+    private int size;
+
+    public GlslNameTable() {
+        this.hashes = new int[64];
+        this.names = new String[64];
+    }
+
+    /**
+     * Gets the interned name by the part of the content.
+     *
+     * @param content the content.
+     * @param offset  the offset of the name.
+     * @param length  the length of the name.
+     * @return the interned name.
+     */
+    public String get(final char[] content, final int offset, final int length) {
+
+        int hash = 0;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + content[i];
+        }
+
+        final int mask = names.length - 1;
+
+        for (int index = hash & mask; ; index = (index + 1) & mask) {
+
+            final String name = names[index];
+
+            if (name == null) {
+                return add(index, hash, String.valueOf(content, offset, length).intern());
+            } else if (hashes[index] == hash && equals(name, content, offset, length)) {
+                return name;
+            }
+        }
+    }
+
+    /**
+     * Adds the new name to the table.
+     *
+     * @param index the index of a free cell.
+     * @param hash  the hash of the name.
+     * @param name  the name.
+     * @return the name.
+     */
+    private String add(final int index, final int hash, final String name) {
+
+        hashes[index] = hash;
+        names[index] = name;
+
+        if (++size * 2 > names.length) {
+            rehash();
+        }
+
+        return name;
+    }
+
+    /**
+     * Increases the table.
+     */
+    private void rehash() {
+
+        final int[] prevHashes = hashes;
+        final String[] prevNames = names;
+
+        hashes = new int[prevNames.length * 2];
+        names = new String[prevNames.length * 2];
+
+        final int mask = names.length - 1;
+
+        for (int i = 0; i < prevNames.length; i++) {
+
+            final String name = prevNames[i];
+            if (name == null) {
+                continue;
+            }
+
+            int index = prevHashes[i] & mask;
+
+            while (names[index] != null) {
+                index = (index + 1) & mask;
+            }
+
+            hashes[index] = prevHashes[i];
+            names[index] = name;
+        }
+    }
+
+    private static boolean equals(final String name, final char[] content, final int offset, final int length) {
+
+        if (name.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != content[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
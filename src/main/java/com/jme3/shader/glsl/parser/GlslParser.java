@@ -1,6 +1,5 @@
 package com.jme3.shader.glsl.parser;
 
-import static com.jme3.shader.glsl.parser.GlslLang.KEYWORDS;
 import static com.jme3.shader.glsl.parser.GlslLang.PREPROCESSOR_WITH_CONDITION;
 import static java.util.Objects.requireNonNull;
 import com.jme3.shader.glsl.parser.ast.*;
@@ -22,8 +21,7 @@ import com.jme3.shader.glsl.parser.ast.value.ValueAstNode;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
 /**
  * The parser of GLSL code.
@@ -56,71 +54,54 @@ public class GlslParser {
     public static final int LEVEL_STRUCT = 2;
     public static final int LEVEL_METHOD = 3;
 
-    private static final Set<Character> SPLIT_CHARS = new HashSet<>();
-    private static final Set<Character> SINGLE_COMMENT_SPLIT_CHARS = new HashSet<>();
-
-    static {
-        SPLIT_CHARS.add(' ');
-        SPLIT_CHARS.add('\n');
-        SPLIT_CHARS.add('\t');
-        SPLIT_CHARS.add('\r');
-        SINGLE_COMMENT_SPLIT_CHARS.add('\n');
-        SINGLE_COMMENT_SPLIT_CHARS.add('\r');
-    }
-
     /**
      * Creates a new instance of this parser.
      *
      * @return the new instance of this parser.
      */
     public static GlslParser newInstance() {
-        return new GlslParser();
+        return new GlslParser(false);
     }
 
     /**
-     * The stack of ast nodes.
-     */
-    private final Deque<AstNode> nodeStack;
-
-    /**
-     * The list of read tokens.
-     */
-    private final Deque<Token> readTokens;
-
-    /**
-     * The set of split chars.
+     * Creates a new instance of this parser.
+     *
+     * @param preTokenized true if the parser should read all tokens of a file before parsing.
+     * @return the new instance of this parser.
      */
-    private Set<Character> splitChars;
+    public static GlslParser newInstance(final boolean preTokenized) {
+        return new GlslParser(preTokenized);
+    }
 
     /**
-     * The current token.
+     * The stack of ast nodes.
      */
-    private Token currentToken;
+    private final Deque<AstNode> nodeStack;
 
     /**
-     * The current line.
+     * The stream of tokens.
      */
-    private int line;
+    private final GlslTokenStream tokens;
 
     /**
-     * The current offset.
+     * The previous read symbol token.
      */
-    private int offset;
+    private Token previousReadToken;
 
     /**
-     * The saved line.
+     * The saved position of the stream of tokens.
      */
-    private int savedLine;
+    private long savedPosition;
 
     /**
-     * The saved offset.
+     * True if the parser reads all tokens of a file before parsing.
      */
-    private int savedOffset;
+    private final boolean preTokenized;
 
-    private GlslParser() {
+    private GlslParser(final boolean preTokenized) {
         this.nodeStack = new ArrayDeque<>();
-        this.splitChars = SPLIT_CHARS;
-        this.readTokens = new ArrayDeque<>();
+        this.tokens = new GlslTokenStream();
+        this.preTokenized = preTokenized;
     }
 
     /**
@@ -131,11 +112,28 @@ public class GlslParser {
      * @return the file ast node.
      */
     public FileDeclarationAstNode parseFileDeclaration(final String path, final String glslCode) {
+        return parseFileDeclaration(path, glslCode, null);
+    }
+
+    /**
+     * Parse the GLSL file with the already loaded content, so the content isn't copied from the code again.
+     *
+     * @param path     the path to GLSL file.
+     * @param glslCode the GLSL code.
+     * @param content  the chars of the GLSL code or null.
+     * @return the file ast node.
+     */
+    public FileDeclarationAstNode parseFileDeclaration(final String path, final String glslCode,
+                                                       final char[] content) {
+
+        if (content != null && content.length != glslCode.length()) {
+            throw new IllegalArgumentException("The content doesn't match the code of the file " + path);
+        }
 
         final FileDeclarationAstNode node = new FileDeclarationAstNode();
         node.setPath(path);
-        node.setLine(line);
-        node.setOffset(offset);
+        node.setLine(tokens.getLine());
+        node.setOffset(tokens.getOffset());
         node.setLength(glslCode.length());
         node.setText(glslCode);
 
@@ -143,17 +141,177 @@ public class GlslParser {
             return node;
         }
 
-        nodeStack.addLast(node);
         try {
-            parseContent(glslCode.toCharArray(), LEVEL_FILE, AstUtils.EMPTY);
+            parseContent(node, content == null ? glslCode.toCharArray() : content, node.getOffset(),
+                    node.getLine());
         } catch (final RuntimeException e) {
             System.out.println(glslCode);
             throw e;
+        }
+
+        return node;
+    }
+
+    /**
+     * Parse the GLSL file again after the edit. Only top-level declarations which are touched by lines of the edit
+     * are parsed again, all other declarations of the previous file node are moved to the new file node, so the
+     * previous file node shouldn't be used after this call.
+     *
+     * @param prevNode      the previous file node.
+     * @param offset        the offset of the edit.
+     * @param removedLength the length of removed text.
+     * @param insertedText  the inserted text.
+     * @return the new file node.
+     */
+    public FileDeclarationAstNode parseFileDeclaration(final FileDeclarationAstNode prevNode, final int offset,
+                                                       final int removedLength, final String insertedText) {
+
+        final String prevCode = prevNode.getText();
+        final int prevLength = prevCode.length();
+
+        if (offset < 0 || removedLength < 0 || offset + removedLength > prevLength) {
+            throw new IllegalArgumentException("the edit " + offset + ":" + removedLength + " is out of the file " +
+                    prevNode.getPath());
+        }
+
+        final String glslCode = prevCode.substring(0, offset) + insertedText +
+                prevCode.substring(offset + removedLength);
+
+        final List<AstNode> children = prevNode.getChildren();
+
+        // all declarations which are on the same lines with the edit can be changed by the edit
+        final int editStart = prevCode.lastIndexOf('\n', offset - 1) + 1;
+        final int lineEnd = prevCode.indexOf('\n', offset + removedLength);
+        final int editEnd = lineEnd == -1 ? prevLength : lineEnd;
+
+        int first = 0;
+        while (first < children.size() && getEnd(children.get(first)) < editStart) {
+            first++;
+        }
+
+        int last = first - 1;
+        while (last + 1 < children.size() && children.get(last + 1).getOffset() <= editEnd) {
+            last++;
+        }
+
+        final AstNode prevChild = first > 0 ? children.get(first - 1) : null;
+        final AstNode nextChild = last + 1 < children.size() ? children.get(last + 1) : null;
+
+        final int regionStart = prevChild == null ? 0 : getEnd(prevChild);
+        final int regionLine = prevChild == null ? prevNode.getLine() :
+                prevChild.getLine() + countLines(prevCode, prevChild.getOffset(), regionStart);
+
+        final int prevRegionEnd = nextChild == null ? prevLength : nextChild.getOffset();
+        final int offsetDelta = insertedText.length() - removedLength;
+        final int lineDelta = countLines(insertedText, 0, insertedText.length()) -
+                countLines(prevCode, offset, offset + removedLength);
+
+        final FileDeclarationAstNode regionNode = new FileDeclarationAstNode();
+
+        try {
+
+            final int regionEnd = prevRegionEnd + offsetDelta;
+
+            if (regionEnd > regionStart) {
+                final GlslParser parser = new GlslParser(preTokenized);
+                parser.parseContent(regionNode, glslCode.substring(0, regionEnd).toCharArray(), regionStart, regionLine);
+            }
+
+        } catch (final RuntimeException e) {
+            return new GlslParser(preTokenized).parseFileDeclaration(prevNode.getPath(), glslCode);
+        }
+
+        final FileDeclarationAstNode node = new FileDeclarationAstNode();
+        node.setPath(prevNode.getPath());
+        node.setLine(prevNode.getLine());
+        node.setOffset(prevNode.getOffset());
+        node.setLength(glslCode.length());
+        node.setText(glslCode);
+
+        for (int i = 0; i < first; i++) {
+            moveChild(node, children.get(i));
+        }
+
+        for (final AstNode child : regionNode.getChildren()) {
+            moveChild(node, child);
+        }
+
+        final char[] content = last + 1 < children.size() ? glslCode.toCharArray() : null;
+
+        for (int i = last + 1; i < children.size(); i++) {
+            final AstNode child = children.get(i);
+            AstUtils.shift(child, offsetDelta, lineDelta, content);
+            moveChild(node, child);
+        }
+
+        return node;
+    }
+
+    /**
+     * Parse content of a file node from the position.
+     *
+     * @param node    the file node.
+     * @param content the content.
+     * @param offset  the start offset.
+     * @param line    the start line.
+     */
+    private void parseContent(final FileDeclarationAstNode node, final char[] content, final int offset,
+                              final int line) {
+
+        tokens.setPosition(offset, line);
+
+        if (preTokenized) {
+            tokens.tokenize(content);
+        }
+
+        nodeStack.addLast(node);
+        try {
+            parseContent(content, LEVEL_FILE, AstUtils.EMPTY);
         } finally {
             nodeStack.removeLast();
         }
+    }
 
-        return node;
+    /**
+     * Moves the child to the new parent node.
+     *
+     * @param parent the new parent node.
+     * @param child  the child.
+     */
+    private static void moveChild(final AstNode parent, final AstNode child) {
+        child.setParent(parent);
+        parent.addChild(child);
+    }
+
+    /**
+     * Gets the end offset of the node.
+     *
+     * @param node the node.
+     * @return the end offset.
+     */
+    private static int getEnd(final AstNode node) {
+        return node.getOffset() + node.getLength();
+    }
+
+    /**
+     * Counts line breaks in the part of the text.
+     *
+     * @param text  the text.
+     * @param start the start offset.
+     * @param end   the end offset.
+     * @return the count of line breaks.
+     */
+    private static int countLines(final String text, final int start, final int end) {
+
+        int count = 0;
+
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+
+        return count;
     }
 
     /**
@@ -165,14 +323,12 @@ public class GlslParser {
      */
     private void parseContent(final char[] content, final int level, final BiPredicate<GlslParser, char[]> exitCondition) {
 
-        int prevOffset;
-        int prevLine;
+        long prevPosition;
+        int type;
 
-        Token token;
         do {
 
-            prevOffset = offset;
-            prevLine = line;
+            prevPosition = tokens.mark();
 
             try {
 
@@ -181,15 +337,19 @@ public class GlslParser {
                 }
 
             } finally {
-                offset = prevOffset;
-                line = prevLine;
+                tokens.reset(prevPosition);
             }
 
-            token = readToken(content);
+            Token token = readToken(content);
+            type = token.getType();
 
-            if (token.getType() == TOKEN_PREPROCESSOR) {
+            if (type == TOKEN_PREPROCESSOR || type == TOKEN_KEYWORD || type == TOKEN_WORD) {
+                token = tokens.take(token);
+            }
+
+            if (type == TOKEN_PREPROCESSOR) {
                 parsePreprocessor(token, findToken(content, TOKEN_KEYWORD), content);
-            } else if (token.getType() == TOKEN_KEYWORD) {
+            } else if (type == TOKEN_KEYWORD) {
 
                 if (GlslLang.KW_IF.equals(token.getText())) {
                     parseIf(token, content);
@@ -201,7 +361,7 @@ public class GlslParser {
                     parseExternalFieldDeclaration(token, content);
                 }
 
-            } else if (token.getType() == TOKEN_WORD) {
+            } else if (type == TOKEN_WORD) {
 
                 if (level == LEVEL_FILE) {
                     parseMethodDeclaration(token, content);
@@ -226,7 +386,7 @@ public class GlslParser {
                 }
             }
 
-        } while (token != Token.EOF_TOKEN);
+        } while (type != Token.EOF);
     }
 
     /**
@@ -276,7 +436,7 @@ public class GlslParser {
         node.setLine(token.getLine());
         node.setOffset(token.getOffset());
         node.setLength(keyWordToken.getOffset() + keyWordToken.getLength() - node.getOffset());
-        node.setText(String.valueOf(content, node.getOffset(), node.getLength()));
+        AstUtils.updateText(node, content);
 
         parent.addChild(node);
 
@@ -1163,6 +1323,7 @@ public class GlslParser {
         node.setValue(text);
 
         parent.addChild(node);
+        tokens.release(token);
 
         return node;
     }
@@ -1185,6 +1346,7 @@ public class GlslParser {
         node.setName(text);
 
         parent.addChild(node);
+        tokens.release(typeToken);
 
         return node;
     }
@@ -1207,6 +1369,7 @@ public class GlslParser {
         node.setName(text);
 
         parent.addChild(node);
+        tokens.release(nameToken);
 
         return node;
     }
@@ -1230,6 +1393,7 @@ public class GlslParser {
         node.setValue(text);
 
         parent.addChild(node);
+        tokens.release(token);
 
         return node;
     }
@@ -1252,6 +1416,7 @@ public class GlslParser {
         node.setText(text);
 
         parent.addChild(node);
+        tokens.release(token);
 
         return node;
     }
@@ -1280,6 +1445,7 @@ public class GlslParser {
         }
 
         parent.addChild(node);
+        tokens.release(token);
 
         return node;
     }
@@ -1304,6 +1470,7 @@ public class GlslParser {
         node.setEnabled("enable".equals(text));
 
         parent.addChild(node);
+        tokens.release(token);
 
         return node;
     }
@@ -1326,27 +1493,14 @@ public class GlslParser {
         node.setText(text);
 
         parent.addChild(node);
-        readTokens.add(symbolToken);
 
-        return node;
-    }
+        if (previousReadToken != null) {
+            tokens.release(previousReadToken);
+        }
 
-    /**
-     * Gets the current token.
-     *
-     * @return the current token.
-     */
-    private Token getCurrentToken() {
-        return currentToken;
-    }
+        previousReadToken = symbolToken;
 
-    /**
-     * Sets the current token.
-     *
-     * @param currentToken the current token.
-     */
-    private void setCurrentToken(final Token currentToken) {
-        this.currentToken = currentToken;
+        return node;
     }
 
     /**
@@ -1369,7 +1523,7 @@ public class GlslParser {
             throw new RuntimeException("unexpected EOF token");
         }
 
-        return token;
+        return tokens.take(token);
     }
 
     /**
@@ -1391,7 +1545,7 @@ public class GlslParser {
             throw new RuntimeException("unexpected EOF token");
         }
 
-        return token;
+        return tokens.take(token);
     }
 
     /**
@@ -1400,7 +1554,7 @@ public class GlslParser {
      * @return the previous read token.
      */
     public Token getPreviousReadToken() {
-        return readTokens.getLast();
+        return previousReadToken;
     }
 
     /**
@@ -1425,7 +1579,7 @@ public class GlslParser {
             throw new RuntimeException("unexpected EOF token");
         }
 
-        return token;
+        return tokens.take(token);
     }
 
     /**
@@ -1452,7 +1606,7 @@ public class GlslParser {
             throw new IllegalArgumentException("unexpected EOF token");
         }
 
-        return token;
+        return tokens.take(token);
     }
 
     /**
@@ -1480,269 +1634,31 @@ public class GlslParser {
             throw new IllegalArgumentException("unexpected EOF token");
         }
 
-        return token;
+        return tokens.take(token);
     }
 
     /**
-     * Reads a next token.
+     * Reads a next token. The returned token is reused by the next reading, so it should be copied by
+     * {@link GlslTokenStream#take(Token)} to be kept.
      *
      * @param content the content.
      * @return the next token.
      */
     public Token readToken(final char[] content) {
-
-        String text = null;
-
-        while (true) {
-
-            final char ch = content[offset >= content.length ? content.length - 1 : offset];
-            offset++;
-
-            if (splitChars.contains(ch) || offset > content.length) {
-                splitChars = SPLIT_CHARS;
-
-                final Token token = getCurrentToken();
-
-                if (token != null) {
-                    offset--;
-                    setCurrentToken(null);
-                    token.setText(getText(text));
-                    token.setLength(offset - token.getOffset());
-                    return token;
-                }
-
-                final Token newToken = tryToGetToken(text);
-                if (newToken != null) return newToken;
-
-                if (offset >= content.length) {
-                    return Token.EOF_TOKEN;
-                }
-
-                if (ch == '\n') {
-                    line++;
-                }
-
-                return Token.SKIP_TOKEN;
-            }
-
-            if (currentToken == null) {
-                switch (ch) {
-                    case ';': {
-
-                        final Token token = tryToGetToken(text);
-                        if (token != null) return token;
-
-                        return handleCharToken(text, ch, TOKEN_SEMICOLON);
-                    }
-                    case '[': {
-
-                        final Token token = tryToGetToken(text);
-                        if (token != null) return token;
-
-                        return handleCharToken(text, ch, TOKEN_LEFT_BRACKET);
-                    }
-                    case ']': {
-
-                        final Token token = tryToGetToken(text);
-                        if (token != null) return token;
-
-                        return handleCharToken(text, ch, TOKEN_RIGHT_BRACKET);
-                    }
-                    case '(': {
-
-                        final Token token = tryToGetToken(text);
-                        if (token != null) return token;
-
-                        return handleCharToken(text, ch, TOKEN_LEFT_PARENTHESIS);
-                    }
-                    case '.': {
-
-                        if (text != null && isNumber(text)) {
-                            break;
-                        }
-
-                        final Token token = tryToGetToken(text);
-                        if (token != null) return token;
-
-                        return handleCharToken(text, ch, TOKEN_DOT);
-                    }
-                    case ')': {
-                        return handleCharToken(text, ch, TOKEN_RIGHT_PARENTHESIS);
-                    }
-                    case '{': {
-                        return handleCharToken(text, ch, TOKEN_LEFT_BRACE);
-                    }
-                    case '}': {
-                        return handleCharToken(text, ch, TOKEN_RIGHT_BRACE);
-                    }
-                    case '!': {
-                        return handleCharToken(text, ch, TOKEN_EXCLAMATION_MARK);
-                    }
-                    case '=': {
-
-                        final Token token = tryToGetToken(text);
-                        if (token != null) return token;
-
-                        if (text == null && content[offset] != '=') {
-                            return handleCharToken(text, ch, TOKEN_ASSIGN);
-                        }
-                        break;
-                    }
-                    case ':': {
-                        return handleCharToken(text, ch, TOKEN_COLON);
-                    }
-                    case '#': {
-                        return handleCharToken(text, ch, TOKEN_PREPROCESSOR);
-                    }
-                    case '<':
-                    case '>': {
-                        if (content[offset] != '=') {
-                            return handleCharToken(text, ch, TOKEN_COMPARE);
-                        }
-                    }
-                }
-            }
-
-            if (text == null) {
-                text = Character.toString(ch);
-            } else {
-                text += ch;
-            }
-
-            switch (ch) {
-                case '"': {
-
-                    final Token currentToken = getCurrentToken();
-                    if (currentToken != null) {
-                        currentToken.setText(getText(text));
-                        currentToken.setLength(offset - currentToken.getOffset());
-                        setCurrentToken(null);
-                        return currentToken;
-                    }
-
-                    setCurrentToken(new Token(TOKEN_STRING, line, offset - 1));
-                    continue;
-                }
-            }
-
-            if (currentToken != null) {
-                continue;
-            }
-
-            if ("||".equals(text)) {
-                return new Token(TOKEN_OR, offset - text.length(), line, text);
-            } else if ("&&".equals(text)) {
-                return new Token(TOKEN_AND, offset - text.length(), line, text);
-            } else if (">=".equals(text)) {
-                return new Token(TOKEN_COMPARE, offset - text.length(), line, text);
-            } else if ("<=".equals(text)) {
-                return new Token(TOKEN_COMPARE, offset - text.length(), line, text);
-            } else if ("==".equals(text)) {
-                return new Token(TOKEN_COMPARE, offset - text.length(), line, text);
-            } else if ("-=".equals(text)) {
-                return new Token(TOKEN_ASSIGN, offset - text.length(), line, text);
-            } else if ("+=".equals(text)) {
-                return new Token(TOKEN_ASSIGN, offset - text.length(), line, text);
-            } else if ("*=".equals(text)) {
-                return new Token(TOKEN_ASSIGN, offset - text.length(), line, text);
-            } else if ("/=".equals(text)) {
-                return new Token(TOKEN_ASSIGN, offset - text.length(), line, text);
-            } else if ("//".equals(text)) {
-                splitChars = SINGLE_COMMENT_SPLIT_CHARS;
-                setCurrentToken(new Token(TOKEN_SINGLE_COMMENT, line, offset - 1));
-            }
-        }
-    }
-
-    /**
-     * Try to get keyword/word token.
-     *
-     * @param text the current text.
-     * @return the token or null.
-     */
-    private Token tryToGetToken(final String text) {
-
-        if (KEYWORDS.contains(text)) {
-            offset--;
-            return new Token(TOKEN_KEYWORD, offset - text.length(), line, text);
-        } else if (isWord(text)) {
-            offset--;
-            return new Token(TOKEN_WORD, offset - text.length(), line, text);
-        }
-        return null;
-    }
-
-    /**
-     * Build a char token.
-     *
-     * @param text          the text of this token.
-     * @param ch            the symbol of this token.
-     * @param charTokenType the type of this token.
-     * @return the new token.
-     */
-    private Token handleCharToken(final String text, final char ch, final int charTokenType) {
-
-        if (isWord(text)) {
-            offset--;
-            return new Token(TOKEN_WORD, offset - text.length(), line, text);
-        }
-
-        return new Token(charTokenType, offset - 1, line, Character.toString(ch));
-    }
-
-    /**
-     * Checks the text.
-     *
-     * @param text the text.
-     * @return true if the text is number or is word.
-     */
-    private boolean isWord(final String text) {
-
-        if (text == null || text.isEmpty()) {
-            return false;
-        }
-
-        if (isNumber(text)) {
-            return true;
-        }
-
-        for (int i = 0, length = text.length(); i < length; i++) {
-            final char ch = text.charAt(i);
-            if (!Character.isLetterOrDigit(ch) && ch != '_') {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    private boolean isNumber(final String text) {
-        if (text == null) return false;
-        try {
-            Double.parseDouble(text);
-            return true;
-        } catch (final NumberFormatException e) {
-        }
-        return false;
-    }
-
-    private String getText(final String text) {
-        return text == null ? "" : text;
+        return tokens.next(content);
     }
 
     /**
      * Save the current state of the parser.
      */
     private void saveState() {
-        savedLine = line;
-        savedOffset = offset;
+        savedPosition = tokens.mark();
     }
 
     /**
      * Restore the saved state of this parser.
      */
     private void restoreState() {
-        line = savedLine;
-        offset = savedOffset;
+        tokens.reset(savedPosition);
     }
 }
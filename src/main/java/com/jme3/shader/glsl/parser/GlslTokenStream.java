@@ -0,0 +1,208 @@
+package com.jme3.shader.glsl.parser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The stream of GLSL tokens. The stream reads all tokens into one reusable cursor token, so skipped tokens don't
+ * allocate anything, and keeps a pool of tokens to take a copy of the cursor when a parser needs to keep a token.
+ * The stream can read tokens from the lexer or from the table of pre-read tokens, the position of the stream is
+ * presented as a mark which can be used to go back.
+ *
+ * @author JavaSaBr
+ */
+public class GlslTokenStream {
+
+    /**
+     * The lexer of GLSL code.
+     */
+    private final GlslLexer lexer;
+
+    /**
+     * The table of interned names.
+     */
+    private final GlslNameTable names;
+
+    /**
+     * The pool of free tokens.
+     */
+    private final Deque<Token> pool;
+
+    /**
+     * The reusable cursor token.
+     */
+    private final Token cursor;
+
+    /**
+     * The table of pre-read tokens or null if tokens are read from the lexer.
+     */
+    private GlslTokenTable table;
+
+    /**
+     * The index of the next token in the table.
+     */
+    private int index;
+
+    public GlslTokenStream() {
+        this.lexer = new GlslLexer();
+        this.names = new GlslNameTable();
+        this.pool = new ArrayDeque<>();
+        this.cursor = new Token(Token.INVALID);
+    }
+
+    /**
+     * Reads a next token into the cursor token.
+     *
+     * @param content the content.
+     * @return the cursor token or the shared EOF/SKIP token.
+     */
+    public Token next(final char[] content) {
+
+        if (table != null) {
+            return nextFromTable(content);
+        }
+
+        final GlslLexer lexer = this.lexer;
+        final int type = lexer.next(content);
+
+        if (type == Token.EOF) {
+            return Token.EOF_TOKEN;
+        } else if (type == Token.SKIP) {
+            return Token.SKIP_TOKEN;
+        }
+
+        final Token cursor = this.cursor;
+        cursor.set(type, lexer.getTokenOffset(), lexer.getTokenLength(), lexer.getTokenLine(), content,
+                lexer.getTokenTextOffset(), names);
+
+        return cursor;
+    }
+
+    /**
+     * Reads a next token from the table into the cursor token.
+     *
+     * @param content the content.
+     * @return the cursor token or the shared EOF token.
+     */
+    private Token nextFromTable(final char[] content) {
+
+        final GlslTokenTable table = this.table;
+        final int index = this.index;
+
+        if (index >= table.size()) {
+            return Token.EOF_TOKEN;
+        }
+
+        this.index = index + 1;
+
+        final Token cursor = this.cursor;
+        cursor.set(table.getType(index), table.getOffset(index), table.getLength(index), table.getLine(index),
+                content, table.getTextOffset(index), names);
+
+        return cursor;
+    }
+
+    /**
+     * Reads all tokens of the content to the table, so next tokens will be read from the table.
+     *
+     * @param content the content.
+     */
+    public void tokenize(final char[] content) {
+        this.table = GlslTokenTable.tokenize(content, lexer);
+        this.index = 0;
+    }
+
+    /**
+     * Takes a copy of the token from the pool of tokens.
+     *
+     * @param token the token to copy.
+     * @return the copy of the token.
+     */
+    public Token take(final Token token) {
+
+        Token copy = pool.pollLast();
+
+        if (copy == null) {
+            copy = new Token(Token.INVALID);
+        }
+
+        copy.copy(token);
+
+        return copy;
+    }
+
+    /**
+     * Releases the token back to the pool of tokens.
+     *
+     * @param token the token.
+     */
+    public void release(final Token token) {
+
+        if (token == cursor || token == Token.EOF_TOKEN || token == Token.SKIP_TOKEN ||
+                token == Token.INVALID_TOKEN) {
+            return;
+        }
+
+        pool.addLast(token);
+    }
+
+    /**
+     * Gets the current offset of the lexer.
+     *
+     * @return the current offset of the lexer.
+     */
+    public int getOffset() {
+        return lexer.getOffset();
+    }
+
+    /**
+     * Gets the current line of the lexer.
+     *
+     * @return the current line of the lexer.
+     */
+    public int getLine() {
+        return lexer.getLine();
+    }
+
+    /**
+     * Moves the lexer of this stream to the position and stops reading tokens from the table.
+     *
+     * @param offset the offset.
+     * @param line   the line.
+     */
+    public void setPosition(final int offset, final int line) {
+        this.table = null;
+        lexer.setOffset(offset);
+        lexer.setLine(line);
+    }
+
+    /**
+     * Gets the mark of the current position of this stream.
+     *
+     * @return the mark of the current position.
+     */
+    public long mark() {
+
+        if (table != null) {
+            return index;
+        }
+
+        return ((long) lexer.getLine() << 32) | (lexer.getOffset() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Moves this stream back to the marked position.
+     *
+     * @param mark the mark of the position.
+     */
+    public void reset(final long mark) {
+
+        if (table != null) {
+            index = (int) mark;
+            return;
+        }
+
+        lexer.setOffset((int) mark);
+        lexer.setLine((int) (mark >>> 32));
+    }
+}
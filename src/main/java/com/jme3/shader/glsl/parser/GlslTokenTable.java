@@ -0,0 +1,144 @@
+package com.jme3.shader.glsl.parser;
+
+import java.util.Arrays;
+
+/**
+ * The table of all tokens of GLSL code. The table keeps tokens as rows of an int array (type, offset, length, line,
+ * text offset), so a parser can read tokens by an index and go back to any read token without lexing the code again.
+ *
+ * @author JavaSaBr
+ */
+public class GlslTokenTable {
+
+    private static final int TYPE = 0;
+    private static final int OFFSET = 1;
+    private static final int LENGTH = 2;
+    private static final int LINE = 3;
+    private static final int TEXT_OFFSET = 4;
+
+    /**
+     * The count of ints per token.
+     */
+    private static final int STRIDE = 5;
+
+    /**
+     * Reads all tokens of the content to a new table, skipped tokens aren't added to the table.
+     *
+     * @param content the content.
+     * @param lexer   the lexer.
+     * @return the table of tokens.
+     */
+    public static GlslTokenTable tokenize(final char[] content, final GlslLexer lexer) {
+
+        final GlslTokenTable table = new GlslTokenTable(Math.max(16, content.length / 4));
+
+        for (int type = lexer.next(content); type != Token.EOF; type = lexer.next(content)) {
+            if (type != Token.SKIP) {
+                table.add(type, lexer.getTokenOffset(), lexer.getTokenLength(), lexer.getTokenLine(),
+                        lexer.getTokenTextOffset());
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * The rows of tokens.
+     */
+    private int[] data;
+
+    /**
+     * The count of tokens.
+     */
+    private int size;
+
+    private GlslTokenTable(final int capacity) {
+        this.data = new int[capacity * STRIDE];
+    }
+
+    /**
+     * Adds the new token to this table.
+     *
+     * @param type       the type.
+     * @param offset     the offset.
+     * @param length     the length.
+     * @param line       the line.
+     * @param textOffset the offset of the text.
+     */
+    private void add(final int type, final int offset, final int length, final int line, final int textOffset) {
+
+        final int position = size * STRIDE;
+
+        if (position + STRIDE > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+
+        final int[] data = this.data;
+        data[position + TYPE] = type;
+        data[position + OFFSET] = offset;
+        data[position + LENGTH] = length;
+        data[position + LINE] = line;
+        data[position + TEXT_OFFSET] = textOffset;
+
+        size++;
+    }
+
+    /**
+     * Gets the count of tokens.
+     *
+     * @return the count of tokens.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the type of the token.
+     *
+     * @param index the index of the token.
+     * @return the type.
+     */
+    public int getType(final int index) {
+        return data[index * STRIDE + TYPE];
+    }
+
+    /**
+     * Gets the offset of the token.
+     *
+     * @param index the index of the token.
+     * @return the offset.
+     */
+    public int getOffset(final int index) {
+        return data[index * STRIDE + OFFSET];
+    }
+
+    /**
+     * Gets the length of the token.
+     *
+     * @param index the index of the token.
+     * @return the length.
+     */
+    public int getLength(final int index) {
+        return data[index * STRIDE + LENGTH];
+    }
+
+    /**
+     * Gets the line of the token.
+     *
+     * @param index the index of the token.
+     * @return the line.
+     */
+    public int getLine(final int index) {
+        return data[index * STRIDE + LINE];
+    }
+
+    /**
+     * Gets the offset of the text of the token.
+     *
+     * @param index the index of the token.
+     * @return the offset of the text.
+     */
+    public int getTextOffset(final int index) {
+        return data[index * STRIDE + TEXT_OFFSET];
+    }
+}
@@ -40,6 +40,21 @@ public class Token {
      */
     private int type;
 
+    /**
+     * The source content to build the text.
+     */
+    private char[] source;
+
+    /**
+     * The offset of the text in the source content.
+     */
+    private int textOffset;
+
+    /**
+     * The table to intern names.
+     */
+    private GlslNameTable names;
+
     private Token() {
         this(0, "INVALID");
     }
@@ -65,11 +80,23 @@ public class Token {
     }
 
     /**
-     * Gets the text.
+     * Gets the text, the text is built from the source content only by the first request.
      *
      * @return the text.
      */
     public String getText() {
+
+        if (text == null && source != null) {
+
+            final int textLength = offset + length - textOffset;
+
+            if (names != null && (type == GlslParser.TOKEN_WORD || type == GlslParser.TOKEN_KEYWORD)) {
+                text = names.get(source, textOffset, textLength);
+            } else {
+                text = String.valueOf(source, textOffset, textLength);
+            }
+        }
+
         return text;
     }
 
@@ -145,10 +172,49 @@ public class Token {
         this.offset = offset;
     }
 
+    /**
+     * Updates this token to present a part of the source content.
+     *
+     * @param type       the type.
+     * @param offset     the offset.
+     * @param length     the length.
+     * @param line       the line.
+     * @param source     the source content.
+     * @param textOffset the offset of the text in the source content.
+     * @param names      the table to intern names or null.
+     */
+    void set(final int type, final int offset, final int length, final int line, final char[] source,
+             final int textOffset, final GlslNameTable names) {
+        this.text = null;
+        this.type = type;
+        this.offset = offset;
+        this.length = length;
+        this.line = line;
+        this.source = source;
+        this.textOffset = textOffset;
+        this.names = names;
+    }
+
+    /**
+     * Copies all fields from the other token.
+     *
+     * @param other the other token.
+     */
+    void copy(final Token other) {
+        this.text = other.text;
+        this.type = other.type;
+        this.offset = other.offset;
+        this.length = other.length;
+        this.line = other.line;
+        this.source = other.source;
+        this.textOffset = other.textOffset;
+        this.names = other.names;
+    }
+
     @Override
     public String toString() {
         return "Token:\n" +
-                "  text = '" + text + "\'\n" +
+                "  text = '" + getText() + "\'\n" +
                 "  offset = " + offset + "\n" +
                 "  length = " + length + "\n" +
                 "  line = " + line + "\n" +
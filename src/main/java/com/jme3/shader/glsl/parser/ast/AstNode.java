@@ -31,6 +31,11 @@ public class AstNode {
      */
     private String text;
 
+    /**
+     * The source content to take the text from.
+     */
+    private char[] source;
+
     /**
      * The line.
      */
@@ -161,6 +166,27 @@ public class AstNode {
      */
     public void setText(final String text) {
         this.text = text;
+        this.source = null;
+    }
+
+    /**
+     * Sets the source content to take the text from by the offset and the length of this node, the text is built only
+     * on the first access.
+     *
+     * @param source the source content.
+     */
+    public void setSource(final char[] source) {
+        this.source = source;
+        this.text = null;
+    }
+
+    /**
+     * Gets the source content to take the text from.
+     *
+     * @return the source content or null.
+     */
+    public char[] getSource() {
+        return source;
     }
 
     /**
@@ -169,6 +195,11 @@ public class AstNode {
      * @return the text.
      */
     public String getText() {
+
+        if (text == null && source != null) {
+            text = String.valueOf(source, offset, length);
+        }
+
         return text;
     }
 
@@ -1,5 +1,15 @@
 package com.jme3.shader.glsl.parser.ast.declaration;
 
+import com.jme3.shader.glsl.parser.GlslIdentifierTable;
+import com.jme3.shader.glsl.parser.ast.AstNode;
+import com.jme3.shader.glsl.parser.ast.util.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * The AST node to present a file.
  *
@@ -12,6 +22,16 @@ public class FileDeclarationAstNode extends DeclarationAstNode {
      */
     private String path;
 
+    /**
+     * The index of all nodes of this file by their types in the document order.
+     */
+    private volatile Map<Class<?>, List<AstNode>> typeIndex;
+
+    /**
+     * The table of all identifier occurrences of this file.
+     */
+    private volatile GlslIdentifierTable identifiers;
+
     /**
      * Gets the path to the file.
      *
@@ -30,6 +50,112 @@ public class FileDeclarationAstNode extends DeclarationAstNode {
         this.path = path;
     }
 
+    @Override
+    public void setText(final String text) {
+        super.setText(text);
+        identifiers = null;
+    }
+
+    @Override
+    public void addChild(final AstNode child) {
+        super.addChild(child);
+        invalidateTypeIndex();
+    }
+
+    @Override
+    public void removeChild(final AstNode child) {
+        super.removeChild(child);
+        invalidateTypeIndex();
+    }
+
+    /**
+     * Resets the index of nodes by their types and the table of identifiers, it should be called after changing the
+     * tree of this file.
+     */
+    public void invalidateTypeIndex() {
+        typeIndex = null;
+        identifiers = null;
+    }
+
+    /**
+     * Gets the table of all identifier occurrences of this file. The table is built on the first call.
+     *
+     * @return the table of identifiers.
+     */
+    public GlslIdentifierTable getIdentifiers() {
+
+        GlslIdentifierTable identifiers = this.identifiers;
+
+        if (identifiers == null) {
+            this.identifiers = identifiers = GlslIdentifierTable.build(this);
+        }
+
+        return identifiers;
+    }
+
+    /**
+     * Gets all nodes of this file which are instances of the class in the document order. The index of nodes is
+     * built on the first call.
+     *
+     * @param type the class of nodes.
+     * @param <T>  the type of nodes.
+     * @return the unmodifiable list of found nodes.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends AstNode> List<T> getNodesByType(final Class<T> type) {
+
+        Map<Class<?>, List<AstNode>> typeIndex = this.typeIndex;
+
+        if (typeIndex == null) {
+            this.typeIndex = typeIndex = buildTypeIndex();
+        }
+
+        final List<AstNode> nodes = typeIndex.get(type);
+
+        if (nodes == null) {
+            return Collections.emptyList();
+        }
+
+        return (List<T>) nodes;
+    }
+
+    /**
+     * Builds the index of all nodes of this file by their classes and super classes.
+     *
+     * @return the index of nodes.
+     */
+    private Map<Class<?>, List<AstNode>> buildTypeIndex() {
+
+        final Map<Class<?>, List<AstNode>> typeIndex = new HashMap<>();
+
+        visit(new Predicate<AstNode>() {
+
+            @Override
+            public boolean test(final AstNode node) {
+
+                for (Class<?> type = node.getClass(); type != Object.class; type = type.getSuperclass()) {
+
+                    List<AstNode> nodes = typeIndex.get(type);
+
+                    if (nodes == null) {
+                        nodes = new ArrayList<>();
+                        typeIndex.put(type, nodes);
+                    }
+
+                    nodes.add(node);
+                }
+
+                return true;
+            }
+        });
+
+        for (final Map.Entry<Class<?>, List<AstNode>> entry : typeIndex.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        return typeIndex;
+    }
+
     @Override
     protected String getStringAttributes() {
         return getPath();
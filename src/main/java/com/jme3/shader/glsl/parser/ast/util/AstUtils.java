@@ -8,11 +8,10 @@ import com.jme3.shader.glsl.parser.ast.AstNode;
 import com.jme3.shader.glsl.parser.ast.NameAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.ExternalFieldDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.ExternalFieldDeclarationAstNode.ExternalFieldType;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.declaration.MethodDeclarationAstNode;
 import com.jme3.shader.glsl.parser.ast.preprocessor.ExtensionPreprocessorAstNode;
-import com.jme3.shader.glsl.parser.ast.preprocessor.ImportPreprocessorAstNode;
 import com.jme3.shader.glsl.parser.ast.value.DefineValueAstNode;
-import com.jme3.shader.glsl.parser.ast.value.StringValueAstNode;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -79,7 +78,7 @@ public class AstUtils {
         public boolean test(final GlslParser parser, final char[] content) {
 
             Token token = parser.getPreviousReadToken();
-            if (token.getType() == GlslParser.TOKEN_SEMICOLON) {
+            if (token != null && token.getType() == GlslParser.TOKEN_SEMICOLON) {
                 return true;
             }
 
@@ -114,6 +113,11 @@ public class AstUtils {
     public static <T extends AstNode> List<T> findAllByType(final AstNode node, final List<T> result,
                                                             final Class<T> type) {
 
+        if (node instanceof FileDeclarationAstNode && !type.isInterface()) {
+            result.addAll(((FileDeclarationAstNode) node).getNodesByType(type));
+            return result;
+        }
+
         node.visit(new Predicate<AstNode>() {
 
             @Override
@@ -205,6 +209,45 @@ public class AstUtils {
         updateText(node, content);
     }
 
+    /**
+     * Moves the node and all its children by the deltas. Nodes without a position (zero offset or zero line) keep
+     * it.
+     *
+     * @param node        the node.
+     * @param offsetDelta the offset delta.
+     * @param lineDelta   the line delta.
+     * @param content     the new content to take texts of nodes from.
+     */
+    public static void shift(final AstNode node, final int offsetDelta, final int lineDelta, final char[] content) {
+
+        shiftNode(node, offsetDelta, lineDelta, content);
+
+        node.visit(new Predicate<AstNode>() {
+
+            @Override
+            public boolean test(final AstNode node) {
+                shiftNode(node, offsetDelta, lineDelta, content);
+                return true;
+            }
+        });
+    }
+
+    private static void shiftNode(final AstNode node, final int offsetDelta, final int lineDelta,
+                                  final char[] content) {
+
+        if (node.getOffset() != 0) {
+            node.setOffset(node.getOffset() + offsetDelta);
+        }
+
+        if (node.getSource() != null) {
+            node.setSource(content);
+        }
+
+        if (node.getLine() != 0) {
+            node.setLine(node.getLine() + lineDelta);
+        }
+    }
+
     /**
      * Updates text of the node.
      *
@@ -212,7 +255,16 @@ public class AstUtils {
      * @param content the content.
      */
     public static void updateText(final AstNode node, final char[] content) {
-        node.setText(String.valueOf(content, node.getOffset(), node.getLength()));
+
+        final int offset = node.getOffset();
+        final int length = node.getLength();
+
+        if (offset < 0 || length < 0 || offset + length > content.length) {
+            throw new StringIndexOutOfBoundsException("offset " + offset + ", count " + length + ", length " +
+                    content.length);
+        }
+
+        node.setSource(content);
     }
 
     /**
@@ -280,36 +332,6 @@ public class AstUtils {
         }
     }
 
-    /**
-     * Removed duplicates of the imports.
-     *
-     * @param importNodes the imports.
-     */
-    public static void removeImportDuplicates(final List<ImportPreprocessorAstNode> importNodes) {
-
-        if (importNodes.size() < 2) {
-            return;
-        }
-
-        for (Iterator<ImportPreprocessorAstNode> iterator = importNodes.iterator(); iterator.hasNext(); ) {
-
-            final ImportPreprocessorAstNode importNode = iterator.next();
-            final StringValueAstNode value = importNode.getValue();
-
-            boolean isDuplicate = false;
-            for (final ImportPreprocessorAstNode other : importNodes) {
-                if (other != importNode && Objects.equals(value, other.getValue())) {
-                    isDuplicate = true;
-                    break;
-                }
-            }
-
-            if (isDuplicate) {
-                iterator.remove();
-            }
-        }
-    }
-
     /**
      * Removed duplicates of the define values.
      *
@@ -1,8 +1,12 @@
 package com.ss.editor.shader.nodes;
 
+import static com.ss.editor.util.EditorUtil.getAssetFile;
+import static com.ss.editor.util.EditorUtil.toAssetPath;
 import com.jme3.asset.AssetManager;
 import com.jme3.shader.glsl.AstGlsl150ShaderGenerator;
 import com.jme3.shader.glsl.AstShaderGenerator;
+import com.jme3.shader.glsl.ShaderGenerationHistory;
+import com.jme3.shader.glsl.ShaderGenerationMetrics;
 import com.ss.editor.Editor;
 import com.ss.editor.FileExtensions;
 import com.ss.editor.annotation.FXThread;
@@ -22,12 +26,18 @@ import com.ss.editor.ui.component.editor.EditorRegistry;
 import com.ss.editor.ui.control.property.builder.PropertyBuilderRegistry;
 import com.ss.editor.ui.control.tree.node.TreeNodeFactoryRegistry;
 import com.ss.editor.ui.css.CSSRegistry;
+import com.ss.editor.ui.event.FXEventManager;
+import com.ss.editor.ui.event.impl.FileChangedEvent;
 import com.ss.editor.ui.preview.FilePreviewFactoryRegistry;
+import com.ss.rlib.logging.Logger;
+import com.ss.rlib.logging.LoggerManager;
 import com.ss.rlib.plugin.PluginContainer;
 import com.ss.rlib.plugin.PluginSystem;
 import com.ss.rlib.plugin.annotation.PluginDescription;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.file.Path;
+
 /**
  * The implementation of an editor plugin.
  *
@@ -42,9 +52,41 @@ import org.jetbrains.annotations.NotNull;
 )
 public class ShaderNodesEditorPlugin extends EditorPlugin {
 
+    @NotNull
+    private static final Logger LOGGER = LoggerManager.getLogger(ShaderNodesEditorPlugin.class);
+
     @NotNull
     public static final String PROJECT_FILE_EXTENSION = "j3snm";
 
+    /**
+     * The count of last shader builds in the log summary.
+     */
+    private static final int GENERATION_HISTORY_SIZE = 20;
+
+    /**
+     * The history of last shader builds.
+     */
+    @NotNull
+    private static final ShaderGenerationHistory GENERATION_HISTORY =
+            new ShaderGenerationHistory(GENERATION_HISTORY_SIZE) {
+
+                @Override
+                public void onBuildFinished(@NotNull final ShaderGenerationMetrics metrics) {
+                    super.onBuildFinished(metrics);
+                    LOGGER.debug(this, ShaderGenerationHistory::getSummary);
+                }
+            };
+
+    /**
+     * Gets the history of last shader builds of the shader generator of the editor.
+     *
+     * @return the history of last shader builds.
+     */
+    @FromAnyThread
+    public static @NotNull ShaderGenerationHistory getGenerationHistory() {
+        return GENERATION_HISTORY;
+    }
+
     public ShaderNodesEditorPlugin(@NotNull final PluginContainer pluginContainer) {
         super(pluginContainer);
     }
@@ -52,9 +94,10 @@ public class ShaderNodesEditorPlugin extends EditorPlugin {
     @Override
     public void onAfterCreateJMEContext(@NotNull final PluginSystem pluginSystem) {
         super.onAfterCreateJMEContext(pluginSystem);
-        System.setProperty(AstShaderGenerator.PROP_USE_CASE, "false");
         final AssetManager assetManager = Editor.getInstance().getAssetManager();
-        assetManager.setShaderGenerator(new AstGlsl150ShaderGenerator(assetManager));
+        final AstGlsl150ShaderGenerator shaderGenerator = new AstGlsl150ShaderGenerator(assetManager);
+        shaderGenerator.setGenerationListener(GENERATION_HISTORY);
+        assetManager.setShaderGenerator(shaderGenerator);
     }
 
     @FXThread
@@ -64,6 +107,25 @@ public class ShaderNodesEditorPlugin extends EditorPlugin {
         final ResourceManager resourceManager = ResourceManager.getInstance();
         resourceManager.registerInterestedFileType(FileExtensions.JME_SHADER_NODE);
         resourceManager.registerInterestedFileType(FileExtensions.GLSL_LIB);
+
+        final FXEventManager eventManager = FXEventManager.getInstance();
+        eventManager.addEventHandler(FileChangedEvent.EVENT_TYPE, event -> invalidate((FileChangedEvent) event));
+    }
+
+    /**
+     * Invalidates the changed file in the shared cache of parsed shader sources, so the shader generator reads it
+     * again.
+     *
+     * @param event the event about the changed file.
+     */
+    @FXThread
+    private void invalidate(@NotNull final FileChangedEvent event) {
+
+        final Path assetFile = getAssetFile(event.getFile());
+
+        if (assetFile != null) {
+            AstShaderGenerator.invalidate(toAssetPath(assetFile));
+        }
     }
 
     @Override
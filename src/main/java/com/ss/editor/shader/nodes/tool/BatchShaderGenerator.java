@@ -0,0 +1,109 @@
+package com.ss.editor.shader.nodes.tool;
+
+import com.jme3.shader.glsl.AstGlsl100ShaderGenerator;
+import com.jme3.shader.glsl.AstGlsl150ShaderGenerator;
+import com.jme3.shader.glsl.AstShaderGenerator;
+import com.jme3.shader.glsl.HeadlessAssetManager;
+import com.jme3.shader.glsl.ShaderBatchGenerator;
+import com.ss.editor.shader.nodes.ShaderNodesEditorPlugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The command line tool to generate all shaders of all material definitions and shader nodes projects of an assets
+ * folder without the editor and a renderer, e.g. to check them on CI and to ship pre-baked shaders.
+ * <p>
+ * Usage: BatchShaderGenerator [--glsl100] [--threads N] [--max-permuted-defines N] [assets folder] [output folder]
+ * <p>
+ * The tool exits with the code 1 if any material definition can't be loaded or any shader can't be generated and
+ * with the code 2 if the arguments are wrong.
+ *
+ * @author JavaSaBr
+ */
+public class BatchShaderGenerator {
+
+    @NotNull
+    private static final String USAGE = "Usage: BatchShaderGenerator [--glsl100] [--threads N] " +
+            "[--max-permuted-defines N] <assets folder> <output folder>";
+
+    @NotNull
+    private static final List<String> EXTENSIONS =
+            Arrays.asList("j3md", ShaderNodesEditorPlugin.PROJECT_FILE_EXTENSION);
+
+    public static void main(@NotNull final String[] args) throws IOException {
+
+        boolean glsl100 = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPermutedDefines = 8;
+        Path root = null;
+        Path output = null;
+
+        try {
+
+            for (int i = 0; i < args.length; i++) {
+
+                final String arg = args[i];
+
+                if ("--glsl100".equals(arg)) {
+                    glsl100 = true;
+                } else if ("--threads".equals(arg) && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("--max-permuted-defines".equals(arg) && i + 1 < args.length) {
+                    maxPermutedDefines = Integer.parseInt(args[++i]);
+                } else if (root == null && !arg.startsWith("--")) {
+                    root = Paths.get(arg);
+                } else if (output == null && !arg.startsWith("--")) {
+                    output = Paths.get(arg);
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                }
+            }
+
+            if (root == null || output == null) {
+                throw new IllegalArgumentException("The assets folder and the output folder are required.");
+            } else if (!Files.isDirectory(root)) {
+                throw new IllegalArgumentException("The assets folder " + root + " doesn't exist.");
+            }
+
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        final HeadlessAssetManager assetManager = new HeadlessAssetManager(root);
+        assetManager.registerLoader(ShaderNodesProjectLoader.class, ShaderNodesEditorPlugin.PROJECT_FILE_EXTENSION);
+
+        final AstShaderGenerator generator = glsl100 ? new AstGlsl100ShaderGenerator(assetManager) :
+                new AstGlsl150ShaderGenerator(assetManager);
+
+        final ShaderBatchGenerator batchGenerator = new ShaderBatchGenerator(assetManager, generator)
+                .setThreads(threads)
+                .setMaxPermutedDefines(maxPermutedDefines);
+
+        final List<ShaderBatchGenerator.Result> results = batchGenerator.generate(root, output, EXTENSIONS);
+
+        int failed = 0;
+
+        for (final ShaderBatchGenerator.Result result : results) {
+            if (result.getError() != null) {
+                System.err.println(result);
+                failed++;
+            }
+        }
+
+        System.out.println("Generated " + (results.size() - failed) + " of " + results.size() + " shaders, " +
+                "the report is " + output.resolve(ShaderBatchGenerator.REPORT_FILE));
+
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.ss.editor.shader.nodes.tool;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLoader;
+import com.jme3.asset.plugins.StreamAssetInfo;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.material.MaterialDef;
+import com.jme3.material.plugins.J3MLoader;
+import com.ss.editor.shader.nodes.model.shader.node.ShaderNodesProject;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The loader of the material definition of a shader nodes project file, so shader nodes projects can be loaded by
+ * an asset manager without the editor.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderNodesProjectLoader implements AssetLoader {
+
+    @Override
+    public @NotNull MaterialDef load(@NotNull final AssetInfo assetInfo) throws IOException {
+
+        final BinaryImporter importer = BinaryImporter.getInstance();
+        importer.setAssetManager(assetInfo.getManager());
+
+        final ShaderNodesProject project;
+
+        try (final InputStream in = assetInfo.openStream()) {
+            project = (ShaderNodesProject) importer.load(in);
+        }
+
+        final String materialDefContent = project.getMaterialDefContent();
+
+        if (materialDefContent == null) {
+            throw new IOException("The shader nodes project " + assetInfo.getKey() +
+                    " doesn't have a material definition.");
+        }
+
+        final ByteArrayInputStream materialDefStream =
+                new ByteArrayInputStream(materialDefContent.getBytes(StandardCharsets.UTF_8));
+
+        final AssetKey<MaterialDef> key = new AssetKey<>(assetInfo.getKey().getName());
+        final StreamAssetInfo materialDefInfo = new StreamAssetInfo(assetInfo.getManager(), key, materialDefStream);
+
+        return (MaterialDef) new J3MLoader().load(materialDefInfo);
+    }
+}
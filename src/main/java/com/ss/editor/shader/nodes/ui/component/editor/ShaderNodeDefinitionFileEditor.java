@@ -5,6 +5,7 @@ import static com.ss.rlib.util.ObjectUtils.notNull;
 import com.jme3.asset.AssetManager;
 import com.jme3.asset.ShaderNodeDefinitionKey;
 import com.jme3.shader.ShaderNodeDefinition;
+import com.jme3.shader.glsl.AstShaderGenerator;
 import com.jme3.shader.glsl.parser.GlslParser;
 import com.ss.editor.FileExtensions;
 import com.ss.editor.annotation.BackgroundThread;
@@ -386,6 +387,8 @@ public class ShaderNodeDefinitionFileEditor extends BaseFileEditorWithSplitRight
                 throw new RuntimeException(e);
             }
 
+            AstShaderGenerator.invalidate(path);
+
             glslOriginalContent.put(path, content);
         });
     }
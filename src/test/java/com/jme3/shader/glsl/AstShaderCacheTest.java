@@ -0,0 +1,55 @@
+package com.jme3.shader.glsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jme3.shader.glsl.parser.GlslParser;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of the cache of parsed shader sources.
+ *
+ * @author JavaSaBr
+ */
+public class AstShaderCacheTest {
+
+    private static FileDeclarationAstNode parse(final String path, final String code) {
+        return GlslParser.newInstance(true).parseFileDeclaration(path, code);
+    }
+
+    @Test
+    public void shouldNotPutSourceWhichWasReadBeforeInvalidation() {
+
+        final AstShaderCache cache = new AstShaderCache(1024);
+        final long invalidations = cache.getInvalidations();
+        final FileDeclarationAstNode source = parse("A.glsllib", "float a() { return 1.0; }\n");
+
+        cache.invalidate("A.glsllib");
+
+        assertFalse(cache.put("A.glsllib", source, invalidations));
+        assertNull(cache.get("A.glsllib"));
+
+        assertTrue(cache.put("A.glsllib", source, cache.getInvalidations()));
+        assertSame(source, cache.get("A.glsllib"));
+    }
+
+    @Test
+    public void shouldForgetInvalidatedSources() {
+
+        final AstShaderCache cache = new AstShaderCache(1024);
+
+        for (int i = 0; i < 100; i++) {
+            final String path = "Lib" + i + ".glsllib";
+            cache.put(path, parse(path, "float a() { return 1.0; }\n"), cache.getInvalidations());
+            cache.invalidate(path);
+        }
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+        assertEquals(100, cache.getInvalidations());
+    }
+}
@@ -0,0 +1,234 @@
+package com.jme3.shader.glsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.material.MaterialDef;
+import com.jme3.material.TechniqueDef;
+import com.jme3.shader.Shader;
+import com.jme3.shader.Shader.ShaderSource;
+import com.jme3.shader.Shader.ShaderType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The tests of the AST shader generator.
+ *
+ * @author JavaSaBr
+ */
+public class AstShaderGeneratorTest {
+
+    private static TechniqueDef loadTechniqueDef(final AssetManager assetManager, final String path) {
+        final MaterialDef materialDef = (MaterialDef) assetManager.loadAsset(new AssetKey<>(path));
+        return materialDef.getTechniqueDefs("Default").get(0);
+    }
+
+    private static String getFragmentSource(final Shader shader) {
+
+        for (final ShaderSource source : shader.getSources()) {
+            if (source.getType() == ShaderType.Fragment) {
+                return source.getSource();
+            }
+        }
+
+        throw new IllegalStateException("The shader doesn't have a fragment source.");
+    }
+
+    private static void writeScaleNode(final Path root, final String scale) throws IOException {
+        writeScaleNode(root, scale, "result = color * scale;");
+    }
+
+    private static void writeScaleNode(final Path root, final String scale, final String body) throws IOException {
+
+        final Path folder = Files.createDirectories(root.resolve("Scale"));
+
+        Files.write(folder.resolve("Scale.j3sn"), ("ShaderNodeDefinitions {\n" +
+                "    ShaderNodeDefinition Scale {\n" +
+                "        Type: Fragment\n" +
+                "        Shader GLSL100: Scale/Scale.frag\n" +
+                "        Input {\n" +
+                "            vec4 color\n" +
+                "            float scale " + scale + "\n" +
+                "        }\n" +
+                "        Output {\n" +
+                "            vec4 result\n" +
+                "        }\n" +
+                "    }\n" +
+                "}\n").getBytes(StandardCharsets.UTF_8));
+
+        Files.write(folder.resolve("Scale.frag"), ("void main() {\n" +
+                "    " + body + "\n" +
+                "}\n").getBytes(StandardCharsets.UTF_8));
+
+        // the parsed sources are cached by asset paths, which are the same in all temp roots
+        AstShaderGenerator.invalidate("Scale/Scale.frag");
+
+        Files.write(folder.resolve("Scale.j3md"), ("MaterialDef Scale {\n" +
+                "    MaterialParameters {\n" +
+                "        Vector4 Color\n" +
+                "    }\n" +
+                "    Technique {\n" +
+                "        WorldParameters {\n" +
+                "            WorldViewProjectionMatrix\n" +
+                "        }\n" +
+                "        VertexShaderNodes {\n" +
+                "            ShaderNode CommonVert {\n" +
+                "                Definition : CommonVert : Common/MatDefs/ShaderNodes/Common/CommonVert.j3sn\n" +
+                "                InputMappings {\n" +
+                "                    worldViewProjectionMatrix = WorldParam.WorldViewProjectionMatrix\n" +
+                "                    modelPosition = Global.position.xyz\n" +
+                "                }\n" +
+                "                OutputMappings {\n" +
+                "                    Global.position = projPosition\n" +
+                "                }\n" +
+                "            }\n" +
+                "        }\n" +
+                "        FragmentShaderNodes {\n" +
+                "            ShaderNode Scale {\n" +
+                "                Definition : Scale : Scale/Scale.j3sn\n" +
+                "                InputMappings {\n" +
+                "                    color = MatParam.Color\n" +
+                "                }\n" +
+                "                OutputMappings {\n" +
+                "                    Global.color = result\n" +
+                "                }\n" +
+                "            }\n" +
+                "        }\n" +
+                "    }\n" +
+                "}\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldRegenerateShaderAfterChangeOfDefinitionInput() throws IOException {
+
+        final Path root = Files.createTempDirectory("shader-definition");
+        final AssetManager assetManager = new HeadlessAssetManager(root);
+        final AstShaderGenerator generator = new AstGlsl150ShaderGenerator(assetManager);
+
+        writeScaleNode(root, "1.0");
+
+        final GenerationContext first = generator.newContext(loadTechniqueDef(assetManager, "Scale/Scale.j3md"));
+        final String firstSource = getFragmentSource(first.generate(""));
+        first.release();
+
+        writeScaleNode(root, "7.0");
+        assetManager.clearCache();
+
+        final GenerationContext second = generator.newContext(loadTechniqueDef(assetManager, "Scale/Scale.j3md"));
+        final String secondSource = getFragmentSource(second.generate(""));
+        second.release();
+
+        assertTrue(firstSource.contains("float Scale_scale = 1.0;"), firstSource);
+        assertTrue(secondSource.contains("float Scale_scale = 7.0;"), secondSource);
+        assertEquals(0, generator.getShaderCache().getHits());
+    }
+
+    private static String generateFoldedScaleNode(final String body) throws IOException {
+
+        final Path root = Files.createTempDirectory("shader-folding");
+        final AssetManager assetManager = new HeadlessAssetManager(root);
+        final AstShaderGenerator generator = new AstGlsl150ShaderGenerator(assetManager);
+        generator.setFoldConstants(true);
+
+        writeScaleNode(root, "2.0", body);
+
+        final GenerationContext context = generator.newContext(loadTechniqueDef(assetManager, "Scale/Scale.j3md"));
+
+        try {
+            return getFragmentSource(context.generate(""));
+        } finally {
+            context.release();
+        }
+    }
+
+    @Test
+    public void shouldFoldNotWrittenInput() throws IOException {
+
+        final String source = generateFoldedScaleNode("result = color * scale;");
+
+        assertTrue(source.contains("Scale_color * 2.0;"), source);
+        assertFalse(source.contains("Scale_scale"), source);
+    }
+
+    @Test
+    public void shouldNotFoldSwizzledInput() throws IOException {
+
+        final String source = generateFoldedScaleNode("result = color * scale.x;");
+
+        assertTrue(source.contains("float Scale_scale = 2.0;"), source);
+        assertTrue(source.contains("Scale_color * Scale_scale.x;"), source);
+    }
+
+    @Test
+    public void shouldNotFoldWrittenInput() throws IOException {
+
+        final String source = generateFoldedScaleNode("scale *= 0.5;\n    result = color * scale;");
+
+        assertTrue(source.contains("float Scale_scale = 2.0;"), source);
+        assertTrue(source.contains("Scale_scale *= 0.5;"), source);
+    }
+
+    @Test
+    public void shouldEliminateUnusedFunctions() {
+
+        final AssetManager assetManager = new HeadlessAssetManager();
+        final TechniqueDef techniqueDef = loadTechniqueDef(assetManager, "Test/DeadCode/DeadCode.j3md");
+
+        final AstShaderGenerator generator = new AstGlsl150ShaderGenerator(assetManager);
+        generator.setEliminateDeadCode(true);
+
+        final GenerationContext context = generator.newContext(techniqueDef);
+        final String source = getFragmentSource(context.generate(""));
+        context.release();
+
+        assertTrue(source.contains("vec4 usedFunction(vec4 value)"), source);
+        assertTrue(source.contains("usedHelper(vec4 value)"), source);
+        assertFalse(source.contains("unusedFunction"), source);
+        assertFalse(source.contains("unusedHelper"), source);
+    }
+
+    @Test
+    public void shouldRegenerateShaderAfterInvalidationOfImport() {
+
+        final AssetManager assetManager = new HeadlessAssetManager();
+        final TechniqueDef techniqueDef = loadTechniqueDef(assetManager, "Test/Import/Import.j3md");
+
+        final AstShaderGenerator generator = new AstGlsl150ShaderGenerator(assetManager);
+        final ShaderOutputCache shaderCache = generator.getShaderCache();
+        final GenerationContext context = generator.newContext(techniqueDef);
+
+        context.generate("");
+        context.generate("");
+
+        assertEquals(1, shaderCache.getMisses());
+        assertEquals(1, shaderCache.getHits());
+
+        AstShaderGenerator.invalidate("Test/Import/Lib.glsllib");
+        context.generate("");
+        context.release();
+
+        assertEquals(2, shaderCache.getMisses());
+    }
+
+    @Test
+    public void shouldReportCyclicImports() {
+
+        final AssetManager assetManager = new HeadlessAssetManager();
+        final TechniqueDef techniqueDef = loadTechniqueDef(assetManager, "Test/Cycle/Cycle.j3md");
+
+        final AstShaderGenerator generator = new AstGlsl150ShaderGenerator(assetManager);
+        generator.initialize(techniqueDef);
+
+        final RuntimeException exception = assertThrows(RuntimeException.class, () -> generator.generateShader(""));
+
+        assertTrue(exception.getMessage().contains("Found cyclic imports"), exception.getMessage());
+    }
+}
@@ -0,0 +1,132 @@
+package com.jme3.shader.glsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tests of the batch shader generator.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderBatchGeneratorTest {
+
+    @Test
+    public void shouldReportBrokenMaterialsAndGenerateOthers() throws IOException {
+
+        final Path root = Files.createTempDirectory("shader-batch");
+        final Path output = root.resolve("output");
+
+        new ShaderNodeGraphGenerator(1).write(root, "Graph");
+
+        Files.createDirectories(root.resolve("Broken"));
+        Files.write(root.resolve("Broken/Broken.j3md"), ("MaterialDef Broken {\n" +
+                "    Technique {\n" +
+                "        FragmentShaderNodes {\n" +
+                "            ShaderNode Missing {\n" +
+                "                Definition : Missing : Broken/Missing.j3sn\n" +
+                "            }\n" +
+                "        }\n" +
+                "    }\n" +
+                "}\n").getBytes(StandardCharsets.UTF_8));
+
+        // the material with cyclic imports of its shader node sources from the classpath
+        try (final InputStream in = getClass().getResourceAsStream("/Test/Cycle/Cycle.j3md")) {
+            Files.copy(in, root.resolve("Broken/Cycle.j3md"));
+        }
+
+        final HeadlessAssetManager assetManager = new HeadlessAssetManager(root);
+        final ShaderBatchGenerator generator = new ShaderBatchGenerator(assetManager,
+                new AstGlsl150ShaderGenerator(assetManager)).setThreads(2);
+
+        final List<ShaderBatchGenerator.Result> results =
+                generator.generate(root, output, Collections.singletonList("j3md"));
+
+        int generated = 0;
+
+        for (final ShaderBatchGenerator.Result result : results) {
+
+            final String path = result.getMaterialDefPath();
+
+            if (path.equals("Broken/Broken.j3md")) {
+                assertNull(result.getTechniqueName());
+                assertNotNull(result.getError());
+            } else if (path.equals("Broken/Cycle.j3md")) {
+                assertNotNull(result.getError());
+                assertTrue(result.getError().contains("Found cyclic imports"), result.getError());
+            } else {
+                assertNull(result.getError(), result.toString());
+                generated++;
+            }
+        }
+
+        assertTrue(generated > 0);
+        assertTrue(Files.exists(output.resolve(ShaderBatchGenerator.REPORT_FILE)));
+        assertEquals(2, countFailedMaterials(results));
+    }
+
+    @Test
+    public void shouldKeepResultsInPathOrderAndNotifyPreviousListener() throws IOException {
+
+        final Path root = Files.createTempDirectory("shader-batch-order");
+        final Path output = root.resolve("output");
+
+        new ShaderNodeGraphGenerator(2).write(root, "Graph");
+
+        // the broken material goes after the generated one by its path
+        Files.createDirectories(root.resolve("Z"));
+        Files.write(root.resolve("Z/Broken.j3md"), ("MaterialDef Broken {\n" +
+                "    Technique {\n" +
+                "        FragmentShaderNodes {\n" +
+                "            ShaderNode Missing {\n" +
+                "                Definition : Missing : Z/Missing.j3sn\n" +
+                "            }\n" +
+                "        }\n" +
+                "    }\n" +
+                "}\n").getBytes(StandardCharsets.UTF_8));
+
+        final HeadlessAssetManager assetManager = new HeadlessAssetManager(root);
+        final AstShaderGenerator shaderGenerator = new AstGlsl150ShaderGenerator(assetManager);
+        final ShaderGenerationHistory history = new ShaderGenerationHistory(1024);
+        shaderGenerator.setGenerationListener(history);
+
+        final List<ShaderBatchGenerator.Result> results = new ShaderBatchGenerator(assetManager, shaderGenerator)
+                .setThreads(2)
+                .generate(root, output, Collections.singletonList("j3md"));
+
+        assertTrue(results.size() > 1);
+        assertEquals("Z/Broken.j3md", results.get(results.size() - 1).getMaterialDefPath());
+        assertNotNull(results.get(results.size() - 1).getError());
+
+        for (int i = 1; i < results.size(); i++) {
+            final String prev = results.get(i - 1).getMaterialDefPath();
+            assertTrue(prev.compareTo(results.get(i).getMaterialDefPath()) <= 0, results.toString());
+        }
+
+        final long withMetrics = results.stream()
+                .filter(result -> result.getMetrics() != null)
+                .count();
+
+        assertTrue(withMetrics > 0);
+        assertEquals(withMetrics, history.getBuilds().size());
+    }
+
+    private static long countFailedMaterials(final List<ShaderBatchGenerator.Result> results) {
+        return results.stream()
+                .filter(result -> result.getError() != null)
+                .map(ShaderBatchGenerator.Result::getMaterialDefPath)
+                .distinct()
+                .count();
+    }
+}
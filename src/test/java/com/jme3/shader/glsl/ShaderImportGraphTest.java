@@ -0,0 +1,104 @@
+package com.jme3.shader.glsl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jme3.shader.glsl.parser.GlslParser;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tests of the graph of imported shader sources.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderImportGraphTest {
+
+    /**
+     * The loader of sources from the map which caches loaded sources and counts loadings.
+     */
+    private static class MapSourceLoader implements ShaderImportGraph.SourceLoader {
+
+        private final Map<String, String> contents = new HashMap<>();
+        private final Map<String, FileDeclarationAstNode> loaded = new HashMap<>();
+
+        private int loads;
+
+        private void put(final String path, final String content) {
+            contents.put(path, content);
+            loaded.remove(path);
+        }
+
+        @Override
+        public FileDeclarationAstNode load(final String path) {
+            loads++;
+            final FileDeclarationAstNode source = GlslParser.newInstance(true)
+                    .parseFileDeclaration(path, contents.get(path));
+            loaded.put(path, source);
+            return source;
+        }
+
+        @Override
+        public boolean isActual(final String path, final FileDeclarationAstNode source) {
+            return loaded.get(path) == source;
+        }
+    }
+
+    @Test
+    public void shouldResolveImportsInImportOrder() {
+
+        final MapSourceLoader loader = new MapSourceLoader();
+        loader.put("A.glsllib", "#import \"B.glsllib\"\nfloat a() { return b(); }\n");
+        loader.put("B.glsllib", "float b() { return 1.0; }\n");
+
+        final List<FileDeclarationAstNode> sources = new ShaderImportGraph()
+                .resolve(Arrays.asList("A.glsllib"), loader);
+
+        assertEquals(2, sources.size());
+        assertEquals("B.glsllib", sources.get(0).getPath());
+        assertEquals("A.glsllib", sources.get(1).getPath());
+    }
+
+    @Test
+    public void shouldCheckCachedResolutionByLoadedSources() {
+
+        final MapSourceLoader loader = new MapSourceLoader();
+        loader.put("A.glsllib", "#import \"B.glsllib\"\nfloat a() { return b(); }\n");
+        loader.put("B.glsllib", "float b() { return 1.0; }\n");
+
+        final ShaderImportGraph graph = new ShaderImportGraph();
+        final List<FileDeclarationAstNode> first = graph.resolve(Arrays.asList("A.glsllib"), loader);
+        final List<FileDeclarationAstNode> second = graph.resolve(Arrays.asList("A.glsllib"), loader);
+
+        assertSame(first, second);
+        assertEquals(2, loader.loads);
+
+        loader.put("B.glsllib", "float b() { return 2.0; }\n");
+
+        final List<FileDeclarationAstNode> third = graph.resolve(Arrays.asList("A.glsllib"), loader);
+
+        assertNotSame(first, third);
+        assertEquals(4, loader.loads);
+    }
+
+    @Test
+    public void shouldReportCyclicImports() {
+
+        final MapSourceLoader loader = new MapSourceLoader();
+        loader.put("A.glsllib", "#import \"B.glsllib\"\n");
+        loader.put("B.glsllib", "#import \"A.glsllib\"\n");
+
+        final RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> new ShaderImportGraph().resolve(Arrays.asList("A.glsllib"), loader));
+
+        assertTrue(exception.getMessage().contains("Found cyclic imports"), exception.getMessage());
+    }
+}
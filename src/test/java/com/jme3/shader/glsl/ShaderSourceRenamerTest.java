@@ -0,0 +1,99 @@
+package com.jme3.shader.glsl;
+
+import static com.jme3.shader.glsl.AstShaderGenerator.NEXT_DEFINE_CHAR_CHECKER;
+import static com.jme3.shader.glsl.AstShaderGenerator.NEXT_METHOD_CHAR_CHECKER;
+import static com.jme3.shader.glsl.AstShaderGenerator.NEXT_VAR_CHAR_CHECKER;
+import static com.jme3.shader.glsl.AstShaderGenerator.PREVIOUS_DEFINE_CHAR_CHECKER;
+import static com.jme3.shader.glsl.AstShaderGenerator.PREVIOUS_METHOD_CHAR_CHECKER;
+import static com.jme3.shader.glsl.AstShaderGenerator.PREVIOUS_VAR_CHAR_CHECKER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.jme3.shader.glsl.parser.GlslIdentifierTable;
+import com.jme3.shader.glsl.parser.GlslParser;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of the renamer of identifiers in shader source code.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderSourceRenamerTest {
+
+    /**
+     * Renames the shader source by recorded identifiers like the generator does.
+     */
+    private static String rename(final String source, final ShaderSourceRenamer renamer) {
+        final FileDeclarationAstNode file = GlslParser.newInstance(true).parseFileDeclaration("Test.frag", source);
+        final String text = file.getText();
+        return renamer.rename(text, 0, text.length(), file.getIdentifiers(), new StringBuilder()).toString();
+    }
+
+    private static void addVarName(final ShaderSourceRenamer renamer, final String name) {
+        renamer.add(name, "Node_" + name, PREVIOUS_VAR_CHAR_CHECKER, NEXT_VAR_CHAR_CHECKER);
+    }
+
+    @Test
+    public void shouldRenameArrayAccesses() {
+
+        final ShaderSourceRenamer renamer = new ShaderSourceRenamer();
+        addVarName(renamer, "boneMatrices");
+        addVarName(renamer, "index");
+        addVarName(renamer, "result");
+
+        final String result = rename("void main() {\n" +
+                "    result = boneMatrices[int(index)] * vec4(1.0);\n" +
+                "}\n", renamer);
+
+        assertEquals("void main() {\n" +
+                "    Node_result = Node_boneMatrices[int(Node_index)] * vec4(1.0);\n" +
+                "}\n", result);
+    }
+
+    @Test
+    public void shouldNotRenameSwizzlesAndMembers() {
+
+        final ShaderSourceRenamer renamer = new ShaderSourceRenamer();
+        addVarName(renamer, "x");
+        addVarName(renamer, "pos");
+        addVarName(renamer, "result");
+
+        final String result = rename("void main() {\n" +
+                "    result = pos.x + pos.xy.x + x;\n" +
+                "}\n", renamer);
+
+        assertEquals("void main() {\n" +
+                "    Node_result = Node_pos.x + Node_pos.xy.x + Node_x;\n" +
+                "}\n", result);
+    }
+
+    @Test
+    public void shouldRenameDefinesAndMethodsByKinds() {
+
+        final ShaderSourceRenamer renamer = new ShaderSourceRenamer();
+        renamer.add("HAS_INPUT_color", "Node_HAS_INPUT_color", PREVIOUS_DEFINE_CHAR_CHECKER,
+                NEXT_DEFINE_CHAR_CHECKER);
+        renamer.add("scale", "Node_scale", PREVIOUS_METHOD_CHAR_CHECKER, NEXT_METHOD_CHAR_CHECKER,
+                GlslIdentifierTable.KIND_METHOD);
+        addVarName(renamer, "color");
+        addVarName(renamer, "result");
+
+        final String result = rename("vec4 scale(vec4 value) {\n" +
+                "    return value * 2.0;\n" +
+                "}\n" +
+                "void main() {\n" +
+                "#ifdef HAS_INPUT_color\n" +
+                "    result = scale(color);\n" +
+                "#endif\n" +
+                "}\n", renamer);
+
+        assertEquals("vec4 Node_scale(vec4 value) {\n" +
+                "    return value * 2.0;\n" +
+                "}\n" +
+                "void main() {\n" +
+                "#ifdef Node_HAS_INPUT_color\n" +
+                "    Node_result = Node_scale(Node_color);\n" +
+                "#endif\n" +
+                "}\n", result);
+    }
+}
@@ -0,0 +1,96 @@
+package com.jme3.shader.glsl.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.jme3.shader.glsl.parser.ast.AstNode;
+import com.jme3.shader.glsl.parser.ast.declaration.FileDeclarationAstNode;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The tests of the GLSL parser.
+ *
+ * @author JavaSaBr
+ */
+public class GlslParserTest {
+
+    private static final String PATH = "Test/Incremental.frag";
+
+    private static final String CODE = "#import \"Test/Import/Lib.glsllib\"\n" +
+            "\n" +
+            "#define SCALE 2.0\n" +
+            "\n" +
+            "uniform vec4 m_Color;\n" +
+            "\n" +
+            "vec4 scale(vec4 value) {\n" +
+            "    return value * SCALE;\n" +
+            "}\n" +
+            "\n" +
+            "void main() {\n" +
+            "    vec4 color = scale(m_Color);\n" +
+            "    result = halve(color);\n" +
+            "}\n";
+
+    private static void dump(final AstNode node, final String indent, final StringBuilder builder) {
+
+        builder.append(indent).append(node.getClass().getSimpleName())
+                .append(" [").append(node.getOffset()).append(':').append(node.getLength())
+                .append(" line ").append(node.getLine()).append("] ").append(node.getText()).append('\n');
+
+        for (final AstNode child : node.getChildren()) {
+            dump(child, indent + "  ", builder);
+        }
+    }
+
+    private static String dump(final FileDeclarationAstNode file) {
+
+        final StringBuilder builder = new StringBuilder();
+        dump(file, "", builder);
+
+        final GlslIdentifierTable identifiers = file.getIdentifiers();
+
+        for (int i = 0; i < identifiers.size(); i++) {
+            builder.append("identifier ").append(identifiers.getOffset(i)).append(':')
+                    .append(identifiers.getLength(i)).append(" kind ").append(identifiers.getKind(i)).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    private static void assertSameAsFullReparse(final int offset, final int removedLength, final String insertedText) {
+
+        final FileDeclarationAstNode prevNode = GlslParser.newInstance(true).parseFileDeclaration(PATH, CODE);
+        final FileDeclarationAstNode incremental = GlslParser.newInstance(true)
+                .parseFileDeclaration(prevNode, offset, removedLength, insertedText);
+
+        final String newCode = CODE.substring(0, offset) + insertedText + CODE.substring(offset + removedLength);
+        final FileDeclarationAstNode full = GlslParser.newInstance(true).parseFileDeclaration(PATH, newCode);
+
+        assertEquals(newCode, incremental.getText());
+        assertEquals(dump(full), dump(incremental));
+    }
+
+    @Test
+    public void shouldReparseEditInsideMethod() {
+        final int offset = CODE.indexOf("SCALE;");
+        assertSameAsFullReparse(offset, "SCALE".length(), "SCALE * 0.5 + 1.0");
+    }
+
+    @Test
+    public void shouldReparseInsertedLines() {
+        final int offset = CODE.indexOf("void main");
+        assertSameAsFullReparse(offset, 0, "float unused(float value) {\n    return value;\n}\n\n");
+    }
+
+    @Test
+    public void shouldReparseRemovedDeclaration() {
+        final int offset = CODE.indexOf("uniform");
+        assertSameAsFullReparse(offset, "uniform vec4 m_Color;\n\n".length(), "");
+    }
+
+    @Test
+    public void shouldReparseEditAcrossDeclarations() {
+        final int offset = CODE.indexOf("SCALE;");
+        final int end = CODE.indexOf("void main");
+        assertSameAsFullReparse(offset, end - offset, "value;\n}\n\nvoid other() {\n}\n\n");
+    }
+}
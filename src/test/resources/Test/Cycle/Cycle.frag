@@ -0,0 +1,5 @@
+#import "Test/Cycle/Cycle1.glsllib"
+
+void main() {
+    result = first(color);
+}
@@ -0,0 +1,13 @@
+#import "Test/DeadCode/Lib.glsllib"
+
+vec4 unusedHelper(vec4 value) {
+    return value * 2.0;
+}
+
+vec4 usedHelper(vec4 value) {
+    return usedFunction(value) + vec4(0.1);
+}
+
+void main() {
+    result = usedHelper(color);
+}
@@ -0,0 +1,5 @@
+#import "Test/Import/Lib.glsllib"
+
+void main() {
+    result = halve(color);
+}
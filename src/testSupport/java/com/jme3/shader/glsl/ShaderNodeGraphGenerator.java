@@ -0,0 +1,564 @@
+package com.jme3.shader.glsl;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.material.MaterialDef;
+import com.jme3.material.TechniqueDef;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The generator of random but valid shader node graphs to test shader generation at scale. The generator writes
+ * shader node definitions with generated GLSL bodies and a material definition with one technique to an asset
+ * folder, so the technique is loaded by the usual material loader with full generation information.
+ * <p>
+ * Every graph has the common vertex node to compute the position, the count of vertex nodes which read attributes
+ * and material parameters and the count of fragment nodes. Every input of a node is mapped from an output of a
+ * previous node, a material parameter, a world parameter or an attribute, the count of inputs of a node is limited by
+ * the max fan-in and the count of consumers of an output is limited by the max fan-out. Fragment nodes are chained
+ * by their first inputs and the last one writes the global color, so all fragment nodes are used, vertex nodes are
+ * used while fragment nodes have enough inputs to consume them. Graphs with the same seed and settings are the same.
+ *
+ * @author JavaSaBr
+ */
+public class ShaderNodeGraphGenerator {
+
+    /**
+     * The generated shader node.
+     */
+    private static class Node {
+
+        /**
+         * The name of the node.
+         */
+        private final String name;
+
+        /**
+         * The definition of the node.
+         */
+        private final Definition definition;
+
+        /**
+         * The input mappings of the node.
+         */
+        private final List<String> inputs;
+
+        /**
+         * The count of consumers of the output of the node.
+         */
+        private int consumers;
+
+        private Node(final String name, final Definition definition) {
+            this.name = name;
+            this.definition = definition;
+            this.inputs = new ArrayList<>();
+        }
+    }
+
+    /**
+     * The generated shader node definition.
+     */
+    private static class Definition {
+
+        /**
+         * The name of the definition.
+         */
+        private final String name;
+
+        /**
+         * True if it's a definition of a vertex node.
+         */
+        private final boolean vertex;
+
+        /**
+         * The count of vec4 inputs.
+         */
+        private final int inputs;
+
+        private Definition(final String name, final boolean vertex, final int inputs) {
+            this.name = name;
+            this.vertex = vertex;
+            this.inputs = inputs;
+        }
+    }
+
+    private static final String[] VERTEX_ATTRIBUTES = {"Attr.inColor", "Attr.inTangent", "Attr.inHWBoneWeight"};
+
+    private static final String[] OPERATIONS = {
+            "    value = %s(value, %s);\n",
+            "    value = value * %2$s;\n",
+            "    value += %2$s * scale;\n",
+            "    value = mix(value, %2$s, 0.5);\n"
+    };
+
+    /**
+     * The random.
+     */
+    private final Random random;
+
+    /**
+     * The seed of graphs.
+     */
+    private final long seed;
+
+    /**
+     * The count of fragment nodes.
+     */
+    private int fragmentNodes;
+
+    /**
+     * The count of vertex nodes except the common vertex node.
+     */
+    private int vertexNodes;
+
+    /**
+     * The count of shader node definitions of each stage.
+     */
+    private int definitions;
+
+    /**
+     * The max count of mapped inputs of a node.
+     */
+    private int maxFanIn;
+
+    /**
+     * The max count of consumers of an output of a node.
+     */
+    private int maxFanOut;
+
+    /**
+     * The count of material parameters.
+     */
+    private int materialParams;
+
+    /**
+     * The chance of a condition of a mapping from a material parameter.
+     */
+    private float conditionChance;
+
+    /**
+     * The folder name of generated assets.
+     */
+    private String folder;
+
+    public ShaderNodeGraphGenerator(final long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.fragmentNodes = 10;
+        this.vertexNodes = 2;
+        this.definitions = 4;
+        this.maxFanIn = 3;
+        this.maxFanOut = 2;
+        this.materialParams = 4;
+        this.conditionChance = 0.25F;
+        this.folder = "Synthetic";
+    }
+
+    /**
+     * Sets the count of fragment nodes.
+     *
+     * @param fragmentNodes the count of fragment nodes.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setFragmentNodes(final int fragmentNodes) {
+
+        if (fragmentNodes < 1) {
+            throw new IllegalArgumentException("The count of fragment nodes should be positive.");
+        }
+
+        this.fragmentNodes = fragmentNodes;
+        return this;
+    }
+
+    /**
+     * Sets the count of vertex nodes except the common vertex node.
+     *
+     * @param vertexNodes the count of vertex nodes.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setVertexNodes(final int vertexNodes) {
+
+        if (vertexNodes < 0) {
+            throw new IllegalArgumentException("The count of vertex nodes can't be negative.");
+        }
+
+        this.vertexNodes = vertexNodes;
+        return this;
+    }
+
+    /**
+     * Sets the count of shader node definitions of each stage.
+     *
+     * @param definitions the count of definitions.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setDefinitions(final int definitions) {
+
+        if (definitions < 1) {
+            throw new IllegalArgumentException("The count of definitions should be positive.");
+        }
+
+        this.definitions = definitions;
+        return this;
+    }
+
+    /**
+     * Sets the max count of mapped inputs of a node.
+     *
+     * @param maxFanIn the max count of inputs.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setMaxFanIn(final int maxFanIn) {
+
+        if (maxFanIn < 1) {
+            throw new IllegalArgumentException("The max fan-in should be positive.");
+        }
+
+        this.maxFanIn = maxFanIn;
+        return this;
+    }
+
+    /**
+     * Sets the max count of consumers of an output of a node.
+     *
+     * @param maxFanOut the max count of consumers.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setMaxFanOut(final int maxFanOut) {
+
+        if (maxFanOut < 1) {
+            throw new IllegalArgumentException("The max fan-out should be positive.");
+        }
+
+        this.maxFanOut = maxFanOut;
+        return this;
+    }
+
+    /**
+     * Sets the count of material parameters.
+     *
+     * @param materialParams the count of material parameters.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setMaterialParams(final int materialParams) {
+
+        if (materialParams < 1) {
+            throw new IllegalArgumentException("The count of material parameters should be positive.");
+        }
+
+        this.materialParams = materialParams;
+        return this;
+    }
+
+    /**
+     * Sets the chance of a condition of a mapping from a material parameter.
+     *
+     * @param conditionChance the chance from 0 to 1.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setConditionChance(final float conditionChance) {
+        this.conditionChance = conditionChance;
+        return this;
+    }
+
+    /**
+     * Sets the folder name of generated assets.
+     *
+     * @param folder the folder name.
+     * @return this generator.
+     */
+    public ShaderNodeGraphGenerator setFolder(final String folder) {
+        this.folder = folder;
+        return this;
+    }
+
+    /**
+     * Writes the graph and loads its technique definition.
+     *
+     * @param assetManager the asset manager which loads assets from the root folder.
+     * @param root         the root folder of assets.
+     * @param name         the name of the material definition.
+     * @return the default technique definition of the graph.
+     * @throws IOException if the files can't be written.
+     */
+    public TechniqueDef generate(final AssetManager assetManager, final Path root, final String name)
+            throws IOException {
+        return load(assetManager, write(root, name));
+    }
+
+    /**
+     * Writes definitions, shader sources and the material definition of the graph to the root folder.
+     *
+     * @param root the root folder of assets.
+     * @param name the name of the material definition.
+     * @return the asset path of the material definition.
+     * @throws IOException if the files can't be written.
+     */
+    public String write(final Path root, final String name) throws IOException {
+
+        random.setSeed(seed);
+
+        final Path assetFolder = Files.createDirectories(root.resolve(folder));
+        final String prefix = name + "_";
+
+        final List<Definition> vertexDefinitions = new ArrayList<>(definitions);
+        final List<Definition> fragmentDefinitions = new ArrayList<>(definitions);
+        final StringBuilder j3sn = new StringBuilder(1024).append("ShaderNodeDefinitions {\n");
+
+        for (int i = 0; i < definitions; i++) {
+            vertexDefinitions.add(writeDefinition(assetFolder, prefix + "Vert" + i, true, j3sn));
+            fragmentDefinitions.add(writeDefinition(assetFolder, prefix + "Frag" + i, false, j3sn));
+        }
+
+        j3sn.append("}\n");
+
+        final String j3snPath = folder + "/" + name + ".j3sn";
+        write(root.resolve(j3snPath), j3sn);
+
+        final List<Node> vertex = new ArrayList<>(vertexNodes);
+
+        for (int i = 0; i < vertexNodes; i++) {
+
+            final Node node = new Node("Vert" + i, vertexDefinitions.get(random.nextInt(definitions)));
+
+            for (int j = 0; j < node.definition.inputs; j++) {
+                if (random.nextBoolean()) {
+                    node.inputs.add(VERTEX_ATTRIBUTES[random.nextInt(VERTEX_ATTRIBUTES.length)]);
+                } else {
+                    node.inputs.add(materialParam());
+                }
+            }
+
+            vertex.add(node);
+        }
+
+        final List<Node> fragment = new ArrayList<>(fragmentNodes);
+
+        for (int i = 0; i < fragmentNodes; i++) {
+
+            final Node node = new Node("Frag" + i, fragmentDefinitions.get(random.nextInt(definitions)));
+
+            for (int j = 0; j < node.definition.inputs; j++) {
+                node.inputs.add(selectSource(vertex, fragment, j == 0));
+            }
+
+            fragment.add(node);
+        }
+
+        final StringBuilder j3md = new StringBuilder(1024 + (vertexNodes + fragmentNodes) * 256)
+                .append("MaterialDef ").append(name).append(" {\n")
+                .append("    MaterialParameters {\n");
+
+        for (int i = 0; i < materialParams; i++) {
+            j3md.append("        Vector4 Param").append(i).append('\n');
+        }
+
+        j3md.append("    }\n")
+                .append("    Technique {\n")
+                .append("        WorldParameters {\n")
+                .append("            WorldViewProjectionMatrix\n")
+                .append("            Time\n")
+                .append("        }\n")
+                .append("        VertexShaderNodes {\n")
+                .append("            ShaderNode CommonVert {\n")
+                .append("                Definition : CommonVert : Common/MatDefs/ShaderNodes/Common/CommonVert.j3sn\n")
+                .append("                InputMappings {\n")
+                .append("                    worldViewProjectionMatrix = WorldParam.WorldViewProjectionMatrix\n")
+                .append("                    modelPosition = Global.position.xyz\n")
+                .append("                }\n")
+                .append("                OutputMappings {\n")
+                .append("                    Global.position = projPosition\n")
+                .append("                }\n")
+                .append("            }\n");
+
+        for (final Node node : vertex) {
+            appendNode(j3md, node, j3snPath, false);
+        }
+
+        j3md.append("        }\n")
+                .append("        FragmentShaderNodes {\n");
+
+        for (int i = 0; i < fragment.size(); i++) {
+            appendNode(j3md, fragment.get(i), j3snPath, i == fragment.size() - 1);
+        }
+
+        j3md.append("        }\n")
+                .append("    }\n")
+                .append("}\n");
+
+        final String j3mdPath = folder + "/" + name + ".j3md";
+        write(root.resolve(j3mdPath), j3md);
+
+        return j3mdPath;
+    }
+
+    /**
+     * Loads the default technique definition of the material definition.
+     *
+     * @param assetManager the asset manager.
+     * @param path         the asset path of the material definition.
+     * @return the default technique definition.
+     */
+    public static TechniqueDef load(final AssetManager assetManager, final String path) {
+        final MaterialDef materialDef = (MaterialDef) assetManager.loadAsset(new AssetKey<>(path));
+        return materialDef.getTechniqueDefs(TechniqueDef.DEFAULT_TECHNIQUE_NAME).get(0);
+    }
+
+    /**
+     * Selects the source of an input of a fragment node. The first input is mapped from the previous fragment node
+     * and not consumed outputs of vertex nodes are preferred for other inputs, so all nodes of the graph are used.
+     *
+     * @param vertex   the vertex nodes.
+     * @param fragment the previous fragment nodes.
+     * @param first    true if it's the first input of the node.
+     * @return the source of the mapping.
+     */
+    private String selectSource(final List<Node> vertex, final List<Node> fragment, final boolean first) {
+
+        if (first && !fragment.isEmpty()) {
+            return consume(fragment.get(fragment.size() - 1));
+        }
+
+        for (final Node node : vertex) {
+            if (node.consumers == 0) {
+                return consume(node);
+            }
+        }
+
+        if (!fragment.isEmpty()) {
+
+            // a random previous node with free fan-out
+            for (int attempt = 0; attempt < 4; attempt++) {
+
+                final int size = vertex.size() + fragment.size();
+                final int index = random.nextInt(size);
+                final Node node = index < vertex.size() ? vertex.get(index) : fragment.get(index - vertex.size());
+
+                if (node.consumers < maxFanOut) {
+                    return consume(node);
+                }
+            }
+        }
+
+        return materialParam();
+    }
+
+    private String consume(final Node node) {
+        node.consumers++;
+        return node.name + ".result";
+    }
+
+    private String materialParam() {
+
+        final int index = random.nextInt(materialParams);
+        final String param = "MatParam.Param" + index;
+
+        if (random.nextFloat() < conditionChance) {
+            return param + " : Param" + index;
+        }
+
+        return param;
+    }
+
+    /**
+     * Writes the shader source of the new definition and appends the definition to the shader node definitions.
+     *
+     * @param assetFolder the folder of assets.
+     * @param name        the name of the definition.
+     * @param vertex      true if it's a definition of a vertex node.
+     * @param j3sn        the shader node definitions.
+     * @return the new definition.
+     * @throws IOException if the shader source can't be written.
+     */
+    private Definition writeDefinition(final Path assetFolder, final String name, final boolean vertex,
+                                       final StringBuilder j3sn) throws IOException {
+
+        final Definition definition = new Definition(name, vertex, 1 + random.nextInt(maxFanIn));
+        final String extension = vertex ? ".vert" : ".frag";
+        final String helper = "combine" + random.nextInt(100);
+
+        final StringBuilder source = new StringBuilder(512)
+                .append("vec4 ").append(helper).append("(vec4 first, vec4 second) {\n")
+                .append("    return first * ").append(random.nextInt(9) + 1).append(".0 + second;\n")
+                .append("}\n\n")
+                .append("void main() {\n")
+                .append("    vec4 value = in0;\n");
+
+        for (int i = 1; i < definition.inputs; i++) {
+            source.append(String.format(OPERATIONS[random.nextInt(OPERATIONS.length)], helper, "in" + i));
+        }
+
+        source.append("    result = value * scale;\n")
+                .append("}\n");
+
+        write(assetFolder.resolve(name + extension), source);
+
+        // the same path could be parsed before with other content
+        AstShaderGenerator.invalidate(folder + "/" + name + extension);
+
+        j3sn.append("    ShaderNodeDefinition ").append(name).append(" {\n")
+                .append("        Type: ").append(vertex ? "Vertex" : "Fragment").append('\n')
+                .append("        Shader GLSL100: ").append(folder).append('/').append(name).append(extension)
+                .append('\n')
+                .append("        Input {\n");
+
+        for (int i = 0; i < definition.inputs; i++) {
+            j3sn.append("            vec4 in").append(i).append('\n');
+        }
+
+        j3sn.append("            float scale ").append(random.nextInt(4) + 1).append(".0\n")
+                .append("        }\n")
+                .append("        Output {\n")
+                .append("            vec4 result\n")
+                .append("        }\n")
+                .append("    }\n");
+
+        return definition;
+    }
+
+    /**
+     * Appends the shader node to the material definition.
+     *
+     * @param j3md     the material definition.
+     * @param node     the shader node.
+     * @param j3snPath the asset path of shader node definitions.
+     * @param last     true if the node writes the global color.
+     */
+    private void appendNode(final StringBuilder j3md, final Node node, final String j3snPath, final boolean last) {
+
+        j3md.append("            ShaderNode ").append(node.name).append(" {\n")
+                .append("                Definition : ").append(node.definition.name).append(" : ").append(j3snPath)
+                .append('\n')
+                .append("                InputMappings {\n");
+
+        for (int i = 0; i < node.inputs.size(); i++) {
+            j3md.append("                    in").append(i).append(" = ").append(node.inputs.get(i)).append('\n');
+        }
+
+        // every third node reads the time instead of the default scale
+        if (random.nextInt(3) == 0) {
+            j3md.append("                    scale = WorldParam.Time\n");
+        }
+
+        j3md.append("                }\n");
+
+        if (last) {
+            j3md.append("                OutputMappings {\n")
+                    .append("                    Global.color = result\n")
+                    .append("                }\n");
+        }
+
+        j3md.append("            }\n");
+    }
+
+    private static void write(final Path file, final CharSequence content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}